@@ -0,0 +1,90 @@
+package com.github.relai.vertx.springdata;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Sort;
+
+/**
+ * Measures the encoding of the arguments of a custom method, with the Java 
+ * serialization of {@link SerializationHelper} and with the 
+ * {@link CompactArgumentCodec}, across argument shapes.
+ * 
+ * @author relai
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ArgumentCodecBenchmark {
+
+    @Param({"scalar", "mixed", "collection", "pageable"})
+    String shape;
+
+    private final ArgumentCodec compact = new CompactArgumentCodec();
+    private Object[] args;
+    private byte[] serialized;
+    private byte[] encoded;
+
+    @Setup
+    public void setup() {
+        switch (shape) {
+            case "scalar":
+                args = new Object[] {42L};
+                break;
+            case "mixed":
+                args = new Object[] {"coffee", 3, 42L, true};
+                break;
+            case "collection":
+                List<Long> ids = new ArrayList<>();
+                for (long id = 0; id < 100; id++) {
+                    ids.add(id);
+                }
+                args = new Object[] {ids};
+                break;
+            case "pageable":
+                args = new Object[] {"coffee", 
+                    new PageRequest(2, 25, new Sort(Sort.Direction.DESC, "priority", "name"))};
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown shape: " + shape);
+        }
+        serialized = SerializationHelper.toBytes(args);
+        encoded = compact.encode(args);
+    }
+
+    @Benchmark
+    public byte[] serializationToBytes() {
+        return SerializationHelper.toBytes(args);
+    }
+
+    @Benchmark
+    public Object[] serializationFromBytes() {
+        return SerializationHelper.fromBytes(serialized);
+    }
+
+    @Benchmark
+    public byte[] compactEncode() {
+        return compact.encode(args);
+    }
+
+    @Benchmark
+    public Object[] compactDecode() {
+        return compact.decode(encoded);
+    }
+}
@@ -0,0 +1,15 @@
+package com.github.relai.vertx.springdata;
+
+import org.springframework.data.domain.Sort;
+import org.vertx.java.core.json.JsonArray;
+
+/**
+ * The asynchronous repository of the benchmarks.
+ * 
+ * @author relai
+ */
+public interface AsyncBenchmarkItemRepository extends AsyncCrudRepository<Long> {
+    void findByName(String name, MessageHandler<JsonArray> onreply);
+    void findByPriorityBetween(int from, int to, MessageHandler<JsonArray> onreply);
+    void findAll(Sort sort, MessageHandler<JsonArray> onreply);
+}
@@ -0,0 +1,94 @@
+package com.github.relai.vertx.springdata;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.github.relai.vertx.springdata.benchmark.load.LoadItemRepository;
+
+/**
+ * Measures how the worker verticle resolves and invokes a custom repository 
+ * method: through the precompiled {@link MethodDispatcher}, for a unique and an
+ * overloaded method name, against the reflective scan it falls back to.
+ * 
+ * @author relai
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DispatchBenchmark {
+
+    private Object repository;
+    private MethodDispatcher dispatcher;
+    private final Object[] uniqueArgs = {1, 5};
+    private final Object[] overloadedArgs = {3L};
+
+    @Setup
+    public void setup() {
+        RepositoryRegistry.Entry entry = Fixtures.entry(new ObjectMapper());
+        repository = entry.getRepository();
+        dispatcher = entry.getDispatcher();
+    }
+
+    @Benchmark
+    public Object resolveUnique() {
+        return dispatcher.resolve("findByPriorityBetween", uniqueArgs);
+    }
+
+    @Benchmark
+    public Object resolveOverloaded() {
+        return dispatcher.resolve("findByPriority", overloadedArgs);
+    }
+
+    @Benchmark
+    public Object invokeUnique() throws InvocationTargetException {
+        return dispatcher.resolve("findByPriorityBetween", uniqueArgs)
+                         .invoke(repository, uniqueArgs);
+    }
+
+    @Benchmark
+    public Object invokeOverloaded() throws InvocationTargetException {
+        return dispatcher.resolve("findByPriority", overloadedArgs)
+                         .invoke(repository, overloadedArgs);
+    }
+
+    @Benchmark
+    public Object invokeReflective() throws IllegalAccessException, InvocationTargetException {
+        return findMethod(LoadItemRepository.class, "findByPriority", overloadedArgs)
+            .invoke(repository, overloadedArgs);
+    }
+
+    /**
+     * The reflective scan of the worker verticle, for reference.
+     */
+    private static Method findMethod(Class<?> repoType, String action, Object[] args) {
+        for (Method m : repoType.getMethods()) {
+            if (m.getName().equals(action) && m.getParameterCount() == args.length) {
+                Class<?>[] argTypes = m.getParameterTypes();
+                boolean matched = true;
+                for (int index = 0; matched && (index < args.length); index++) {
+                    matched = argTypes[index].isPrimitive() || argTypes[index].isInstance(args[index]);
+                }
+                if (matched) {
+                    return m;
+                }
+            }
+        }
+        throw new IllegalArgumentException("Cannot find the signature matching action " + action);
+    }
+}
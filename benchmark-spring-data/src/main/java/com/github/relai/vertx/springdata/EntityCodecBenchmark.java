@@ -0,0 +1,74 @@
+package com.github.relai.vertx.springdata;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.vertx.java.core.json.JsonObject;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.github.relai.vertx.springdata.benchmark.load.LoadItem;
+
+/**
+ * Measures the conversion of an entity to and from its event bus forms: the 
+ * <code>JsonObject</code> tree, and the encoded JSON bytes. The entity size 
+ * grows with the number of tags.
+ * 
+ * @author relai
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class EntityCodecBenchmark {
+
+    @Param({"0", "10", "100"})
+    int tags;
+
+    private EntityCodec codec;
+    private RepositoryRegistry.Entry entry;
+    private LoadItem item;
+    private JsonObject json;
+    private byte[] bytes;
+
+    @Setup
+    public void setup() {
+        ObjectMapper mapper = new ObjectMapper();
+        codec = new EntityCodec(mapper);
+        entry = Fixtures.entry(mapper);
+        item = LoadItem.of(1, tags);
+        json = codec.toJsonObject(item, entry);
+        bytes = codec.toBytes(item, entry);
+    }
+
+    @Benchmark
+    public JsonObject toJsonObject() {
+        return codec.toJsonObject(item, entry);
+    }
+
+    @Benchmark
+    public Object fromJsonObject() {
+        return codec.fromJsonObject(json, entry);
+    }
+
+    @Benchmark
+    public byte[] toBytes() {
+        return codec.toBytes(item, entry);
+    }
+
+    @Benchmark
+    public Object fromBytes() {
+        return codec.fromBytes(bytes, entry);
+    }
+}
@@ -0,0 +1,72 @@
+package com.github.relai.vertx.springdata;
+
+import java.lang.reflect.Proxy;
+
+import org.springframework.data.repository.core.support.DefaultRepositoryMetadata;
+import org.vertx.java.core.MultiMap;
+import org.vertx.java.core.eventbus.EventBus;
+import org.vertx.java.core.http.CaseInsensitiveMultiMap;
+import org.vertx.java.core.http.HttpServerRequest;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.github.relai.vertx.springdata.benchmark.load.InMemoryLoadItemRepository;
+import com.github.relai.vertx.springdata.benchmark.load.LoadItemRepository;
+
+/**
+ * The fixtures shared by the benchmarks: the registry entry of the benchmark
+ * repository, and stand-ins for the Vert.x objects the measured code needs.
+ * 
+ * @author relai
+ */
+class Fixtures {
+
+    private Fixtures() {
+    }
+
+    /**
+     * Creates the registry entry of the {@link LoadItemRepository} of the load 
+     * test, backed by an {@link InMemoryLoadItemRepository} without latency.
+     * 
+     * @param mapper the Jackson object mapper
+     * @return the entry
+     */
+    static RepositoryRegistry.Entry entry(ObjectMapper mapper) {
+        return new RepositoryRegistry.Entry(new InMemoryLoadItemRepository(10, 0), 
+            new DefaultRepositoryMetadata(LoadItemRepository.class), null, mapper);
+    }
+
+    /**
+     * Creates an HTTP request that only answers its query parameters.
+     * 
+     * @param query the query string, such as <code>page=2&amp;sort=name</code>
+     * @return the request
+     */
+    static HttpServerRequest request(String query) {
+        MultiMap params = new CaseInsensitiveMultiMap();
+        for (String param : query.split("&")) {
+            int split = param.indexOf('=');
+            if (split > 0) {
+                params.add(param.substring(0, split), param.substring(split + 1));
+            }
+        }
+        return (HttpServerRequest) Proxy.newProxyInstance(Fixtures.class.getClassLoader(),
+            new Class<?>[] {HttpServerRequest.class}, (proxy, method, args) -> {
+                if (method.getName().equals("params")) {
+                    return params;
+                }
+                throw new UnsupportedOperationException(method.getName());
+            });
+    }
+
+    /**
+     * Creates an event bus that drops every message, so that a client call is 
+     * measured up to the send.
+     * 
+     * @return the event bus
+     */
+    static EventBus eventBus() {
+        return (EventBus) Proxy.newProxyInstance(Fixtures.class.getClassLoader(),
+            new Class<?>[] {EventBus.class}, (proxy, method, args) -> 
+                method.getReturnType() == EventBus.class ? proxy : null);
+    }
+}
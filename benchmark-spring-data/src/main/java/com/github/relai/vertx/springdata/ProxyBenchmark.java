@@ -0,0 +1,66 @@
+package com.github.relai.vertx.springdata;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.data.domain.Sort;
+import org.vertx.java.core.json.JsonArray;
+import org.vertx.java.core.json.JsonObject;
+
+/**
+ * Measures a client call up to the event bus send, through the repository 
+ * proxy of {@link AsyncRepositoryProxyHandler}: a native method, a custom method 
+ * with its arguments encoded, and the direct call without the proxy for reference.
+ * 
+ * @author relai
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ProxyBenchmark {
+
+    private AsyncBenchmarkItemRepository proxy;
+    private AsyncCrudRepository<Long> direct;
+    private final Sort sort = new Sort(Sort.Direction.ASC, "name");
+    private final MessageHandler<JsonObject> onEntity = reply -> { };
+    private final MessageHandler<JsonArray> onEntities = reply -> { };
+
+    @Setup
+    public void setup() {
+        AsyncRepositoryBuilder<Long> builder = new AsyncRepositoryBuilder<>(Fixtures.eventBus());
+        proxy = builder.build(AsyncBenchmarkItemRepository.class);
+        direct = builder.build();
+    }
+
+    @Benchmark
+    public void directFindOne() {
+        direct.findOne(1L, onEntity);
+    }
+
+    @Benchmark
+    public void proxyFindOne() {
+        proxy.findOne(1L, onEntity);
+    }
+
+    @Benchmark
+    public void proxyFindAllSorted() {
+        proxy.findAll(sort, onEntities);
+    }
+
+    @Benchmark
+    public void proxyCustomMethod() {
+        proxy.findByPriorityBetween(1, 5, onEntities);
+    }
+}
@@ -0,0 +1,61 @@
+package com.github.relai.vertx.springdata;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Sort;
+import org.vertx.java.core.http.HttpServerRequest;
+
+/**
+ * Measures the parsing of the sort and paging hints of a REST request by the
+ * {@link RestHelper}.
+ * 
+ * @author relai
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RestHelperBenchmark {
+
+    @Param({
+        "sort=name", 
+        "page=2&size=15", 
+        "page=2&size=15&sort=name.asc.nulls_first,priority.desc,version"
+    })
+    String query;
+
+    private RestHelper<Long> helper;
+    private HttpServerRequest request;
+
+    @Setup
+    public void setup() {
+        AsyncBenchmarkItemRepository client = new AsyncRepositoryBuilder<Long>(Fixtures.eventBus())
+            .build(AsyncBenchmarkItemRepository.class);
+        helper = new RestHelper<>(client, Long.class);
+        request = Fixtures.request(query);
+    }
+
+    @Benchmark
+    public Sort getSort() {
+        return helper.getSort(request);
+    }
+
+    @Benchmark
+    public Pageable getPageable() {
+        return helper.getPageable(request, helper.getSort(request));
+    }
+}
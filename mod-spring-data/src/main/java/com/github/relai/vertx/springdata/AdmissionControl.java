@@ -0,0 +1,117 @@
+package com.github.relai.vertx.springdata;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+
+import org.vertx.java.core.AsyncResult;
+import org.vertx.java.core.Handler;
+import org.vertx.java.core.eventbus.Message;
+import org.vertx.java.core.eventbus.ReplyException;
+import org.vertx.java.core.eventbus.ReplyFailure;
+import org.vertx.java.core.impl.DefaultFutureResult;
+
+/**
+ * Internal class that bounds the requests in flight to the worker verticle. A
+ * request beyond the limit waits in a bounded queue, and is sent when a request
+ * in flight is answered. A request that finds the queue full is rejected at once
+ * with a {@link RejectedRequest}, rather than piling up and timing out along with
+ * the others when the worker slows down.
+ *
+ * <p>A queued request keeps its timeout: the time spent in the queue is taken
+ * from the time it then waits for the reply, and a request whose timeout passes
+ * in the queue fails without being sent.
+ *
+ * @author relai
+ */
+class AdmissionControl {
+    private final int maxInFlight;
+    private final int maxQueued;
+    private final ClientMetrics metrics;
+    private final Deque<Pending> queue = new ArrayDeque<>();
+    private int inFlight;
+
+    AdmissionControl(int maxInFlight, int maxQueued, ClientMetrics metrics) {
+        this.maxInFlight = maxInFlight;
+        this.maxQueued = maxQueued;
+        this.metrics = metrics;
+    }
+
+    /**
+     * Sends a request now, later, or not at all.
+     *
+     * @param timeout the reply timeout
+     * @param sender the sender of the request
+     * @param handler the reply handler
+     */
+    void send(long timeout, Sender sender, Handler<AsyncResult<Message<Object>>> handler) {
+        boolean rejected = false;
+        synchronized (this) {
+            if (inFlight < maxInFlight) {
+                metrics.inFlightRequests.set(++inFlight);
+            } else if (queue.size() < maxQueued) {
+                queue.add(new Pending(System.currentTimeMillis() + timeout, sender, handler));
+                metrics.queuedRequests.set(queue.size());
+                return;
+            } else {
+                metrics.rejectedRequests.incrementAndGet();
+                rejected = true;
+            }
+        }
+        if (rejected) {
+            handler.handle(new DefaultFutureResult<>(new RejectedRequest(
+                "Too many requests: " + maxInFlight + " in flight and " + maxQueued + " queued")));
+        } else {
+            dispatch(timeout, sender, handler);
+        }
+    }
+
+    private void dispatch(long timeout, Sender sender, Handler<AsyncResult<Message<Object>>> handler) {
+        sender.send(timeout, result -> {
+            release();
+            handler.handle(result);
+        });
+    }
+
+    /**
+     * Hands the slot of an answered request over to the next queued request, if any.
+     */
+    private void release() {
+        while (true) {
+            Pending next;
+            synchronized (this) {
+                next = queue.poll();
+                if (next == null) {
+                    metrics.inFlightRequests.set(--inFlight);
+                    return;
+                }
+                metrics.queuedRequests.set(queue.size());
+            }
+            long remaining = next.deadline - System.currentTimeMillis();
+            if (remaining > 0) {
+                dispatch(remaining, next.sender, next.handler);
+                return;
+            }
+            next.handler.handle(new DefaultFutureResult<>(new ReplyException(
+                ReplyFailure.TIMEOUT, "Timed out waiting in the admission queue")));
+        }
+    }
+
+    /**
+     * Sends a request to the worker verticle.
+     */
+    interface Sender {
+        void send(long timeout, Handler<AsyncResult<Message<Object>>> handler);
+    }
+
+    private static class Pending {
+        final long deadline;
+        final Sender sender;
+        final Handler<AsyncResult<Message<Object>>> handler;
+
+        Pending(long deadline, Sender sender, Handler<AsyncResult<Message<Object>>> handler) {
+            this.deadline = deadline;
+            this.sender = sender;
+            this.handler = handler;
+        }
+    }
+}
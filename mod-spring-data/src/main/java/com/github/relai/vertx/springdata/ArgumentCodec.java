@@ -0,0 +1,36 @@
+package com.github.relai.vertx.springdata;
+
+/**
+ * The codec of the arguments of a custom repository method, as they are shipped 
+ * over the event bus from {@link AsyncRepositoryBuilder the asynchronous repository} 
+ * to the worker verticle.
+ * 
+ * <p>The default codec is {@link CompactArgumentCodec}. Java serialization
+ * is available through {@link JavaArgumentCodec}, and through the fallback of the 
+ * compact codec, only if the worker verticle is deployed with 
+ * {@link SpringDeployer#javaSerialization}. A custom codec can be set with
+ * {@link AsyncRepositoryBuilder#argumentCodec}; it must be registered with 
+ * {@link SpringDeployer#argumentCodec}, and the worker verticle creates its own 
+ * instance of the codec class, so an implementation must have a public no-argument
+ * constructor and be on the class path of the worker.
+ * 
+ * @author relai
+ */
+public interface ArgumentCodec {
+    
+    /**
+     * Encodes the method arguments.
+     * 
+     * @param args the method arguments, excluding the reply handler
+     * @return the encoded arguments
+     */
+    byte[] encode(Object[] args);
+    
+    /**
+     * Decodes the method arguments.
+     * 
+     * @param bytes the encoded arguments
+     * @return the method arguments
+     */
+    Object[] decode(byte[] bytes);
+}
@@ -0,0 +1,234 @@
+package com.github.relai.vertx.springdata;
+
+import static com.github.relai.vertx.springdata.RepositoryVerticle.*;
+
+import java.io.Serializable;
+
+import org.vertx.java.core.json.JsonArray;
+import org.vertx.java.core.json.JsonElement;
+import org.vertx.java.core.json.JsonObject;
+
+/**
+ * A batch of repository operations sent to the worker verticle in a single
+ * event bus message, created by {@link AsyncCrudRepository#batch}.
+ *
+ * <p>Example:
+ *   <pre> {@code
+ *    repository.batch()
+ *              .findOne(1L)
+ *              .exists(2L)
+ *              .save(item)
+ *              .execute(reply -> {
+ *                  JsonArray outcomes = reply.result().body();
+ *                  ...
+ *              });
+ *    }</pre>
+ *
+ * The operations are executed in order. The reply is an array with one outcome
+ * per operation, in the same order: <code>{"result": ...}</code> if the operation
+ * succeeded, where the result is absent for operations without a return value, or
+ * <code>{"failureCode": 404, "message": "..."}</code> if it failed. The failure codes
+ * are the same as the ones of the individual operations.
+ *
+ * <p>A {@link #transactional transactional} batch runs in a single Spring
+ * transaction. If any operation fails, the transaction is rolled back and the
+ * whole reply fails with the failure code of that operation.
+ *
+ * @author relai
+ * @param <ID> the entity Id type
+ */
+public class AsyncBatch<ID extends Serializable> {
+    private final AsyncCrudRepositoryImpl<ID> impl;
+    private final JsonArray operations = new JsonArray();
+    private boolean transactional;
+
+    AsyncBatch(AsyncCrudRepositoryImpl<ID> impl) {
+        this.impl = impl;
+    }
+
+    /**
+     * Adds the retrieval of an entity by its id.
+     *
+     * @param id must not be {@literal null}
+     * @return this
+     */
+    public AsyncBatch<ID> findOne(ID id) {
+        return add(FINDONE, validateId(id), null);
+    }
+
+    /**
+     * Adds whether an entity with the given id exists.
+     *
+     * @param id must not be {@literal null}
+     * @return this
+     */
+    public AsyncBatch<ID> exists(ID id) {
+        return add(EXISTS, validateId(id), null);
+    }
+
+    /**
+     * Adds the retrieval of all entities.
+     *
+     * @return this
+     */
+    public AsyncBatch<ID> findAll() {
+        return add(FINDALL, null, null);
+    }
+
+    /**
+     * Adds the retrieval of the entities with the given ids.
+     *
+     * @param ids the ids of the entities
+     * @return this
+     */
+    public AsyncBatch<ID> findAll(Iterable<ID> ids) {
+        JsonArray idArray = new JsonArray();
+        for (ID id : ids) {
+            idArray.add(validateId(id));
+        }
+        operations.addObject(new JsonObject()
+            .putString(ACTION, FINDALL)
+            .putArray(ID, idArray));
+        return this;
+    }
+
+    /**
+     * Adds the count of the entities.
+     *
+     * @return this
+     */
+    public AsyncBatch<ID> count() {
+        return add(COUNT, null, null);
+    }
+
+    /**
+     * Adds the save of an entity.
+     *
+     * @param entity the entity to save
+     * @return this
+     */
+    public AsyncBatch<ID> save(JsonObject entity) {
+        return add(SAVE, null, validateEntity(entity));
+    }
+
+    /**
+     * Adds the save of the entities.
+     *
+     * @param entities the entities to save
+     * @return this
+     */
+    public AsyncBatch<ID> save(JsonArray entities) {
+        return add(SAVE, null, validateEntity(entities));
+    }
+
+    /**
+     * Adds the deletion of the entity with the given id.
+     *
+     * @param id must not be {@literal null}
+     * @return this
+     */
+    public AsyncBatch<ID> delete(ID id) {
+        return add(DELETE, validateId(id), null);
+    }
+
+    /**
+     * Adds the deletion of an entity.
+     *
+     * @param entity the entity to delete
+     * @return this
+     */
+    public AsyncBatch<ID> delete(JsonObject entity) {
+        return add(DELETE, null, validateEntity(entity));
+    }
+
+    /**
+     * Adds the deletion of the entities.
+     *
+     * @param entities the entities to delete
+     * @return this
+     */
+    public AsyncBatch<ID> delete(JsonArray entities) {
+        return add(DELETE, null, validateEntity(entities));
+    }
+
+    /**
+     * Adds the deletion of all entities.
+     *
+     * @return this
+     */
+    public AsyncBatch<ID> deleteAll() {
+        return add(DELETEALL, null, null);
+    }
+
+    /**
+     * Adds a call to a custom method of the repository interface.
+     *
+     * @param method the method name
+     * @param args the method arguments
+     * @return this
+     */
+    public AsyncBatch<ID> call(String method, Object... args) {
+        JsonObject operation = new JsonObject().putString(ACTION, method);
+        impl.putArguments(operation, args);
+        operations.addObject(operation);
+        return this;
+    }
+
+    /**
+     * Sets whether the batch runs in a single transaction. The default is false.
+     *
+     * @param value true to run the batch in a single transaction
+     * @return this
+     */
+    public AsyncBatch<ID> transactional(boolean value) {
+        this.transactional = value;
+        return this;
+    }
+
+    /**
+     * Gets the number of operations in the batch.
+     *
+     * @return the number of operations
+     */
+    public int size() {
+        return operations.size();
+    }
+
+    /**
+     * Sends the batch to the worker verticle.
+     *
+     * @param onreply the response event handler. The payload is the array of
+     *        the outcomes of the operations.
+     */
+    public void execute(MessageHandler<JsonArray> onreply) {
+        JsonObject envelope = new JsonObject()
+            .putString(ACTION, BATCH)
+            .putArray(OPERATIONS, operations)
+            .putBoolean(TRANSACTIONAL, transactional);
+        impl.process(envelope, onreply);
+    }
+
+    private AsyncBatch<ID> add(String action, ID id, JsonElement entity) {
+        JsonObject operation = new JsonObject().putString(ACTION, action);
+        if (id != null) {
+            operation.putValue(ID, id);
+        }
+        if (entity != null) {
+            operation.putElement(ENTITY, entity);
+        }
+        operations.addObject(operation);
+        return this;
+    }
+
+    private ID validateId(ID id) {
+        if (id == null)
+            throw new IllegalArgumentException("The input Id cannot be null");
+        return id;
+    }
+
+    private JsonElement validateEntity(JsonElement el) {
+        if (el == null)
+            throw new IllegalArgumentException("The entity or entities cannot be null.");
+        return el;
+    }
+}
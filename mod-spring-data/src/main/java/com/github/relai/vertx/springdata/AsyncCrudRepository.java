@@ -2,6 +2,8 @@ package com.github.relai.vertx.springdata;
 
 import java.io.Serializable;
 
+import org.vertx.java.core.AsyncResultHandler;
+import org.vertx.java.core.Handler;
 import org.vertx.java.core.json.JsonArray;
 import org.vertx.java.core.json.JsonObject;
 
@@ -74,6 +76,20 @@ public interface AsyncCrudRepository<ID extends Serializable> {
 	 */
 	void findAll(Iterable<ID> ids, MessageHandler<JsonArray> onreply);
 
+	/**
+	 * Streams all instances of the type in batches, without holding the whole 
+	 * collection in memory at either side. The next batch is read only after 
+	 * the previous one is handled; see {@link BatchStream}.
+	 * 
+	 * @param batchSize the maximum number of entities in a batch
+	 * @param handler the handler of each batch
+	 * @param endHandler the handler called when the stream ends or fails
+	 * @return the stream, to pause, resume or cancel the delivery of the batches
+	 * @throws IllegalArgumentException if {@code batchSize} is not positive
+	 */
+	BatchStream findAllStream(int batchSize, Handler<JsonArray> handler, 
+	    AsyncResultHandler<Void> endHandler);
+
 	/**
 	 * Returns the number of entities available.
 	 * 
@@ -114,4 +130,47 @@ public interface AsyncCrudRepository<ID extends Serializable> {
      * @param onreply  the response event handler.
 	 */
 	void deleteAll(MessageHandler<Void> onreply);
+
+	/**
+	 * Returns a view of the repository whose finders reply with a sparse 
+	 * fieldset of the entities: only the given properties are read from the 
+	 * entities and written to the reply, so the reply is smaller and faster to 
+	 * encode, and no lazy association outside the fieldset is loaded. An unknown 
+	 * property is ignored. The writes of the view are those of the repository.
+	 * 
+	 * <p>For example, <code>repository.fields("id", "name").findAll(onreply)</code>.
+	 * 
+	 * @param fields the names of the properties
+	 * @return the view
+	 * @throws IllegalArgumentException if no property is given
+	 */
+	AsyncCrudRepository<ID> fields(String... fields);
+
+	/**
+	 * Starts a batch of operations, sent to the repository in one message 
+	 * when the batch is executed.
+	 * 
+	 * @return an empty batch
+	 */
+	AsyncBatch<ID> batch();
+
+	/**
+	 * Requests the metrics of the worker verticle: for each repository and action,
+	 * the number of commands, the failure codes, and the latency percentiles of 
+	 * the queue, decode, execute and encode phases in microseconds. 
+	 * 
+	 * <p>The metrics are those of the one worker verticle instance that answers, 
+	 * not a sum over the instances: with several instances, each keeps its own, 
+	 * and a request is answered by one of them.
+	 * 
+	 * @param onreply  the response event handler
+	 */
+	void metrics(MessageHandler<JsonObject> onreply);
+
+	/**
+	 * Releases the resources the client holds, such as the event bus handler 
+	 * of its near cache. The client should not be used afterwards.
+	 */
+	default void close() {
+	}
 }
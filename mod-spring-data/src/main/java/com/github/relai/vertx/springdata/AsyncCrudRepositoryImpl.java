@@ -1,29 +1,87 @@
 package com.github.relai.vertx.springdata;
 
+import java.io.IOException;
 import java.io.Serializable;
+import java.util.List;
+import java.util.Map;
 
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Sort;
+import org.vertx.java.core.AsyncResult;
+import org.vertx.java.core.AsyncResultHandler;
+import org.vertx.java.core.Handler;
+import org.vertx.java.core.impl.DefaultFutureResult;
+import org.vertx.java.core.json.DecodeException;
+import org.vertx.java.core.json.EncodeException;
 import org.vertx.java.core.json.JsonArray;
 import org.vertx.java.core.json.JsonElement;
 import org.vertx.java.core.json.JsonObject;
 import org.vertx.java.core.eventbus.EventBus;
+import org.vertx.java.core.eventbus.Message;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
 
 import static com.github.relai.vertx.springdata.RepositoryVerticle.*;
 
 
 /**
- * Internal class that implements the {@link AsyncCrudRepository} interface.
+ * Internal class that implements the {@link AsyncCrudRepository} and 
+ * {@link AsyncPagingAndSortingRepository} interfaces.
  * 
  * @author relai
  */
-class AsyncCrudRepositoryImpl<ID extends Serializable> implements AsyncCrudRepository<ID> {
+class AsyncCrudRepositoryImpl<ID extends Serializable> implements AsyncPagingAndSortingRepository<ID> {
+    private final static ObjectMapper mapper = new ObjectMapper();
+    
     private final EventBus bus;
     private final Class<?> repositoryType;   
     private final long timeout; // default is  5000 ms
+    private final boolean jsonBytes;
+    private final ArgumentCodec argumentCodec;
+    private final CoalescingLoader<ID> loader;
+    private final SingleFlight singleFlight;
+    private final NearCache<ID> nearCache;
+    private final WriteBehindBuffer writeBehind;
+    private final AdmissionControl admission;
+    private final JsonArray fields;
 
-    public AsyncCrudRepositoryImpl(EventBus bus, Class<?> repositoryInterface, long timeout) {
-        this.bus = bus;
-        this.repositoryType = repositoryInterface;
-        this.timeout = timeout;
+    public AsyncCrudRepositoryImpl(AsyncRepositoryBuilder<ID> builder) {
+        this.bus = builder.bus;
+        this.repositoryType = builder.repositoryInterface;
+        this.timeout = builder.timeout;
+        this.jsonBytes = builder.jsonBytes;
+        this.argumentCodec = builder.argumentCodec;
+        this.loader = builder.coalescingWindow < 0 ? null :
+            new CoalescingLoader<>(this, builder.vertx, builder.coalescingWindow);
+        this.singleFlight = builder.getSingleFlight();
+        this.admission = builder.getAdmission();
+        this.nearCache = builder.nearCacheSize == 0 ? null :
+            new NearCache<>(this, bus, Invalidator.getAddress(
+                repositoryType == null ? null : repositoryType.getCanonicalName()), 
+                builder.nearCacheSize, builder.nearCacheTtl, builder.staleWhileRevalidate, 
+                builder.metrics);
+        this.writeBehind = builder.writeBehindSize == 0 ? null :
+            new WriteBehindBuffer(this, builder.vertx, builder.writeBehindSize, builder.writeBehindWindow);
+        this.fields = null;
+    }
+    
+    /**
+     * Constructs the view of a sparse fieldset. Its reads bypass the coalescing 
+     * loader and the near cache, which hold whole entities.
+     */
+    private AsyncCrudRepositoryImpl(AsyncCrudRepositoryImpl<ID> repository, JsonArray fields) {
+        this.bus = repository.bus;
+        this.repositoryType = repository.repositoryType;
+        this.timeout = repository.timeout;
+        this.jsonBytes = repository.jsonBytes;
+        this.argumentCodec = repository.argumentCodec;
+        this.loader = null;
+        this.singleFlight = repository.singleFlight;
+        this.admission = repository.admission;
+        this.nearCache = null;
+        this.writeBehind = repository.writeBehind;
+        this.fields = fields;
     }
     
     @Override
@@ -44,16 +102,124 @@ class AsyncCrudRepositoryImpl<ID extends Serializable> implements AsyncCrudRepos
 		process(command, onreply);
 	}
 
+    /**
+     * Retrieves the entities with the given ids, aligned with the ids: the 
+     * reply has one element per id, in the same order, which is null for an 
+     * id that is not found.
+     * 
+     * @param ids the ids of the entities
+     * @param onreply the response event handler
+     */
+    void findAllAligned(Iterable<ID> ids, MessageHandler<JsonArray> onreply) {
+        JsonArray idArray = new JsonArray();
+        for (ID id : ids) {
+            validateId(id);
+            idArray.add(id);
+        }
+        JsonObject command = new JsonObject()
+            .putString(ACTION, FINDALL)
+            .putArray(ID, idArray)
+            .putBoolean(ALIGNED, true);
+        process(command, onreply);
+    }
+
+    @Override
+    public void findAll(Pageable pageable, MessageHandler<JsonArray> onreply) {
+        validatePageable(pageable);
+        JsonObject command = new JsonObject();
+        command.putString(ACTION, FINDALL)
+               .putObject(PAGEABLE, PagingHelper.toJson(pageable));
+        process(command, onreply);
+    }
+
+    @Override
+    public void findAll(Sort sort, MessageHandler<JsonArray> onreply) {
+        JsonObject command = new JsonObject();
+        command.putString(ACTION, FINDALL);
+        if (sort != null) {
+            command.putArray(SORT, PagingHelper.toJson(sort));
+        }
+        process(command, onreply);
+    }
+
+    @Override
+    public BatchStream findAllStream(int batchSize, Handler<JsonArray> handler, 
+        AsyncResultHandler<Void> endHandler) {
+        return findAllStream(null, batchSize, handler, endHandler);
+    }
+
+    @Override
+    public BatchStream findAllStream(Sort sort, int batchSize, Handler<JsonArray> handler, 
+        AsyncResultHandler<Void> endHandler) {
+        if (batchSize <= 0)
+            throw new IllegalArgumentException("The batch size must be positive.");
+        if (handler == null)
+            throw new IllegalArgumentException("The batch handler cannot be null.");
+        JsonObject command = new JsonObject();
+        command.putString(ACTION, FINDALLSTREAM)
+               .putNumber(BATCH_SIZE, batchSize)
+               .putNumber(TIMEOUT, timeout);
+        if (sort != null) {
+            command.putArray(SORT, PagingHelper.toJson(sort));
+        }
+        BatchStreamImpl stream = new BatchStreamImpl(timeout, handler, endHandler);
+        // The stream decodes the batches itself
+        EncodedMessageHandler<Object> onreply = stream::handle;
+        process(command, onreply);
+        return stream;
+    }
+
+    @Override
+    public void findPage(Pageable pageable, MessageHandler<JsonObject> onreply) {
+        validatePageable(pageable);
+        JsonObject command = new JsonObject();
+        command.putString(ACTION, FINDPAGE)
+               .putObject(PAGEABLE, PagingHelper.toJson(pageable));
+        process(command, onreply);
+    }
+
+    @Override
+    public void findAfter(String after, int size, Sort sort, MessageHandler<JsonObject> onreply) {
+        if (size <= 0)
+            throw new IllegalArgumentException("The slice size must be positive.");
+        JsonObject command = new JsonObject();
+        command.putString(ACTION, FINDAFTER)
+               .putObject(PAGEABLE, PagingHelper.toJson(new PageRequest(0, size, sort)));
+        if (after != null) {
+            command.putString(KeysetHelper.AFTER, after);
+        }
+        process(command, onreply);
+    }
+
     @Override
     public void findOne(ID id, MessageHandler<JsonObject> onreply) {
        validateId(id); 
-       process(FINDONE, id, null, onreply);
+       if (nearCache != null) {
+           nearCache.findOne(id, onreply);
+       } else {
+           fetchOne(id, onreply);
+       }
+    }
+    
+    /**
+     * Fetches an entity from the worker verticle, bypassing the near cache.
+     */
+    void fetchOne(ID id, MessageHandler<JsonObject> onreply) {
+       if (loader != null) {
+           loader.findOne(id, onreply);
+       } else {
+           process(FINDONE, id, null, onreply);
+       }
     }
 
     @Override
     public void save(JsonObject entity, MessageHandler<JsonObject> onreply) {
         validateEntity(entity);
-        process(SAVE, null, entity, onreply);
+        if (writeBehind != null) {
+            writeBehind.save(entity, onreply);
+        } else {
+            process(SAVE, null, entity, onreply);
+        }
     }
 
 	@Override
@@ -89,6 +255,10 @@ class AsyncCrudRepositoryImpl<ID extends Serializable> implements AsyncCrudRepos
 	@Override
 	public void exists(ID id, MessageHandler<Boolean> onreply) {	
         validateId(id);
+        if (loader != null) {
+            loader.exists(id, onreply);
+            return;
+        }
 		process(EXISTS, id, null, onreply);
 	}
 
@@ -98,6 +268,25 @@ class AsyncCrudRepositoryImpl<ID extends Serializable> implements AsyncCrudRepos
 		process(COUNT, null, null, onreply);	
 	}
 
+	@Override
+	public AsyncBatch<ID> batch() {
+		return new AsyncBatch<>(this);
+	}
+
+    @Override
+    public AsyncPagingAndSortingRepository<ID> fields(String... fields) {
+        if (fields == null || fields.length == 0)
+            throw new IllegalArgumentException("The fields cannot be empty.");
+        return new AsyncCrudRepositoryImpl<>(this, new JsonArray(fields));
+    }
+
+    @Override
+    public void close() {
+        if (nearCache != null) {
+            nearCache.close();
+        }
+    }
+
     
     void process(String action, ID id, JsonElement entity,  
     		 MessageHandler<?> onreply) {
@@ -108,17 +297,123 @@ class AsyncCrudRepositoryImpl<ID extends Serializable> implements AsyncCrudRepos
             command.putValue(ID, id);
         }        
         if (entity != null) {
-            command.putElement(ENTITY, entity);
+            if (jsonBytes) {
+                command.putBinary(ENTITY, encode(entity));
+            } else {
+                command.putElement(ENTITY, entity);
+            }
         }      
         process(command, onreply);
     }
     
+    @SuppressWarnings({ "rawtypes", "unchecked" })
     void process(JsonObject command, MessageHandler<?> onreply) {
         if (repositoryType != null) {
             command.putString(REPOSITORY, repositoryType.getCanonicalName());
         }
-        String address = RepositoryVerticle.getEventBusAddress();
-        bus.sendWithTimeout(address, command, timeout, onreply);
+        if (fields != null && (RepositoryVerticle.isRead(command) || 
+            FINDALLSTREAM.equals(command.getString(ACTION)))) {
+            command.putArray(FIELDS, fields.copy());
+        }
+        Handler handler = onreply;
+        if (jsonBytes) {
+            command.putString(FORMAT, BINARY);
+            if (onreply instanceof EncodedMessageHandler == false) {
+                handler = decoder(onreply);
+            }
+        }
+        if (admission != null) {
+            admission.send(timeout, (remaining, onsent) -> send(command, remaining, onsent), handler);
+        } else {
+            send(command, timeout, handler);
+        }
+    }
+    
+    @SuppressWarnings({ "rawtypes", "unchecked" })
+    private void send(JsonObject command, long timeout, Handler handler) {
+        String address = RepositoryVerticle.getLaneAddress(command);
+        if (singleFlight != null && RepositoryVerticle.isRead(command)) {
+            singleFlight.send(address, command, timeout, handler);
+        } else {
+            bus.sendWithTimeout(address, stamp(command, timeout), timeout, handler);
+        }
+    }
+    
+    @Override
+    public void metrics(MessageHandler<JsonObject> onreply) {
+        bus.sendWithTimeout(WorkerMetrics.getAddress(), new JsonObject(), timeout, onreply);
+    }
+    
+    /**
+     * Encodes the arguments of a custom method into the command.
+     * 
+     * @param command the command
+     * @param args the method arguments, excluding the reply handler
+     */
+    void putArguments(JsonObject command, Object[] args) {
+        command.putBinary(ARGS, argumentCodec.encode(args));
+        Class<?> codecType = argumentCodec.getClass();
+        // The worker recognizes the built-in codecs by their encoding
+        if (codecType != CompactArgumentCodec.class && codecType != JavaArgumentCodec.class) {
+            command.putString(CODEC, codecType.getName());
+        }
+    }
+    
+    /**
+     * Wraps the reply handler to decode the encoded entities in the reply into
+     * a <code>JsonObject</code> or <code>JsonArray</code>.
+     */
+    @SuppressWarnings({ "rawtypes", "unchecked" })
+    private Handler<AsyncResult<Message<Object>>> decoder(MessageHandler onreply) {
+        return result -> {
+            if (result.succeeded() && result.result().body() instanceof byte[]) {
+                Message<Object> message = result.result();
+                JsonElement body = decode((byte[]) message.body());
+                onreply.handle(new DefaultFutureResult(new DerivedMessage(message, body)));
+            } else {
+                onreply.handle(result);
+            }
+        };
+    }
+    
+    /**
+     * Encodes an entity or a collection of entities straight into JSON bytes, 
+     * without an intermediate JSON string.
+     * 
+     * @param entity the <code>JsonObject</code> or <code>JsonArray</code>
+     * @return UTF-8 encoded JSON object or array
+     */
+    static byte[] encode(JsonElement entity) {
+        try {
+            return mapper.writeValueAsBytes(entity.isArray() ? 
+                entity.asArray().toList() : entity.asObject().toMap());
+        } catch (IOException ex) {
+            throw new EncodeException("Failed to encode as JSON: " + ex.getMessage());
+        }
+    }
+    
+    /**
+     * Decodes the JSON bytes of an entity or a collection of entities straight 
+     * into the maps and lists of a <code>JsonObject</code> or <code>JsonArray</code>,
+     * without an intermediate JSON string.
+     * 
+     * @param bytes UTF-8 encoded JSON object or array
+     * @return the <code>JsonObject</code> or <code>JsonArray</code>
+     */
+    @SuppressWarnings("unchecked")
+    static JsonElement decode(byte[] bytes) {
+        Object value;
+        try {
+            value = mapper.readValue(bytes, Object.class);
+        } catch (IOException ex) {
+            throw new DecodeException("Failed to decode JSON bytes: " + ex.getMessage());
+        }
+        if (value instanceof List) {
+            return new JsonArray((List<Object>) value);
+        } else if (value instanceof Map) {
+            return new JsonObject((Map<String, Object>) value);
+        }
+        throw new DecodeException("The JSON bytes are neither an object nor an array");
     }
     
     private void validateId(ID id) {
@@ -126,6 +421,11 @@ class AsyncCrudRepositoryImpl<ID extends Serializable> implements AsyncCrudRepos
            throw new IllegalArgumentException("The input Id cannot be null");            
     }
     
+    private void validatePageable(Pageable pageable) {
+        if (pageable == null)
+            throw new IllegalArgumentException("The pageable cannot be null.");
+    }
+    
     private void validateEntity(JsonElement el) {
         if (el == null)
             throw new IllegalArgumentException("The entity or entities cannot be null.");
@@ -4,7 +4,10 @@ package com.github.relai.vertx.springdata;
 import java.io.Serializable;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.domain.Sort;
+import org.vertx.java.core.AsyncResultHandler;
+import org.vertx.java.core.Handler;
 import org.vertx.java.core.json.JsonArray;
+import org.vertx.java.core.json.JsonObject;
 
 /**
  * The asynchronous <code>Repository</code> interface, companion to Spring {@code PagingAndSportingReportory}.
@@ -30,4 +33,54 @@ public interface AsyncPagingAndSortingRepository<ID extends Serializable> extend
 	 * @param onreply the response event handler
 	 */
     void findAll(Sort sort, MessageHandler<JsonArray> onreply);    
+    
+    /**
+	 * Returns a {@code Page} of entities along with the page metadata.
+	 * The payload is a JSON object of the form:
+	 * <pre>
+	 * {"content": [...], "totalElements": 42, "totalPages": 2, 
+	 *  "number": 0, "size": 25, "numberOfElements": 25}
+	 * </pre>
+	 * 
+	 * @param pageable the paging hint
+	 * @param onreply the response event handler
+	 */
+    void findPage(Pageable pageable, MessageHandler<JsonObject> onreply);
+    
+    /**
+	 * Returns a slice of entities in keyset pagination: the first entities in
+	 * the order of the sort and the id, or the ones after the entity of an 
+	 * <code>after</code> token. The payload is a JSON object of the form:
+	 * <pre>
+	 * {"content": [...], "next": "WyJtaWxrIiwyXQ"}
+	 * </pre>
+	 * where <code>next</code> is the token of the next slice, or null after the
+	 * last slice. Unlike a page at an offset, a slice deep in the entities is read 
+	 * as fast as the first one, and it does not skip or repeat entities written 
+	 * in between. The repository must declare the seek method of the sort, such as
+	 * <code>findByNameGreaterThanOrNameAndIdGreaterThan(String, String, Long, Pageable)</code>
+	 * for the sort by name.
+	 * 
+	 * @param after the token of the previous slice, or null for the first slice
+	 * @param size the maximum number of entities in the slice
+	 * @param sort the sort hint, or null for the id order
+	 * @param onreply the response event handler
+	 */
+    void findAfter(String after, int size, Sort sort, MessageHandler<JsonObject> onreply);
+    
+    /**
+	 * Streams all entities sorted by the given options in batches. Each batch 
+	 * is read as a page of the repository.
+	 * 
+	 * @param sort the sort hint, which keeps the pages stable
+	 * @param batchSize the maximum number of entities in a batch
+	 * @param handler the handler of each batch
+	 * @param endHandler the handler called when the stream ends or fails
+	 * @return the stream, to pause, resume or cancel the delivery of the batches
+	 */
+    BatchStream findAllStream(Sort sort, int batchSize, Handler<JsonArray> handler, 
+        AsyncResultHandler<Void> endHandler);
+    
+    @Override
+    AsyncPagingAndSortingRepository<ID> fields(String... fields);
 }
@@ -3,6 +3,7 @@ package com.github.relai.vertx.springdata;
 import java.io.Serializable;
 import java.lang.reflect.Proxy;
 import org.springframework.data.repository.Repository;
+import org.vertx.java.core.Vertx;
 import org.vertx.java.core.eventbus.EventBus;
 
 /**
@@ -28,9 +29,24 @@ import org.vertx.java.core.eventbus.EventBus;
  */
 public class AsyncRepositoryBuilder<ID extends Serializable>  {
     
-    private final EventBus bus;
-    private long timeout = 5000; // default to 5000 ms
-    private Class<? extends Repository> repositoryInterface;
+    final EventBus bus;
+    long timeout = 5000; // default to 5000 ms
+    Class<? extends Repository<?, ?>> repositoryInterface;
+    boolean jsonBytes = false;
+    ArgumentCodec argumentCodec = new CompactArgumentCodec();
+    Vertx vertx;
+    long coalescingWindow = -1; // off
+    boolean singleFlight = false;
+    int nearCacheSize = 0; // off
+    long nearCacheTtl;
+    long staleWhileRevalidate = 0;
+    int writeBehindSize = 0; // off
+    long writeBehindWindow;
+    int maxInFlight = 0; // off
+    int maxQueued;
+    final ClientMetrics metrics = new ClientMetrics();
+    private SingleFlight flights;
+    private AdmissionControl admission;
     
     /**
      * Constructs an instance with a vertx event bus
@@ -60,18 +76,197 @@ public class AsyncRepositoryBuilder<ID extends Serializable>  {
      * @param repositoryInterface  the repository interface type
      * @return this
      */
-    public AsyncRepositoryBuilder<ID> repositoryInterface(Class<? extends Repository> repositoryInterface) {
+    public AsyncRepositoryBuilder<ID> repositoryInterface(Class<? extends Repository<?, ?>> repositoryInterface) {
         this.repositoryInterface = repositoryInterface;
         return this;
     }
     
+    /**
+     * Optionally sends the entities over the event bus as encoded JSON bytes. The
+     * worker verticle then writes the entities straight to JSON with a streaming 
+     * generator, and reads the request entities straight from the bytes, instead 
+     * of converting them to and from intermediate maps. The replies are decoded back into 
+     * <code>JsonObject</code> and <code>JsonArray</code> at the client side, except
+     * for {@link RestHelper}, which writes the encoded bytes to the HTTP response as is.
+     * 
+     * @param value true or false. The default is false.
+     * @return this
+     */
+    public AsyncRepositoryBuilder<ID> jsonBytes(boolean value) {
+        jsonBytes = value;
+        return this;
+    }
+    
+    /**
+     * Optionally sets the codec of the arguments of custom repository methods. 
+     * The default is {@link CompactArgumentCodec}. Use {@link JavaArgumentCodec}, or
+     * a <code>CompactArgumentCodec</code> with the Java serialization fallback, for 
+     * argument types that the compact codec does not support; the worker verticle 
+     * must then be deployed with {@link SpringDeployer#javaSerialization}. A custom
+     * codec must be registered with {@link SpringDeployer#argumentCodec}.
+     * 
+     * @param codec the argument codec
+     * @return this
+     */
+    public AsyncRepositoryBuilder<ID> argumentCodec(ArgumentCodec codec) {
+        argumentCodec = codec;
+        return this;
+    }
+    
+    /**
+     * Optionally coalesces the <code>findOne</code> and <code>exists</code> calls
+     * made within a short window into a single <code>findAll</code> of their ids.
+     * The entities are then handed back to each caller, and an id that does not 
+     * exist still fails the <code>findOne</code> call with NOT_FOUND (404). 
+     * This turns many event bus round trips and queries into one of each.
+     * 
+     * <p>The repository should then be used from the verticle that built it, since 
+     * the replies are handed out on the context that sent the batch. A call is 
+     * deferred by the window, so it may be reordered after a later write.
+     * 
+     * @param vertx the vertx instance, to schedule the batches
+     * @param windowMillis the window to collect the calls in milliseconds, 
+     *        or 0 to collect the calls of the current event loop tick
+     * @return this
+     */
+    public AsyncRepositoryBuilder<ID> coalescing(Vertx vertx, long windowMillis) {
+        if (windowMillis < 0) {
+            throw new IllegalArgumentException("The window cannot be negative");
+        }
+        this.vertx = vertx;
+        this.coalescingWindow = windowMillis;
+        return this;
+    }
+    
+    /**
+     * Optionally shares one event bus request among identical read commands in 
+     * flight. A <code>findAll</code>, <code>findOne</code>, <code>findPage</code>,
+     * <code>exists</code> or <code>count</code>, or a custom query method whose name 
+     * starts with <code>find</code>, <code>read</code>, <code>get</code>, 
+     * <code>query</code>, <code>count</code>, <code>exists</code> or <code>stream</code>,
+     * that is identical to one already sent and not yet answered is not sent; 
+     * it gets the same reply instead. Writes are always sent. 
+     * 
+     * <p>The repositories built by this builder share the requests in flight. 
+     * The number of collapsed requests is counted in the {@link #metrics metrics}.
+     * 
+     * @param value true or false. The default is false.
+     * @return this
+     */
+    public AsyncRepositoryBuilder<ID> singleFlight(boolean value) {
+        singleFlight = value;
+        return this;
+    }
+    
+    /**
+     * Optionally keeps a near cache of the <code>findOne</code> replies at the 
+     * client side. The cache holds up to the given number of entities, evicting
+     * the least recently used ones, and each entity for the given time to live.
+     * The worker verticle publishes an invalidation after every save or delete,
+     * so an entity written by any client is removed from every near cache. 
+     * 
+     * <p>The hits, misses and evictions are counted in the {@link #metrics metrics}.
+     * 
+     * @param maxEntries the maximum number of entities in the cache
+     * @param ttlMillis the time to live of an entity in milliseconds
+     * @return this
+     */
+    public AsyncRepositoryBuilder<ID> nearCache(int maxEntries, long ttlMillis) {
+        if (maxEntries <= 0 || ttlMillis <= 0) {
+            throw new IllegalArgumentException("The cache size and time to live must be positive");
+        }
+        nearCacheSize = maxEntries;
+        nearCacheTtl = ttlMillis;
+        return this;
+    }
+    
+    /**
+     * Optionally serves an expired entity of the {@link #nearCache near cache} for 
+     * a while longer. The first call that finds the expired entity gets it at once,
+     * and triggers a refresh in the background.
+     * 
+     * @param staleMillis how long an entity may be served after it expires, 
+     *        in milliseconds. The default is 0.
+     * @return this
+     */
+    public AsyncRepositoryBuilder<ID> staleWhileRevalidate(long staleMillis) {
+        if (staleMillis < 0) {
+            throw new IllegalArgumentException("The stale period cannot be negative");
+        }
+        staleWhileRevalidate = staleMillis;
+        return this;
+    }
+    
+    /**
+     * Optionally buffers the <code>save</code> calls of single entities, and sends
+     * them as one <code>save</code> of an array, which the worker verticle runs in 
+     * a single transaction. The buffer is sent when it holds the given number of 
+     * entities, or when the window has passed since the first call. Each caller 
+     * still gets its own saved entity. If the batch fails, the entities are saved
+     * one by one, so that only the caller of the failing entity gets the failure.
+     * 
+     * <p>The repository should then be used from the verticle that built it. A save
+     * is deferred by up to the window, so it may be reordered after a later call.
+     * 
+     * @param vertx the vertx instance, to schedule the flushes
+     * @param maxEntities the maximum number of entities in a batch
+     * @param windowMillis the longest a save is buffered, in milliseconds
+     * @return this
+     */
+    public AsyncRepositoryBuilder<ID> writeBehind(Vertx vertx, int maxEntities, long windowMillis) {
+        if (maxEntities <= 0 || windowMillis <= 0) {
+            throw new IllegalArgumentException("The batch size and window must be positive");
+        }
+        this.vertx = vertx;
+        this.writeBehindSize = maxEntities;
+        this.writeBehindWindow = windowMillis;
+        return this;
+    }
+    
+    /**
+     * Optionally bounds the requests in flight to the worker verticle. A call 
+     * beyond the limit waits in a queue until a request in flight is answered, 
+     * and a call that finds the queue full fails at once with a 
+     * {@link RejectedRequest}, which {@link RestHelper} answers with 
+     * SERVICE_UNAVAILABLE (503) and a <code>Retry-After</code> header. So when 
+     * the worker slows down, the excess calls are turned away early instead of 
+     * all waiting for the timeout. The time a call waits in the queue counts 
+     * toward its timeout.
+     * 
+     * <p>The repositories built by this builder share the limit. The requests in 
+     * flight, the queue depth and the rejections are counted in the 
+     * {@link #metrics metrics}.
+     * 
+     * @param maxInFlight the maximum number of requests in flight
+     * @param maxQueued the maximum number of calls waiting, or 0 to reject a call
+     *        at once when the requests in flight are at the maximum
+     * @return this
+     */
+    public AsyncRepositoryBuilder<ID> admission(int maxInFlight, int maxQueued) {
+        if (maxInFlight <= 0 || maxQueued < 0) {
+            throw new IllegalArgumentException("The requests in flight must be positive, and the queue cannot be negative");
+        }
+        this.maxInFlight = maxInFlight;
+        this.maxQueued = maxQueued;
+        return this;
+    }
+    
+    /**
+     * Gets the counters of the repositories built by this builder.
+     * 
+     * @return the metrics
+     */
+    public ClientMetrics metrics() {
+        return metrics;
+    }
+    
     /**
      * Builds a {@link AsyncCrudRepository} instance  
      * 
      * @return an instance of the asynchronous repository
      **/
     public AsyncCrudRepository<ID> build() {
-         return new AsyncCrudRepositoryImpl(bus, repositoryInterface, timeout);
+         return new AsyncCrudRepositoryImpl<>(this);
     }
     
     /**
@@ -82,11 +277,30 @@ public class AsyncRepositoryBuilder<ID extends Serializable>  {
      * @return an instance of the asynchronous repository
      */
     public <R> R build(Class<R> type){
-       AsyncCrudRepositoryImpl impl = new AsyncCrudRepositoryImpl(bus, repositoryInterface, timeout);
+       AsyncCrudRepositoryImpl<ID> impl = new AsyncCrudRepositoryImpl<>(this);
        @SuppressWarnings("unchecked")
 		R proxy = (R) Proxy.newProxyInstance(this.getClass().getClassLoader(),
-            new Class[]{type}, new AsyncRepositoryProxyHandler(impl));
+            new Class<?>[]{type}, new AsyncRepositoryProxyHandler(impl));
         return proxy;      
     }
     
+    SingleFlight getSingleFlight() {
+        if (singleFlight == false) {
+            return null;
+        }
+        if (flights == null) {
+            flights = new SingleFlight(bus, metrics);
+        }
+        return flights;
+    }
+    
+    AdmissionControl getAdmission() {
+        if (maxInFlight == 0) {
+            return null;
+        }
+        if (admission == null) {
+            admission = new AdmissionControl(maxInFlight, maxQueued, metrics);
+        }
+        return admission;
+    }
 }
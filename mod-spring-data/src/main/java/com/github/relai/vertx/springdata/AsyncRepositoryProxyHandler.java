@@ -2,17 +2,26 @@ package com.github.relai.vertx.springdata;
 
 import java.lang.reflect.InvocationHandler;
 import java.lang.reflect.Method;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
 
 import org.vertx.java.core.json.JsonObject;
 
 /**
  * Internal class of a dynamic proxy implementation of the asynchronous repository.
  * 
+ * <p>A method that matches one of {@link AsyncPagingAndSortingRepository}, 
+ * either inherited or redeclared on the proxy interface, is forwarded to the 
+ * implementation and sent as a native action. Any other method is sent as a 
+ * custom repository method.
+ * 
  * @author relai
  */
 class AsyncRepositoryProxyHandler implements InvocationHandler {
 
     AsyncCrudRepositoryImpl<?> impl;
+    private final Map<Method, Optional<Method>> nativeMethods = new ConcurrentHashMap<>();
     
     AsyncRepositoryProxyHandler(AsyncCrudRepositoryImpl<?> impl) {
         this.impl = impl;
@@ -20,8 +29,9 @@ class AsyncRepositoryProxyHandler implements InvocationHandler {
     
 	@Override    
     public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
-       if (method.getDeclaringClass().equals(AsyncCrudRepository.class)) {          
-    	   method.invoke(impl, args);
+       Optional<Method> nativeMethod = nativeMethods.computeIfAbsent(method, this::findNativeMethod);
+       if (nativeMethod.isPresent()) {          
+    	   return nativeMethod.get().invoke(impl, args);
        } else {
            JsonObject command = new JsonObject();
            command.putString(RepositoryVerticle.ACTION, method.getName());
@@ -29,11 +39,18 @@ class AsyncRepositoryProxyHandler implements InvocationHandler {
            System.arraycopy(args, 0, variables, 0, args.length - 1);               
            @SuppressWarnings("rawtypes")
 		   MessageHandler onreply = (MessageHandler)args[args.length -1];              
-           command.putBinary(RepositoryVerticle.ARGS, 
-               SerializationHelper.toBytes(variables));
+           impl.putArguments(command, variables);
            impl.process(command, onreply);                                        
        }     
        return null;
     }
-    
+
+    private Optional<Method> findNativeMethod(Method method) {
+        try {
+            return Optional.of(AsyncPagingAndSortingRepository.class.getMethod(
+                method.getName(), method.getParameterTypes()));
+        } catch (NoSuchMethodException ex) {
+            return Optional.empty();
+        }
+    }
 }
@@ -0,0 +1,118 @@
+package com.github.relai.vertx.springdata;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.function.Function;
+
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Sort;
+
+/**
+ * Internal class of a cursor that reads the entities of a repository one batch
+ * at a time, for the streaming replies of the {@link RepositoryVerticle}.
+ *
+ * <p>When the repository supports paging, each batch is a page queried on demand,
+ * so only the current batch is ever held by the worker. Otherwise the batches
+ * are taken from the iterator of <code>findAll</code>.
+ *
+ * @author relai
+ */
+abstract class BatchCursor {
+
+    protected final int batchSize;
+
+    BatchCursor(int batchSize) {
+        if (batchSize <= 0) {
+            throw new IllegalClientRequest("The batch size must be positive");
+        }
+        this.batchSize = batchSize;
+    }
+
+    /**
+     * Reads the next batch.
+     *
+     * @return the entities of the batch, or null when the cursor is exhausted
+     */
+    abstract List<?> next();
+
+    /**
+     * Creates a cursor that queries one page per batch.
+     *
+     * @param pager the function that queries a page; it returns a <code>Page</code>
+     *        or the content of the page
+     * @param batchSize the page size
+     * @param sort the sort order, or null
+     * @return the cursor
+     */
+    static BatchCursor paged(Function<Pageable, Object> pager, int batchSize, Sort sort) {
+        return new PagedCursor(pager, batchSize, sort);
+    }
+
+    /**
+     * Creates a cursor over the entities of an iterable.
+     *
+     * @param entities the entities
+     * @param batchSize the maximum number of entities in a batch
+     * @return the cursor
+     */
+    static BatchCursor of(Iterable<?> entities, int batchSize) {
+        return new IteratorCursor(entities.iterator(), batchSize);
+    }
+
+    private static class PagedCursor extends BatchCursor {
+        private final Function<Pageable, Object> pager;
+        private final Sort sort;
+        private int number;
+        private boolean exhausted;
+
+        PagedCursor(Function<Pageable, Object> pager, int batchSize, Sort sort) {
+            super(batchSize);
+            this.pager = pager;
+            this.sort = sort;
+        }
+
+        @Override
+        List<?> next() {
+            if (exhausted) {
+                return null;
+            }
+            Object result = pager.apply(new PageRequest(number++, batchSize, sort));
+            List<?> content;
+            if (result instanceof Page) {
+                Page<?> page = (Page<?>) result;
+                content = page.getContent();
+                exhausted = page.hasNext() == false;
+            } else {
+                List<Object> list = new ArrayList<>(batchSize);
+                ((Iterable<?>) result).forEach(list::add);
+                content = list;
+                exhausted = list.size() < batchSize;
+            }
+            return content.isEmpty() ? null : content;
+        }
+    }
+
+    private static class IteratorCursor extends BatchCursor {
+        private final Iterator<?> iterator;
+
+        IteratorCursor(Iterator<?> iterator, int batchSize) {
+            super(batchSize);
+            this.iterator = iterator;
+        }
+
+        @Override
+        List<?> next() {
+            if (iterator.hasNext() == false) {
+                return null;
+            }
+            List<Object> batch = new ArrayList<>(batchSize);
+            while (batch.size() < batchSize && iterator.hasNext()) {
+                batch.add(iterator.next());
+            }
+            return batch;
+        }
+    }
+}
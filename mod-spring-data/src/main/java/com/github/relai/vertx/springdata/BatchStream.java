@@ -0,0 +1,36 @@
+package com.github.relai.vertx.springdata;
+
+/**
+ * A stream of entity batches returned by {@link AsyncCrudRepository#findAllStream findAllStream}.
+ * 
+ * <p>The batches are delivered one at a time. The next batch is requested from 
+ * the worker verticle only after the batch handler returns, and only while the 
+ * stream is not paused. A consumer that writes the batches somewhere slower, 
+ * such as an HTTP response, pauses the stream until it can take more.
+ * 
+ * <p>The worker gives up on the stream if a batch is not acknowledged within
+ * the repository timeout, so a stream should not stay paused for longer than that.
+ * 
+ * @author relai
+ */
+public interface BatchStream {
+    
+    /**
+     * Pauses the stream. No further batch is requested until the stream is resumed.
+     * 
+     * @return this
+     */
+    BatchStream pause();
+    
+    /**
+     * Resumes the stream.
+     * 
+     * @return this
+     */
+    BatchStream resume();
+    
+    /**
+     * Cancels the stream. No further batch is delivered, and the end handler is not called.
+     */
+    void cancel();
+}
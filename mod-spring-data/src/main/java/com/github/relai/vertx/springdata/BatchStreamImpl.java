@@ -0,0 +1,101 @@
+package com.github.relai.vertx.springdata;
+
+import org.vertx.java.core.AsyncResult;
+import org.vertx.java.core.AsyncResultHandler;
+import org.vertx.java.core.Handler;
+import org.vertx.java.core.impl.DefaultFutureResult;
+import org.vertx.java.core.json.JsonArray;
+import org.vertx.java.core.json.JsonObject;
+import org.vertx.java.core.eventbus.Message;
+
+/**
+ * Internal class that implements the {@link BatchStream} at the client side.
+ * 
+ * <p>Each batch arrives as a reply from the worker verticle, and is acknowledged
+ * with a reply of its own to request the next batch. An empty reply ends the stream.
+ * The stream lives on the event loop of the caller, so no synchronization is needed.
+ * 
+ * @author relai
+ */
+class BatchStreamImpl implements BatchStream {
+    private final long timeout;
+    private final Handler<JsonArray> handler;
+    private final AsyncResultHandler<Void> endHandler;
+    
+    private Message<?> pending;
+    private boolean paused;
+    private boolean closed;
+
+    BatchStreamImpl(long timeout, Handler<JsonArray> handler, AsyncResultHandler<Void> endHandler) {
+        this.timeout = timeout;
+        this.handler = handler;
+        this.endHandler = endHandler;
+    }
+
+    @Override
+    public BatchStream pause() {
+        paused = true;
+        return this;
+    }
+
+    @Override
+    public BatchStream resume() {
+        paused = false;
+        if (pending != null) {
+            acknowledge();
+        }
+        return this;
+    }
+
+    @Override
+    public void cancel() {
+        if (closed == false) {
+            closed = true;
+            if (pending != null) {
+                pending.reply(new JsonObject().putBoolean(RepositoryVerticle.CANCEL, true));
+                pending = null;
+            }
+        }
+    }
+    
+    /**
+     * Handles a reply from the worker verticle: a batch, the end of the stream, or a failure.
+     * 
+     * @param result the reply
+     */
+    void handle(AsyncResult<Message<Object>> result) {
+        if (closed) {
+            return;
+        }
+        if (result.failed()) {
+            end(new DefaultFutureResult<>(result.cause()));
+            return;
+        }
+        Message<Object> message = result.result();
+        Object body = message.body();
+        if (body == null) {
+            end(new DefaultFutureResult<>((Void) null));
+            return;
+        }
+        pending = message;
+        JsonArray batch = body instanceof byte[] ? 
+            AsyncCrudRepositoryImpl.decode((byte[]) body).asArray() : (JsonArray) body;
+        handler.handle(batch);
+        if (closed == false && paused == false) {
+            acknowledge();
+        }
+    }
+    
+    private void acknowledge() {
+        Message<?> message = pending;
+        pending = null;
+        message.replyWithTimeout(new JsonObject(), timeout, this::handle);
+    }
+    
+    private void end(AsyncResult<Void> result) {
+        closed = true;
+        if (endHandler != null) {
+            endHandler.handle(result);
+        }
+    }
+}
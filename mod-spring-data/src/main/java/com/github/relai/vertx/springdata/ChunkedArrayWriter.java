@@ -0,0 +1,162 @@
+package com.github.relai.vertx.springdata;
+
+import org.vertx.java.core.buffer.Buffer;
+import org.vertx.java.core.http.HttpServerResponse;
+import org.vertx.java.core.json.JsonArray;
+import org.vertx.java.core.json.JsonElement;
+
+/**
+ * Internal class that writes a JSON array to a chunked HTTP response, one element
+ * at a time. The elements are gathered in a buffer of bounded size, which is
+ * written to the response whenever it fills up, so the array is never encoded
+ * into a single string.
+ *
+ * <p>With a {@link ResponseCompressor.Chunks compressor}, each buffer is
+ * compressed before it is written.
+ *
+ * <p>Whenever the write queue of the response is full, the writer stops until
+ * the response is drained: an array in memory is resumed from the next element,
+ * and a {@link BatchStream} is paused and resumed.
+ *
+ * @author relai
+ */
+class ChunkedArrayWriter {
+    final static int BUFFER_SIZE = 8192;
+
+    private final HttpServerResponse response;
+    private final ResponseCompressor.Chunks chunks;
+    private Buffer buffer;
+    private BatchStream stream;
+    private boolean started;
+    private boolean empty = true;
+
+    ChunkedArrayWriter(HttpServerResponse response) {
+        this(response, null);
+    }
+
+    /**
+     * Constructs the writer of a compressed response.
+     *
+     * @param response the response
+     * @param chunks the compressor of the buffers, or null to write them as is
+     */
+    ChunkedArrayWriter(HttpServerResponse response, ResponseCompressor.Chunks chunks) {
+        this.response = response;
+        this.chunks = chunks;
+    }
+
+    /**
+     * Whether the response headers have been sent. After that, a failure can
+     * only be reported by closing the connection.
+     *
+     * @return true if the response has started
+     */
+    boolean isStarted() {
+        return started;
+    }
+
+    /**
+     * Writes the whole array and ends the response.
+     *
+     * @param elements the elements
+     */
+    void writeAll(JsonArray elements) {
+        writeAll(elements, 0);
+    }
+
+    private void writeAll(JsonArray elements, int from) {
+        for (int index = from; index < elements.size(); ) {
+            write(elements.get(index++));
+            if (response.writeQueueFull()) {
+                int next = index;
+                response.drainHandler(v -> writeAll(elements, next));
+                return;
+            }
+        }
+        end();
+    }
+
+    /**
+     * Sets the stream that delivers the batches, so that it is paused while
+     * the response is full and cancelled if the connection closes.
+     *
+     * @param stream the stream
+     */
+    void setStream(BatchStream stream) {
+        this.stream = stream;
+        response.closeHandler(v -> stream.cancel());
+    }
+
+    /**
+     * Appends a batch of elements to the response.
+     *
+     * @param batch the elements
+     */
+    void writeBatch(JsonArray batch) {
+        for (Object element : batch) {
+            write(element);
+        }
+        if (flush() == false && stream != null) {
+            stream.pause();
+            response.drainHandler(v -> stream.resume());
+        }
+    }
+
+    /**
+     * Appends an element to the response.
+     *
+     * @param element the element
+     */
+    void write(Object element) {
+        if (started == false) {
+            started = true;
+            response.setChunked(true)
+                    .putHeader("content-type", "application/json");
+            if (chunks != null) {
+                response.putHeader(ResponseCompressor.CONTENT_ENCODING, chunks.getEncoding());
+            }
+            buffer = new Buffer(BUFFER_SIZE).appendString("[");
+        }
+        if (empty == false) {
+            buffer.appendString(",");
+        }
+        empty = false;
+        if (element instanceof JsonElement) {
+            JsonElement el = (JsonElement) element;
+            buffer.appendString(el.isArray() ? el.asArray().encode() : el.asObject().encode());
+        } else {
+            // Encode the value as the only element of an array, without the brackets
+            String json = new JsonArray().add(element).encode();
+            buffer.appendString(json.substring(1, json.length() - 1));
+        }
+        if (buffer.length() >= BUFFER_SIZE) {
+            flush();
+        }
+    }
+
+    /**
+     * Writes the buffered elements to the response.
+     *
+     * @return true if the response can take more, or false if its write queue is full
+     */
+    boolean flush() {
+        if (buffer != null && buffer.length() > 0) {
+            response.write(chunks == null ? buffer : chunks.compress(buffer));
+            buffer = new Buffer(BUFFER_SIZE);
+        }
+        return response.writeQueueFull() == false;
+    }
+
+    /**
+     * Ends the array and the response.
+     */
+    void end() {
+        if (started == false) {
+            response.putHeader("content-type", "application/json")
+                    .end("[]");
+            return;
+        }
+        buffer.appendString("]");
+        response.end(chunks == null ? buffer : chunks.finish(buffer));
+    }
+}
@@ -0,0 +1,98 @@
+package com.github.relai.vertx.springdata;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The counters of the asynchronous repositories built by an {@link AsyncRepositoryBuilder}.
+ * The counters are cumulative since the builder was created.
+ * 
+ * <p>Example: 
+ *   <pre> {@code
+ *    AsyncRepositoryBuilder<Long> builder = new AsyncRepositoryBuilder<>(eventBus);
+ *    AsyncCrudRepository<Long> client = builder.singleFlight(true).build(); 
+ *    ...
+ *    long collapsed = builder.metrics().getCollapsedRequests();
+ *   } </pre>
+ * 
+ * @author relai
+ */
+public class ClientMetrics {
+    final AtomicLong collapsedRequests = new AtomicLong();
+    final AtomicLong cacheHits = new AtomicLong();
+    final AtomicLong cacheMisses = new AtomicLong();
+    final AtomicLong cacheEvictions = new AtomicLong();
+    final AtomicLong inFlightRequests = new AtomicLong();
+    final AtomicLong queuedRequests = new AtomicLong();
+    final AtomicLong rejectedRequests = new AtomicLong();
+    
+    ClientMetrics() {
+    }
+    
+    /**
+     * Gets the number of requests that shared the reply of an identical request
+     * already in flight, instead of being sent.
+     * 
+     * @return the number of collapsed requests
+     */
+    public long getCollapsedRequests() {
+        return collapsedRequests.get();
+    }
+    
+    /**
+     * Gets the number of <code>findOne</code> calls answered by the near cache, 
+     * including the stale entries served while they are refreshed.
+     * 
+     * @return the number of cache hits
+     */
+    public long getCacheHits() {
+        return cacheHits.get();
+    }
+    
+    /**
+     * Gets the number of <code>findOne</code> calls sent to the worker verticle
+     * because the near cache did not hold the entity.
+     * 
+     * @return the number of cache misses
+     */
+    public long getCacheMisses() {
+        return cacheMisses.get();
+    }
+    
+    /**
+     * Gets the number of entries evicted from the near cache because it was full.
+     * 
+     * @return the number of cache evictions
+     */
+    public long getCacheEvictions() {
+        return cacheEvictions.get();
+    }
+    
+    /**
+     * Gets the number of requests sent to the worker verticle and not yet 
+     * answered, under the {@link AsyncRepositoryBuilder#admission admission control}.
+     * 
+     * @return the current number of requests in flight
+     */
+    public long getInFlightRequests() {
+        return inFlightRequests.get();
+    }
+    
+    /**
+     * Gets the number of requests waiting for a request in flight to be answered,
+     * under the {@link AsyncRepositoryBuilder#admission admission control}.
+     * 
+     * @return the current depth of the wait queue
+     */
+    public long getQueuedRequests() {
+        return queuedRequests.get();
+    }
+    
+    /**
+     * Gets the number of requests rejected because the wait queue was full.
+     * 
+     * @return the number of rejected requests
+     */
+    public long getRejectedRequests() {
+        return rejectedRequests.get();
+    }
+}
@@ -0,0 +1,135 @@
+package com.github.relai.vertx.springdata;
+
+import static com.github.relai.vertx.springdata.RepositoryVerticle.*;
+import static io.netty.handler.codec.http.HttpResponseStatus.NOT_FOUND;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.vertx.java.core.Vertx;
+import org.vertx.java.core.eventbus.Message;
+import org.vertx.java.core.eventbus.ReplyException;
+import org.vertx.java.core.eventbus.ReplyFailure;
+import org.vertx.java.core.impl.DefaultFutureResult;
+import org.vertx.java.core.json.JsonArray;
+import org.vertx.java.core.json.JsonObject;
+
+/**
+ * Internal class that coalesces the <code>findOne</code> and <code>exists</code>
+ * calls of an {@link AsyncCrudRepositoryImpl} into a single <code>findAll</code>
+ * of their ids.
+ *
+ * <p>The calls are collected until the end of the current event loop tick, or for
+ * the configured window, and then sent as one command. The worker verticle replies
+ * with the entities aligned with the ids, which are handed back to each caller.
+ *
+ * @author relai
+ * @param <ID> the entity Id type
+ */
+class CoalescingLoader<ID extends Serializable> {
+    // Keeps the IN clause of the query within the limits of common databases
+    final static int MAX_BATCH_SIZE = 500;
+
+    private final AsyncCrudRepositoryImpl<ID> impl;
+    private final Vertx vertx;
+    private final long window;
+    private Map<ID, List<Waiter>> pending = new LinkedHashMap<>();
+
+    CoalescingLoader(AsyncCrudRepositoryImpl<ID> impl, Vertx vertx, long window) {
+        this.impl = impl;
+        this.vertx = vertx;
+        this.window = window;
+    }
+
+    void findOne(ID id, MessageHandler<JsonObject> onreply) {
+        enqueue(id, (message, entity) -> {
+            if (entity == null) {
+                onreply.handle(new DefaultFutureResult<>(new ReplyException(ReplyFailure.RECIPIENT_FAILURE,
+                    NOT_FOUND.code(), "Cannot locate the record with id " + id)));
+            } else {
+                onreply.handle(new DefaultFutureResult<>(new DerivedMessage<>(message, entity)));
+            }
+        }, onreply);
+    }
+
+    void exists(ID id, MessageHandler<Boolean> onreply) {
+        enqueue(id, (message, entity) ->
+            onreply.handle(new DefaultFutureResult<>(new DerivedMessage<>(message, entity != null))),
+            onreply);
+    }
+
+    private void enqueue(ID id, Completion completion, MessageHandler<?> onreply) {
+        if (pending.isEmpty()) {
+            if (window == 0) {
+                vertx.runOnContext(v -> dispatch());
+            } else {
+                vertx.setTimer(window, timerId -> dispatch());
+            }
+        }
+        pending.computeIfAbsent(id, key -> new ArrayList<>(1))
+               .add(new Waiter(completion, onreply));
+        if (pending.size() >= MAX_BATCH_SIZE) {
+            dispatch();
+        }
+    }
+
+    @SuppressWarnings({ "unchecked", "rawtypes" })
+    private void dispatch() {
+        if (pending.isEmpty()) {
+            return;
+        }
+        Map<ID, List<Waiter>> batch = pending;
+        pending = new LinkedHashMap<>();
+
+        List<ID> ids = new ArrayList<>(batch.keySet());
+        JsonArray idArray = new JsonArray();
+        for (ID id : ids) {
+            idArray.add(id);
+        }
+        JsonObject command = new JsonObject()
+            .putString(ACTION, FINDALL)
+            .putArray(ID, idArray)
+            .putBoolean(ALIGNED, true);
+        MessageHandler<JsonArray> onreply = reply -> {
+            if (reply.failed()) {
+                for (List<Waiter> waiters : batch.values()) {
+                    for (Waiter waiter : waiters) {
+                        ((MessageHandler) waiter.onreply).handle(reply);
+                    }
+                }
+                return;
+            }
+            Message<JsonArray> message = reply.result();
+            JsonArray entities = message.body();
+            for (int index = 0; index < ids.size(); index++) {
+                JsonObject entity = entities.get(index);
+                boolean shared = false;
+                for (Waiter waiter : batch.get(ids.get(index))) {
+                    // Each caller of the same id gets its own copy of the entity
+                    JsonObject copy = shared && entity != null ? entity.copy() : entity;
+                    shared = true;
+                    waiter.completion.complete(message, copy);
+                }
+            }
+        };
+        impl.process(command, onreply);
+    }
+
+    @FunctionalInterface
+    private interface Completion {
+        void complete(Message<?> message, JsonObject entity);
+    }
+
+    private static class Waiter {
+        final Completion completion;
+        final MessageHandler<?> onreply;
+
+        Waiter(Completion completion, MessageHandler<?> onreply) {
+            this.completion = completion;
+            this.onreply = onreply;
+        }
+    }
+}
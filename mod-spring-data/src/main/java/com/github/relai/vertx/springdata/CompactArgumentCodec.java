@@ -0,0 +1,453 @@
+package com.github.relai.vertx.springdata;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Serializable;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Date;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.domain.Sort.Direction;
+import org.springframework.data.domain.Sort.NullHandling;
+import org.springframework.data.domain.Sort.Order;
+import org.vertx.java.core.VertxException;
+
+/**
+ * The default argument codec, a compact type-tagged binary encoding.
+ *
+ * <p>Each argument is written as a one-byte type tag followed by its value. Integral
+ * numbers are written as variable-length zig-zag integers and strings as
+ * length-prefixed UTF-8, so a call such as <code>findByCompleted(true)</code>
+ * takes three bytes. The supported types are:
+ * <ul>
+ *    <li> null, the primitive wrappers and <code>String</code>
+ *    <li> <code>BigDecimal</code>, <code>BigInteger</code> and <code>UUID</code>
+ *    <li> <code>java.util.Date</code>, <code>java.sql.Date</code> and <code>java.sql.Timestamp</code>
+ *    <li> enums
+ *    <li> <code>byte[]</code>
+ *    <li> <code>Pageable</code> and <code>Sort</code>
+ *    <li> lists and sets of the above
+ * </ul>
+ *
+ * <p>Any other argument is rejected with an <code>IllegalArgumentException</code>,
+ * unless the Java serialization fallback is enabled, in which case it is embedded
+ * as a Java-serialized value. Without the fallback, an embedded Java-serialized 
+ * value is also rejected when decoding, so untrusted bytes are never deserialized.
+ *
+ * @author relai
+ */
+public class CompactArgumentCodec implements ArgumentCodec {
+
+    // The first byte of the encoding, and the format version
+    private static final byte MAGIC = 0x01;
+
+    private static final byte NULL       = 0;
+    private static final byte TRUE       = 1;
+    private static final byte FALSE      = 2;
+    private static final byte BYTE       = 3;
+    private static final byte SHORT      = 4;
+    private static final byte INT        = 5;
+    private static final byte LONG       = 6;
+    private static final byte FLOAT      = 7;
+    private static final byte DOUBLE     = 8;
+    private static final byte CHAR       = 9;
+    private static final byte STRING     = 10;
+    private static final byte BIG_DECIMAL = 11;
+    private static final byte BIG_INTEGER = 12;
+    private static final byte UUID_TYPE  = 13;
+    private static final byte DATE       = 14;
+    private static final byte SQL_DATE   = 15;
+    private static final byte TIMESTAMP  = 16;
+    private static final byte ENUM       = 17;
+    private static final byte BYTES      = 18;
+    private static final byte PAGEABLE   = 19;
+    private static final byte SORT       = 20;
+    private static final byte LIST       = 21;
+    private static final byte SET        = 22;
+    private static final byte JAVA       = 23;
+
+    private final boolean javaFallback;
+
+    /**
+     * Constructs the codec without the Java serialization fallback.
+     */
+    public CompactArgumentCodec() {
+        this(false);
+    }
+
+    /**
+     * Constructs the codec.
+     *
+     * @param javaFallback whether to embed unsupported <code>Serializable</code>
+     *        arguments using Java serialization, and to decode them
+     */
+    public CompactArgumentCodec(boolean javaFallback) {
+        this.javaFallback = javaFallback;
+    }
+
+    /**
+     * Checks whether the bytes are in the compact encoding.
+     *
+     * @param bytes the encoded arguments
+     * @return true if the bytes are in the compact encoding
+     */
+    public static boolean isCompact(byte[] bytes) {
+        return bytes.length > 0 && bytes[0] == MAGIC;
+    }
+
+    @Override
+    public byte[] encode(Object[] args) {
+        Output out = new Output();
+        out.write(MAGIC);
+        out.writeVarLong(args.length);
+        for (Object arg : args) {
+            writeValue(out, arg);
+        }
+        return out.toByteArray();
+    }
+
+    @Override
+    public Object[] decode(byte[] bytes) {
+        if (isCompact(bytes) == false) {
+            throw new VertxException("The arguments are not in the compact encoding");
+        }
+        Input in = new Input(bytes, 1);
+        Object[] args = new Object[in.readCount()];
+        for (int index = 0; index < args.length; index++) {
+            args[index] = readValue(in);
+        }
+        return args;
+    }
+
+    private void writeValue(Output out, Object value) {
+        if (value == null) {
+            out.write(NULL);
+        } else if (value instanceof String) {
+            out.write(STRING);
+            out.writeString((String) value);
+        } else if (value instanceof Boolean) {
+            out.write((Boolean) value ? TRUE : FALSE);
+        } else if (value instanceof Integer) {
+            out.write(INT);
+            out.writeVarLong((Integer) value);
+        } else if (value instanceof Long) {
+            out.write(LONG);
+            out.writeVarLong((Long) value);
+        } else if (value instanceof Short) {
+            out.write(SHORT);
+            out.writeVarLong((Short) value);
+        } else if (value instanceof Byte) {
+            out.write(BYTE);
+            out.write((Byte) value);
+        } else if (value instanceof Character) {
+            out.write(CHAR);
+            out.writeVarLong((Character) value);
+        } else if (value instanceof Double) {
+            out.write(DOUBLE);
+            out.writeFixedLong(Double.doubleToLongBits((Double) value));
+        } else if (value instanceof Float) {
+            out.write(FLOAT);
+            out.writeFixedInt(Float.floatToIntBits((Float) value));
+        } else if (value instanceof BigDecimal) {
+            BigDecimal decimal = (BigDecimal) value;
+            out.write(BIG_DECIMAL);
+            out.writeVarLong(decimal.scale());
+            out.writeByteArray(decimal.unscaledValue().toByteArray());
+        } else if (value instanceof BigInteger) {
+            out.write(BIG_INTEGER);
+            out.writeByteArray(((BigInteger) value).toByteArray());
+        } else if (value instanceof UUID) {
+            UUID uuid = (UUID) value;
+            out.write(UUID_TYPE);
+            out.writeFixedLong(uuid.getMostSignificantBits());
+            out.writeFixedLong(uuid.getLeastSignificantBits());
+        } else if (value.getClass() == Date.class) {
+            out.write(DATE);
+            out.writeVarLong(((Date) value).getTime());
+        } else if (value.getClass() == java.sql.Date.class) {
+            out.write(SQL_DATE);
+            out.writeVarLong(((Date) value).getTime());
+        } else if (value.getClass() == java.sql.Timestamp.class) {
+            java.sql.Timestamp timestamp = (java.sql.Timestamp) value;
+            out.write(TIMESTAMP);
+            out.writeVarLong(timestamp.getTime());
+            out.writeVarLong(timestamp.getNanos());
+        } else if (value instanceof Enum) {
+            Enum<?> e = (Enum<?>) value;
+            out.write(ENUM);
+            out.writeString(e.getDeclaringClass().getName());
+            out.writeString(e.name());
+        } else if (value instanceof byte[]) {
+            out.write(BYTES);
+            out.writeByteArray((byte[]) value);
+        } else if (value instanceof Pageable) {
+            Pageable pageable = (Pageable) value;
+            out.write(PAGEABLE);
+            out.writeVarLong(pageable.getPageNumber());
+            out.writeVarLong(pageable.getPageSize());
+            writeValue(out, pageable.getSort());
+        } else if (value instanceof Sort) {
+            out.write(SORT);
+            writeSort(out, (Sort) value);
+        } else if (value instanceof List || value instanceof Set) {
+            Collection<?> collection = (Collection<?>) value;
+            out.write(value instanceof Set ? SET : LIST);
+            out.writeVarLong(collection.size());
+            for (Object item : collection) {
+                writeValue(out, item);
+            }
+        } else if (javaFallback && value instanceof Serializable) {
+            out.write(JAVA);
+            out.writeByteArray(SerializationHelper.toBytes(new Object[]{value}));
+        } else {
+            throw new IllegalArgumentException("The argument type " + value.getClass().getName() +
+                " is not supported by the compact codec. Consider enabling the Java serialization fallback.");
+        }
+    }
+
+    private void writeSort(Output out, Sort sort) {
+        List<Order> orders = new ArrayList<>();
+        sort.forEach(orders::add);
+        out.writeVarLong(orders.size());
+        for (Order order : orders) {
+            Direction direction = (order.getDirection() == null) ? 
+                Sort.DEFAULT_DIRECTION : order.getDirection();
+            NullHandling nullHandling = (order.getNullHandling() == null) ? 
+                NullHandling.NATIVE : order.getNullHandling();
+            out.writeString(order.getProperty());
+            out.write((byte) direction.ordinal());
+            out.write((byte) nullHandling.ordinal());
+            out.write(order.isIgnoreCase() ? TRUE : FALSE);
+        }
+    }
+
+    @SuppressWarnings({ "rawtypes", "unchecked" })
+    private Object readValue(Input in) {
+        byte tag = in.read();
+        switch (tag) {
+            case NULL:
+                return null;
+            case TRUE:
+                return Boolean.TRUE;
+            case FALSE:
+                return Boolean.FALSE;
+            case BYTE:
+                return in.read();
+            case SHORT:
+                return (short) in.readVarLong();
+            case INT:
+                return (int) in.readVarLong();
+            case LONG:
+                return in.readVarLong();
+            case FLOAT:
+                return Float.intBitsToFloat(in.readFixedInt());
+            case DOUBLE:
+                return Double.longBitsToDouble(in.readFixedLong());
+            case CHAR:
+                return (char) in.readVarLong();
+            case STRING:
+                return in.readString();
+            case BIG_DECIMAL: {
+                int scale = (int) in.readVarLong();
+                return new BigDecimal(new BigInteger(in.readByteArray()), scale);
+            }
+            case BIG_INTEGER:
+                return new BigInteger(in.readByteArray());
+            case UUID_TYPE:
+                return new UUID(in.readFixedLong(), in.readFixedLong());
+            case DATE:
+                return new Date(in.readVarLong());
+            case SQL_DATE:
+                return new java.sql.Date(in.readVarLong());
+            case TIMESTAMP: {
+                java.sql.Timestamp timestamp = new java.sql.Timestamp(in.readVarLong());
+                timestamp.setNanos((int) in.readVarLong());
+                return timestamp;
+            }
+            case ENUM: {
+                String type = in.readString();
+                String name = in.readString();
+                Class<?> enumType;
+                try {
+                    // Not initialized, since the type comes from the message
+                    enumType = Class.forName(type, false, getClass().getClassLoader());
+                } catch (ClassNotFoundException ex) {
+                    throw new VertxException(ex);
+                }
+                if (enumType.isEnum() == false) {
+                    throw new VertxException("Not an enum type: " + type);
+                }
+                return Enum.valueOf((Class<Enum>) enumType, name);
+            }
+            case BYTES:
+                return in.readByteArray();
+            case PAGEABLE: {
+                int page = (int) in.readVarLong();
+                int size = (int) in.readVarLong();
+                Sort sort = (Sort) readValue(in);
+                return new PageRequest(page, size, sort);
+            }
+            case SORT:
+                return readSort(in);
+            case LIST:
+            case SET: {
+                int size = in.readCount();
+                Collection<Object> collection = (tag == SET) ?
+                    new LinkedHashSet<>(size * 2) : new ArrayList<>(size);
+                for (int index = 0; index < size; index++) {
+                    collection.add(readValue(in));
+                }
+                return collection;
+            }
+            case JAVA:
+                if (javaFallback == false) {
+                    throw new VertxException("The Java serialization fallback is not enabled");
+                }
+                return SerializationHelper.fromBytes(in.readByteArray())[0];
+            default:
+                throw new VertxException("Unknown argument type tag " + tag);
+        }
+    }
+
+    private Sort readSort(Input in) {
+        int size = in.readCount();
+        List<Order> orders = new ArrayList<>(size);
+        for (int index = 0; index < size; index++) {
+            String property = in.readString();
+            Direction direction = Direction.values()[in.read()];
+            NullHandling nullHandling = NullHandling.values()[in.read()];
+            Order order = new Order(direction, property, nullHandling);
+            orders.add(in.read() == TRUE ? order.ignoreCase() : order);
+        }
+        return new Sort(orders);
+    }
+
+    /**
+     * The output buffer of the encoding.
+     */
+    private static class Output extends ByteArrayOutputStream {
+
+        Output() {
+            super(32);
+        }
+
+        void write(byte b) {
+            super.write(b);
+        }
+
+        void writeVarLong(long value) {
+            long v = (value << 1) ^ (value >> 63); // zig-zag
+            while ((v & ~0x7FL) != 0) {
+                super.write((int) ((v & 0x7F) | 0x80));
+                v >>>= 7;
+            }
+            super.write((int) v);
+        }
+
+        void writeFixedInt(int value) {
+            for (int shift = 24; shift >= 0; shift -= 8) {
+                super.write(value >>> shift);
+            }
+        }
+
+        void writeFixedLong(long value) {
+            for (int shift = 56; shift >= 0; shift -= 8) {
+                super.write((int) (value >>> shift));
+            }
+        }
+
+        void writeByteArray(byte[] bytes) {
+            writeVarLong(bytes.length);
+            super.write(bytes, 0, bytes.length);
+        }
+
+        void writeString(String s) {
+            writeByteArray(s.getBytes(StandardCharsets.UTF_8));
+        }
+    }
+
+    /**
+     * The input cursor of the encoding.
+     */
+    private static class Input {
+        private final byte[] bytes;
+        private int position;
+
+        Input(byte[] bytes, int position) {
+            this.bytes = bytes;
+            this.position = position;
+        }
+
+        byte read() {
+            if (position >= bytes.length) {
+                throw new VertxException("Unexpected end of the encoded arguments");
+            }
+            return bytes[position++];
+        }
+
+        long readVarLong() {
+            long v = 0;
+            for (int shift = 0; shift < 64; shift += 7) {
+                byte b = read();
+                v |= (long) (b & 0x7F) << shift;
+                if ((b & 0x80) == 0) {
+                    return (v >>> 1) ^ -(v & 1); // zig-zag
+                }
+            }
+            throw new VertxException("Malformed variable-length integer");
+        }
+
+        int readFixedInt() {
+            int v = 0;
+            for (int index = 0; index < 4; index++) {
+                v = (v << 8) | (read() & 0xFF);
+            }
+            return v;
+        }
+
+        long readFixedLong() {
+            long v = 0;
+            for (int index = 0; index < 8; index++) {
+                v = (v << 8) | (read() & 0xFF);
+            }
+            return v;
+        }
+
+        /**
+         * Reads the number of bytes or elements that follow, before anything is
+         * allocated for them. Each element takes at least one byte, so a count
+         * beyond the remaining bytes is malformed.
+         */
+        int readCount() {
+            long count = readVarLong();
+            if (count < 0 || count > bytes.length - position) {
+                throw new VertxException("Unexpected end of the encoded arguments");
+            }
+            return (int) count;
+        }
+
+        byte[] readByteArray() {
+            int length = readCount();
+            byte[] result = new byte[length];
+            System.arraycopy(bytes, position, result, 0, length);
+            position += length;
+            return result;
+        }
+
+        String readString() {
+            int length = readCount();
+            String s = new String(bytes, position, length, StandardCharsets.UTF_8);
+            position += length;
+            return s;
+        }
+    }
+}
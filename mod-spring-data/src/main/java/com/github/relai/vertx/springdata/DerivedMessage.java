@@ -0,0 +1,282 @@
+package com.github.relai.vertx.springdata;
+
+import org.vertx.java.core.AsyncResult;
+import org.vertx.java.core.Handler;
+import org.vertx.java.core.buffer.Buffer;
+import org.vertx.java.core.eventbus.Message;
+import org.vertx.java.core.json.JsonArray;
+import org.vertx.java.core.json.JsonObject;
+
+/**
+ * Internal class of a message that carries a body derived from another message,
+ * such as a reply decoded at the client side. Everything but the body is 
+ * delegated to the original message.
+ * 
+ * <p>Vert.x offers no public message implementation to carry another body, so the
+ * replies that are decoded, copied or assembled at the client side, by the 
+ * JSON bytes decoder, the near cache, the single flight, the coalescing loader, 
+ * the write-behind buffer and the REST helper, all go through this class. Its 
+ * length is that of the reply overloads of the <code>Message</code> interface.
+ * 
+ * @author relai
+ * @param <T> the body type
+ */
+class DerivedMessage<T> implements Message<T> {
+    
+    private final Message<?> source;
+    private final T body;
+    
+    /**
+     * Constructs the message.
+     * 
+     * @param source the original message
+     * @param body the derived body
+     */
+    DerivedMessage(Message<?> source, T body) {
+        this.source = source;
+        this.body = body;
+    }
+
+    @Override
+    public String address() {
+        return source.address();
+    }
+
+    @Override
+    public T body() {
+        return body;
+    }
+
+    @Override
+    public String replyAddress() {
+        return source.replyAddress();
+    }
+
+    @Override
+    public void reply() {
+        source.reply();
+    }
+
+    @Override
+    public void reply(Object message) {
+        source.reply(message);
+    }
+
+    @Override
+    public void reply(JsonObject message) {
+        source.reply(message);
+    }
+
+    @Override
+    public void reply(JsonArray message) {
+        source.reply(message);
+    }
+
+    @Override
+    public void reply(String message) {
+        source.reply(message);
+    }
+
+    @Override
+    public void reply(Buffer message) {
+        source.reply(message);
+    }
+
+    @Override
+    public void reply(byte[] message) {
+        source.reply(message);
+    }
+
+    @Override
+    public void reply(Integer message) {
+        source.reply(message);
+    }
+
+    @Override
+    public void reply(Long message) {
+        source.reply(message);
+    }
+
+    @Override
+    public void reply(Short message) {
+        source.reply(message);
+    }
+
+    @Override
+    public void reply(Character message) {
+        source.reply(message);
+    }
+
+    @Override
+    public void reply(Boolean message) {
+        source.reply(message);
+    }
+
+    @Override
+    public void reply(Float message) {
+        source.reply(message);
+    }
+
+    @Override
+    public void reply(Double message) {
+        source.reply(message);
+    }
+
+    @Override
+    public <R> void reply(Handler<Message<R>> replyHandler) {
+        source.reply(replyHandler);
+    }
+
+    @Override
+    public <R> void replyWithTimeout(long timeout, Handler<AsyncResult<Message<R>>> replyHandler) {
+        source.replyWithTimeout(timeout, replyHandler);
+    }
+
+    @Override
+    public <R> void reply(Object message, Handler<Message<R>> replyHandler) {
+        source.reply(message, replyHandler);
+    }
+
+    @Override
+    public <R> void replyWithTimeout(Object message, long timeout, 
+        Handler<AsyncResult<Message<R>>> replyHandler) {
+        source.replyWithTimeout(message, timeout, replyHandler);
+    }
+
+    @Override
+    public <R> void reply(JsonObject message, Handler<Message<R>> replyHandler) {
+        source.reply(message, replyHandler);
+    }
+
+    @Override
+    public <R> void replyWithTimeout(JsonObject message, long timeout, 
+        Handler<AsyncResult<Message<R>>> replyHandler) {
+        source.replyWithTimeout(message, timeout, replyHandler);
+    }
+
+    @Override
+    public <R> void reply(JsonArray message, Handler<Message<R>> replyHandler) {
+        source.reply(message, replyHandler);
+    }
+
+    @Override
+    public <R> void replyWithTimeout(JsonArray message, long timeout, 
+        Handler<AsyncResult<Message<R>>> replyHandler) {
+        source.replyWithTimeout(message, timeout, replyHandler);
+    }
+
+    @Override
+    public <R> void reply(String message, Handler<Message<R>> replyHandler) {
+        source.reply(message, replyHandler);
+    }
+
+    @Override
+    public <R> void replyWithTimeout(String message, long timeout, 
+        Handler<AsyncResult<Message<R>>> replyHandler) {
+        source.replyWithTimeout(message, timeout, replyHandler);
+    }
+
+    @Override
+    public <R> void reply(Buffer message, Handler<Message<R>> replyHandler) {
+        source.reply(message, replyHandler);
+    }
+
+    @Override
+    public <R> void replyWithTimeout(Buffer message, long timeout, 
+        Handler<AsyncResult<Message<R>>> replyHandler) {
+        source.replyWithTimeout(message, timeout, replyHandler);
+    }
+
+    @Override
+    public <R> void reply(byte[] message, Handler<Message<R>> replyHandler) {
+        source.reply(message, replyHandler);
+    }
+
+    @Override
+    public <R> void replyWithTimeout(byte[] message, long timeout, 
+        Handler<AsyncResult<Message<R>>> replyHandler) {
+        source.replyWithTimeout(message, timeout, replyHandler);
+    }
+
+    @Override
+    public <R> void reply(Integer message, Handler<Message<R>> replyHandler) {
+        source.reply(message, replyHandler);
+    }
+
+    @Override
+    public <R> void replyWithTimeout(Integer message, long timeout, 
+        Handler<AsyncResult<Message<R>>> replyHandler) {
+        source.replyWithTimeout(message, timeout, replyHandler);
+    }
+
+    @Override
+    public <R> void reply(Long message, Handler<Message<R>> replyHandler) {
+        source.reply(message, replyHandler);
+    }
+
+    @Override
+    public <R> void replyWithTimeout(Long message, long timeout, 
+        Handler<AsyncResult<Message<R>>> replyHandler) {
+        source.replyWithTimeout(message, timeout, replyHandler);
+    }
+
+    @Override
+    public <R> void reply(Short message, Handler<Message<R>> replyHandler) {
+        source.reply(message, replyHandler);
+    }
+
+    @Override
+    public <R> void replyWithTimeout(Short message, long timeout, 
+        Handler<AsyncResult<Message<R>>> replyHandler) {
+        source.replyWithTimeout(message, timeout, replyHandler);
+    }
+
+    @Override
+    public <R> void reply(Character message, Handler<Message<R>> replyHandler) {
+        source.reply(message, replyHandler);
+    }
+
+    @Override
+    public <R> void replyWithTimeout(Character message, long timeout, 
+        Handler<AsyncResult<Message<R>>> replyHandler) {
+        source.replyWithTimeout(message, timeout, replyHandler);
+    }
+
+    @Override
+    public <R> void reply(Boolean message, Handler<Message<R>> replyHandler) {
+        source.reply(message, replyHandler);
+    }
+
+    @Override
+    public <R> void replyWithTimeout(Boolean message, long timeout, 
+        Handler<AsyncResult<Message<R>>> replyHandler) {
+        source.replyWithTimeout(message, timeout, replyHandler);
+    }
+
+    @Override
+    public <R> void reply(Float message, Handler<Message<R>> replyHandler) {
+        source.reply(message, replyHandler);
+    }
+
+    @Override
+    public <R> void replyWithTimeout(Float message, long timeout, 
+        Handler<AsyncResult<Message<R>>> replyHandler) {
+        source.replyWithTimeout(message, timeout, replyHandler);
+    }
+
+    @Override
+    public <R> void reply(Double message, Handler<Message<R>> replyHandler) {
+        source.reply(message, replyHandler);
+    }
+
+    @Override
+    public <R> void replyWithTimeout(Double message, long timeout, 
+        Handler<AsyncResult<Message<R>>> replyHandler) {
+        source.replyWithTimeout(message, timeout, replyHandler);
+    }
+
+    @Override
+    public void fail(int failureCode, String message) {
+        source.fail(failureCode, message);
+    }
+}
@@ -0,0 +1,168 @@
+package com.github.relai.vertx.springdata;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+import org.springframework.util.DigestUtils;
+import org.vertx.java.core.json.JsonElement;
+
+/**
+ * Internal helper functions of the ETags of the REST responses.
+ *
+ * <p>The ETag of an entity with a version property is its version, as in
+ * <code>"3"</code>, so it can be checked by reading the version only. A sparse
+ * fieldset of the entity is another representation, so its ETag also carries the 
+ * hash of the fieldset, as in <code>"3;1b3c5d7e"</code>. The ETag of an entity 
+ * without a version, or of a collection, is the MD5 hash of the response body. 
+ * All are strong ETags. A compressed body has the ETag of the uncompressed one, 
+ * with the content coding as a suffix, as in <code>"3-gzip"</code>.
+ *
+ * <p>The <code>If-None-Match</code> header of a GET is compared with the ETag of 
+ * the exact representation of the response, including its content coding. The 
+ * <code>If-Match</code> header of a
+ * PUT or DELETE is compared with the ETag of the entity, without the fieldset and
+ * the content coding, since any representation of the current entity matches it.
+ *
+ * @author relai
+ */
+class ETagHelper {
+
+    final static String ETAG = "ETag";
+    final static String IF_NONE_MATCH = "If-None-Match";
+    final static String IF_MATCH = "If-Match";
+
+    private final static String ANY = "*";
+    private final static String WEAK_PREFIX = "W/";
+    private final static String[] ENCODINGS = {ResponseCompressor.GZIP, ResponseCompressor.DEFLATE};
+    private final static char FIELDSET = ';';
+
+    /**
+     * Gets the ETag of a version.
+     *
+     * @param version the version of the entity
+     * @param fields the sparse fieldset of the representation, or null for the whole entity
+     * @return the ETag
+     */
+    static String ofVersion(Object version, String[] fields) {
+        return '"' + String.valueOf(version) + ofFields(fields) + '"';
+    }
+
+    /**
+     * Gets the suffix of a sparse fieldset, the hash of its properties in name
+     * order, which does not depend on the order of the request.
+     */
+    private static String ofFields(String[] fields) {
+        if (fields == null) {
+            return "";
+        }
+        String[] sorted = fields.clone();
+        Arrays.sort(sorted);
+        String hash = DigestUtils.md5DigestAsHex(
+            String.join(",", sorted).getBytes(StandardCharsets.UTF_8));
+        return FIELDSET + hash.substring(0, 8);
+    }
+
+    /**
+     * Gets the ETag of a response body.
+     *
+     * @param body the decoded body, or null if it is not decoded
+     * @param payload the UTF-8 encoded body
+     * @param versionProperty the version property, or null to hash the content
+     * @param fields the sparse fieldset of the body, or null for whole entities
+     * @return the version ETag of an entity with a version, or else the hash of the payload
+     */
+    static String of(JsonElement body, byte[] payload, String versionProperty, String[] fields) {
+        if (versionProperty != null && body != null && body.isObject()) {
+            Object version = body.asObject().getValue(versionProperty);
+            if (version != null) {
+                return ofVersion(version, fields);
+            }
+        }
+        return '"' + DigestUtils.md5DigestAsHex(payload) + '"';
+    }
+
+    /**
+     * Gets the ETag of a response body that is written as is. An entity is
+     * decoded to read its version only if there is a version property.
+     *
+     * @param payload the UTF-8 encoded body
+     * @param versionProperty the version property, or null to hash the content
+     * @param fields the sparse fieldset of the body, or null for whole entities
+     * @return the ETag
+     */
+    static String of(byte[] payload, String versionProperty, String[] fields) {
+        JsonElement body = null;
+        if (versionProperty != null && isObject(payload)) {
+            body = AsyncCrudRepositoryImpl.decode(payload);
+        }
+        return of(body, payload, versionProperty, fields);
+    }
+
+    /**
+     * Gets the ETag of a body in a content coding.
+     *
+     * @param etag the ETag of the uncompressed body
+     * @param encoding the content coding
+     * @return the ETag
+     */
+    static String withEncoding(String etag, String encoding) {
+        return etag.substring(0, etag.length() - 1) + '-' + encoding + '"';
+    }
+
+    /**
+     * Whether a conditional header matches an ETag. The header is either
+     * <code>*</code>, which matches any current ETag, or a list of ETags.
+     *
+     * @param header the value of the <code>If-Match</code> or <code>If-None-Match</code> header
+     * @param etag the current ETag, or null if there is no current entity
+     * @param weak true for <code>If-None-Match</code>, which compares a weak ETag 
+     *        of the header as a strong one, and the exact representations; false for
+     *        <code>If-Match</code>, which compares the entities regardless of the 
+     *        fieldset and content coding of the representations
+     * @return true if the header matches
+     */
+    static boolean matches(String header, String etag, boolean weak) {
+        if (header == null || etag == null) {
+            return false;
+        }
+        for (String tag : header.split(",")) {
+            tag = tag.trim();
+            if (weak && tag.startsWith(WEAK_PREFIX)) {
+                tag = tag.substring(WEAK_PREFIX.length());
+            }
+            if (tag.equals(ANY) || (weak ? tag.equals(etag) : ofEntity(tag).equals(ofEntity(etag)))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static String withoutEncoding(String tag) {
+        for (String encoding : ENCODINGS) {
+            String suffix = '-' + encoding + '"';
+            if (tag.endsWith(suffix)) {
+                return tag.substring(0, tag.length() - suffix.length()) + '"';
+            }
+        }
+        return tag;
+    }
+
+    /**
+     * Gets the ETag of the entity of a representation, without its fieldset and 
+     * content coding.
+     */
+    private static String ofEntity(String tag) {
+        tag = withoutEncoding(tag);
+        int fieldset = tag.indexOf(FIELDSET);
+        return fieldset < 0 ? tag : tag.substring(0, fieldset) + '"';
+    }
+
+    private static boolean isObject(byte[] payload) {
+        for (byte b : payload) {
+            if (Character.isWhitespace(b) == false) {
+                return b == '{';
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,21 @@
+package com.github.relai.vertx.springdata;
+
+/**
+ * Internal marker of a reply handler that accepts the entities as encoded JSON 
+ * bytes. When the asynchronous repository sends entities as JSON bytes, the 
+ * replies to such a handler are passed on as is instead of being decoded into
+ * a <code>JsonObject</code> or <code>JsonArray</code>.
+ * 
+ * <p>The body type is the one that the repository method declares, so that such a
+ * handler can be passed to the public methods, but with JSON bytes the body is 
+ * the <code>byte[]</code> of the encoded entities. An encoded handler therefore 
+ * reads the body as an <code>Object</code>, and tells the encoded entities from 
+ * the decoded ones, as {@link RestHelper} does to write them to the response as 
+ * is.
+ * 
+ * @author relai
+ * @param <M> the declared message body type
+ */
+interface EncodedMessageHandler<M> extends MessageHandler<M> {
+    
+}
@@ -0,0 +1,238 @@
+package com.github.relai.vertx.springdata;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.springframework.data.domain.Page;
+import org.vertx.java.core.json.JsonArray;
+import org.vertx.java.core.json.JsonObject;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.core.util.ByteArrayBuilder;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.util.TokenBuffer;
+
+/**
+ * Internal class that converts entities to and from their event bus representation.
+ *
+ * <p>Two forms are supported:
+ * <ul>
+ *   <li> the tree form, where an entity is a <code>JsonObject</code> and a
+ *        collection of entities is a <code>JsonArray</code>;
+ *   <li> the encoded form, where an entity or a collection of entities is
+ *        written straight to UTF-8 JSON bytes with a streaming <code>JsonGenerator</code>,
+ *        and read straight back from the bytes with a <code>JsonParser</code>.
+ *        No intermediate object graph is built.
+ * </ul>
+ *
+ * <p>The Jackson reader and writer of each domain type are cached in the
+ * {@link RepositoryRegistry}. An entity is written with the writer of its domain
+ * type, or of a sparse fieldset of it.
+ *
+ * @author relai
+ */
+class EntityCodec {
+
+    private final ObjectMapper mapper;
+    private final JsonFactory factory;
+    private final ObjectReader mapReader;
+    private final ObjectWriter mapWriter;
+
+    /**
+     * Constructs the codec.
+     *
+     * @param mapper the Jackson object mapper of the Spring application
+     */
+    EntityCodec(ObjectMapper mapper) {
+        this.mapper = mapper;
+        this.factory = mapper.getFactory();
+        this.mapReader = mapper.reader(HashMap.class);
+        this.mapWriter = mapper.writerWithType(Map.class);
+    }
+
+    @SuppressWarnings("unchecked")
+    JsonObject toJsonObject(Object entity, ObjectWriter writer) {
+        try {
+            TokenBuffer buffer = new TokenBuffer(mapper, false);
+            writer.writeValue(buffer, entity);
+            Map<String, Object> map = mapReader.readValue(buffer.asParser());
+            return new JsonObject(map);
+        } catch (IOException ex) {
+            throw new IllegalArgumentException(ex);
+        }
+    }
+
+    JsonArray toJsonArray(Iterable<?> entities, ObjectWriter writer) {
+        JsonArray data = new JsonArray();
+        for (Object entity : entities) {
+            data.add(entity == null ? null : toJsonObject(entity, writer));
+        }
+        return data;
+    }
+
+    JsonObject toJsonPage(Page<?> page, ObjectWriter writer) {
+        return new JsonObject()
+            .putArray(PagingHelper.CONTENT, toJsonArray(page.getContent(), writer))
+            .putNumber(PagingHelper.TOTAL_ELEMENTS, page.getTotalElements())
+            .putNumber(PagingHelper.TOTAL_PAGES, page.getTotalPages())
+            .putNumber(PagingHelper.NUMBER, page.getNumber())
+            .putNumber(PagingHelper.SIZE, page.getSize())
+            .putNumber(PagingHelper.NUMBER_OF_ELEMENTS, page.getNumberOfElements());
+    }
+
+    JsonObject toJsonSlice(List<?> content, String next, ObjectWriter writer) {
+        return new JsonObject()
+            .putArray(PagingHelper.CONTENT, toJsonArray(content, writer))
+            .putString(KeysetHelper.NEXT, next);
+    }
+
+    Object fromJsonObject(JsonObject entity, RepositoryRegistry.Entry entry) {
+        try {
+            TokenBuffer buffer = new TokenBuffer(mapper, false);
+            mapWriter.writeValue(buffer, entity.toMap());
+            return entry.getReader().readValue(buffer.asParser());
+        } catch (IOException ex) {
+            throw new IllegalArgumentException(ex);
+        }
+    }
+
+    List<Object> fromJsonArray(JsonArray objects, RepositoryRegistry.Entry entry) {
+        List<Object> list = new ArrayList<>(objects.size());
+        for (Object obj : objects) {
+            if (obj instanceof JsonObject) {
+                list.add(fromJsonObject((JsonObject) obj, entry));
+            } else {
+                list.add(obj);
+            }
+        }
+        return list;
+    }
+
+    /**
+     * Writes an entity as JSON bytes.
+     *
+     * @param entity the entity
+     * @param writer the Jackson writer of the domain type
+     * @return the UTF-8 encoded JSON object
+     */
+    byte[] toBytes(Object entity, ObjectWriter writer) {
+        ByteArrayBuilder bytes = new ByteArrayBuilder();
+        try (JsonGenerator generator = factory.createGenerator(bytes)) {
+            writer.writeValue(generator, entity);
+        } catch (IOException ex) {
+            throw new IllegalArgumentException(ex);
+        }
+        return bytes.toByteArray();
+    }
+
+    /**
+     * Writes a collection of entities as JSON bytes.
+     *
+     * @param entities the entities
+     * @param writer the Jackson writer of the domain type
+     * @return the UTF-8 encoded JSON array
+     */
+    byte[] toArrayBytes(Iterable<?> entities, ObjectWriter writer) {
+        ByteArrayBuilder bytes = new ByteArrayBuilder();
+        try (JsonGenerator generator = factory.createGenerator(bytes)) {
+            generator.writeStartArray();
+            for (Object entity : entities) {
+                writer.writeValue(generator, entity);
+            }
+            generator.writeEndArray();
+        } catch (IOException ex) {
+            throw new IllegalArgumentException(ex);
+        }
+        return bytes.toByteArray();
+    }
+
+    /**
+     * Writes a page of entities, along with the page metadata, as JSON bytes.
+     *
+     * @param page the page
+     * @param writer the Jackson writer of the domain type
+     * @return the UTF-8 encoded JSON object
+     */
+    byte[] toPageBytes(Page<?> page, ObjectWriter writer) {
+        ByteArrayBuilder bytes = new ByteArrayBuilder();
+        try (JsonGenerator generator = factory.createGenerator(bytes)) {
+            generator.writeStartObject();
+            generator.writeArrayFieldStart(PagingHelper.CONTENT);
+            for (Object entity : page.getContent()) {
+                writer.writeValue(generator, entity);
+            }
+            generator.writeEndArray();
+            generator.writeNumberField(PagingHelper.TOTAL_ELEMENTS, page.getTotalElements());
+            generator.writeNumberField(PagingHelper.TOTAL_PAGES, page.getTotalPages());
+            generator.writeNumberField(PagingHelper.NUMBER, page.getNumber());
+            generator.writeNumberField(PagingHelper.SIZE, page.getSize());
+            generator.writeNumberField(PagingHelper.NUMBER_OF_ELEMENTS, page.getNumberOfElements());
+            generator.writeEndObject();
+        } catch (IOException ex) {
+            throw new IllegalArgumentException(ex);
+        }
+        return bytes.toByteArray();
+    }
+
+    /**
+     * Writes a slice of entities of the keyset pagination, along with the token 
+     * of the next slice, as JSON bytes.
+     *
+     * @param content the entities
+     * @param next the token of the next slice, or null if this is the last one
+     * @param writer the Jackson writer of the domain type
+     * @return the UTF-8 encoded JSON object
+     */
+    byte[] toSliceBytes(List<?> content, String next, ObjectWriter writer) {
+        ByteArrayBuilder bytes = new ByteArrayBuilder();
+        try (JsonGenerator generator = factory.createGenerator(bytes)) {
+            generator.writeStartObject();
+            generator.writeArrayFieldStart(PagingHelper.CONTENT);
+            for (Object entity : content) {
+                writer.writeValue(generator, entity);
+            }
+            generator.writeEndArray();
+            generator.writeStringField(KeysetHelper.NEXT, next);
+            generator.writeEndObject();
+        } catch (IOException ex) {
+            throw new IllegalArgumentException(ex);
+        }
+        return bytes.toByteArray();
+    }
+
+    /**
+     * Reads an entity or a collection of entities from JSON bytes.
+     *
+     * @param bytes the UTF-8 encoded JSON object or array
+     * @param entry the repository entry
+     * @return the entity, or a list of entities if the bytes hold a JSON array
+     */
+    Object fromBytes(byte[] bytes, RepositoryRegistry.Entry entry) {
+        try (JsonParser parser = factory.createParser(bytes)) {
+            if (parser.nextToken() != JsonToken.START_ARRAY) {
+                return entry.getReader().readValue(parser);
+            }
+            List<Object> list = new ArrayList<>();
+            for (JsonToken token = parser.nextToken();
+                 token != JsonToken.END_ARRAY && token != null;
+                 token = parser.nextToken()) {
+                if (token == JsonToken.START_OBJECT) {
+                    list.add(entry.getReader().readValue(parser));
+                } else {
+                    list.add(mapper.readValue(parser, Object.class));
+                }
+            }
+            return list;
+        } catch (IOException ex) {
+            throw new IllegalArgumentException("The entity is not valid JSON", ex);
+        }
+    }
+}
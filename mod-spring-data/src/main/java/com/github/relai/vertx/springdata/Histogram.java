@@ -0,0 +1,115 @@
+package com.github.relai.vertx.springdata;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import org.vertx.java.core.json.JsonObject;
+
+/**
+ * Internal class of a histogram of non-negative values, such as latencies or
+ * payload sizes, in the manner of HdrHistogram.
+ *
+ * <p>The values below 64 are counted exactly. Above that, each power of two is
+ * split into 32 linear buckets, so a recorded value is known within about 3% of
+ * its magnitude, whatever the range, in a fixed amount of memory. Recording is
+ * lock free, so the histogram can be shared by the threads of a worker pool.
+ *
+ * @author relai
+ */
+class Histogram {
+    private final static int LINEAR = 64;
+    private final static int SUB_BUCKET_BITS = 5;
+    private final static int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    // The exponents from 6 to 62, split into sub-buckets
+    private final static int BUCKETS = LINEAR + (63 - 6) * SUB_BUCKETS;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+    private final AtomicLong count = new AtomicLong();
+    private final AtomicLong sum = new AtomicLong();
+    private final AtomicLong max = new AtomicLong();
+
+    void record(long value) {
+        if (value < 0) {
+            value = 0;
+        }
+        counts.incrementAndGet(indexOf(value));
+        count.incrementAndGet();
+        sum.addAndGet(value);
+        long current;
+        while (value > (current = max.get()) && max.compareAndSet(current, value) == false) {
+            // Retry until the maximum is at least the value
+        }
+    }
+
+    long getCount() {
+        return count.get();
+    }
+
+    long getMax() {
+        return max.get();
+    }
+
+    double getMean() {
+        long n = count.get();
+        return n == 0 ? 0 : (double) sum.get() / n;
+    }
+
+    /**
+     * Gets the value at a percentile, as the highest value of its bucket.
+     *
+     * @param percentile the percentile, from 0 to 100
+     * @return the value, or 0 if nothing was recorded
+     */
+    long getValueAtPercentile(double percentile) {
+        long total = count.get();
+        if (total == 0) {
+            return 0;
+        }
+        long rank = Math.max(1, (long) Math.ceil(percentile / 100 * total));
+        long seen = 0;
+        for (int index = 0; index < BUCKETS; index++) {
+            seen += counts.get(index);
+            if (seen >= rank) {
+                return Math.min(highestValueOf(index), max.get());
+            }
+        }
+        return max.get();
+    }
+
+    /**
+     * Summarizes the histogram, with the percentiles that are usually scraped.
+     *
+     * @return the count, mean, max and the 50th, 90th, 99th and 99.9th percentiles
+     */
+    JsonObject toJson() {
+        return new JsonObject()
+            .putNumber("count", getCount())
+            .putNumber("mean", getMean())
+            .putNumber("max", getMax())
+            .putNumber("p50", getValueAtPercentile(50))
+            .putNumber("p90", getValueAtPercentile(90))
+            .putNumber("p99", getValueAtPercentile(99))
+            .putNumber("p999", getValueAtPercentile(99.9));
+    }
+
+    static int indexOf(long value) {
+        if (value < LINEAR) {
+            return (int) value;
+        }
+        int exponent = 63 - Long.numberOfLeadingZeros(value);
+        int subBucket = (int) (value >>> (exponent - SUB_BUCKET_BITS)) - SUB_BUCKETS;
+        return LINEAR + (exponent - 6) * SUB_BUCKETS + subBucket;
+    }
+
+    static long highestValueOf(int index) {
+        if (index < LINEAR) {
+            return index;
+        }
+        int exponent = (index - LINEAR) / SUB_BUCKETS + 6;
+        long subBucket = (index - LINEAR) % SUB_BUCKETS + SUB_BUCKETS;
+        long width = 1L << (exponent - SUB_BUCKET_BITS);
+        // The last bucket would overflow, and ends at the largest long instead
+        return subBucket == 2 * SUB_BUCKETS - 1 && exponent == 62 ?
+            Long.MAX_VALUE : (subBucket + 1) * width - 1;
+    }
+}
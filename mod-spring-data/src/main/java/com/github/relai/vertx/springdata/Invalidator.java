@@ -0,0 +1,112 @@
+package com.github.relai.vertx.springdata;
+
+import org.springframework.data.repository.core.EntityInformation;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.vertx.java.core.eventbus.EventBus;
+import org.vertx.java.core.json.JsonArray;
+import org.vertx.java.core.json.JsonObject;
+
+/**
+ * Internal class that publishes the invalidation messages of a repository after 
+ * its entities are written, so that the near caches of the clients stay coherent.
+ * 
+ * <p>The message is published on the invalidation address of the repository, and 
+ * on the address of the default repository if it is the default one. It is either
+ * <code>{"ids": [...]}</code> with the ids of the written entities, or 
+ * <code>{"all": true}</code> when the ids are unknown. Within a Spring transaction,
+ * the message is published after the transaction commits.
+ * 
+ * @author relai
+ */
+class Invalidator {
+    final static String IDS = "ids";
+    final static String ALL = "all";
+    
+    private final EventBus bus;
+    private final RepositoryRegistry registry;
+
+    Invalidator(EventBus bus, RepositoryRegistry registry) {
+        this.bus = bus;
+        this.registry = registry;
+    }
+    
+    /**
+     * Invalidates the entities. 
+     * 
+     * @param entry the repository entry
+     * @param entities the written entities
+     */
+    @SuppressWarnings({ "rawtypes", "unchecked" })
+    void entities(RepositoryRegistry.Entry entry, Iterable<?> entities) {
+        EntityInformation info = entry.getEntityInformation();
+        if (info == null) {
+            all(entry);
+            return;
+        }
+        JsonArray ids = new JsonArray();
+        for (Object entity : entities) {
+            ids.add(info.getId(entity));
+        }
+        ids(entry, ids);
+    }
+    
+    /**
+     * Invalidates the entities with the ids.
+     * 
+     * @param entry the repository entry
+     * @param ids the ids of the written entities
+     */
+    void ids(RepositoryRegistry.Entry entry, JsonArray ids) {
+        for (Object id : ids) {
+            if (id instanceof Number == false && id instanceof String == false) {
+                // The id cannot be matched by the clients
+                all(entry);
+                return;
+            }
+        }
+        publish(entry, new JsonObject().putArray(IDS, ids));
+    }
+    
+    /**
+     * Invalidates all entities of the repository.
+     * 
+     * @param entry the repository entry
+     */
+    void all(RepositoryRegistry.Entry entry) {
+        publish(entry, new JsonObject().putBoolean(ALL, true));
+    }
+    
+    private void publish(RepositoryRegistry.Entry entry, JsonObject message) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(
+                new TransactionSynchronizationAdapter() {
+                    @Override
+                    public void afterCommit() {
+                        send(entry, message);
+                    }
+                });
+        } else {
+            send(entry, message);
+        }
+    }
+    
+    private void send(RepositoryRegistry.Entry entry, JsonObject message) {
+        bus.publish(getAddress(entry.getRepositoryType().getCanonicalName()), message);
+        if (registry.isDefault(entry)) {
+            bus.publish(getAddress(null), message);
+        }
+    }
+    
+    /**
+     * Gets the invalidation address of a repository.
+     * 
+     * @param repositoryName the canonical name of the repository interface, 
+     *        or null for the default repository
+     * @return the event bus address
+     */
+    static String getAddress(String repositoryName) {
+        String address = RepositoryVerticle.getEventBusAddress() + ".invalidate";
+        return repositoryName == null ? address : address + "." + repositoryName;
+    }
+}
@@ -0,0 +1,21 @@
+package com.github.relai.vertx.springdata;
+
+/**
+ * The argument codec using Java serialization through {@link SerializationHelper}. 
+ * It supports any <code>Serializable</code> argument at the cost of larger
+ * payloads and slower encoding. 
+ * 
+ * @author relai
+ */
+public class JavaArgumentCodec implements ArgumentCodec {
+
+    @Override
+    public byte[] encode(Object[] args) {
+        return SerializationHelper.toBytes(args);
+    }
+
+    @Override
+    public Object[] decode(byte[] bytes) {
+        return SerializationHelper.fromBytes(bytes);
+    }    
+}
@@ -0,0 +1,228 @@
+package com.github.relai.vertx.springdata;
+
+import java.io.IOException;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.List;
+
+import org.springframework.beans.DirectFieldAccessor;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.domain.Sort.Direction;
+import org.springframework.data.domain.Sort.Order;
+import org.springframework.util.ReflectionUtils;
+import org.springframework.util.StringUtils;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * Internal helper functions of the keyset pagination, where a page is read after
+ * the last entity of the previous one instead of at an offset.
+ *
+ * <p>The key of an entity is its values of the sort properties, followed by its
+ * id, which breaks the ties. The <code>after</code> token is the key of the last
+ * entity of a page, as a JSON array in URL safe Base64, so it can be passed as is
+ * in a query string.
+ *
+ * <p>The page after a key is read by a derived query method of the repository,
+ * which the repository interface declares, and whose name follows from the sort.
+ * For the sort <code>name.asc</code>, it is
+ * <pre> List&lt;Item&gt; findByNameGreaterThanOrNameAndIdGreaterThan(String name, String sameName, Long id, Pageable pageable) </pre>
+ * and for the id order only, it is
+ * <pre> List&lt;Item&gt; findByIdGreaterThan(Long id, Pageable pageable) </pre>
+ * A descending order uses <code>LessThan</code> instead. The method seeks to the
+ * key with an index, so a deep page costs no more than the first one. It should
+ * return a <code>List</code> or a <code>Slice</code>, so no count query is run.
+ * The sort properties should not be null.
+ *
+ * @author relai
+ */
+class KeysetHelper {
+
+    final static String AFTER = "after";
+    final static String NEXT = "next";
+    final static String DEFAULT_ID = "id";
+
+    /**
+     * Gets the orders of the key: the sort, followed by the id in ascending order
+     * unless the sort already includes it.
+     *
+     * @param sort the sort, or null for the id order
+     * @param idProperty the id property
+     * @return the orders
+     */
+    static List<Order> keyOrders(Sort sort, String idProperty) {
+        List<Order> orders = new ArrayList<>();
+        boolean hasId = false;
+        if (sort != null) {
+            for (Order order : sort) {
+                orders.add(order);
+                hasId |= order.getProperty().equals(idProperty);
+            }
+        }
+        if (hasId == false) {
+            orders.add(new Order(Direction.ASC, idProperty));
+        }
+        return orders;
+    }
+
+    /**
+     * Gets the name of the derived query method that reads the entities after a key.
+     *
+     * @param orders the orders of the key
+     * @return the method name
+     */
+    static String seekMethodName(List<Order> orders) {
+        StringBuilder name = new StringBuilder("findBy");
+        for (int term = 0; term < orders.size(); term++) {
+            if (term > 0) {
+                name.append("Or");
+            }
+            for (int index = 0; index < term; index++) {
+                name.append(toPart(orders.get(index).getProperty())).append("And");
+            }
+            Order order = orders.get(term);
+            name.append(toPart(order.getProperty()))
+                .append(order.isAscending() ? "GreaterThan" : "LessThan");
+        }
+        return name.toString();
+    }
+
+    /**
+     * Gets the arguments of the seek method: for each term, the key values it
+     * compares, followed by the page request.
+     *
+     * @param method the seek method
+     * @param key the key values, converted to the parameter types
+     * @param pageable the page request
+     * @return the arguments
+     */
+    static Object[] seekArguments(Method method, List<Object> key, Pageable pageable) {
+        Class<?>[] types = method.getParameterTypes();
+        List<Object> args = new ArrayList<>(types.length);
+        for (int term = 0; term < key.size(); term++) {
+            args.addAll(key.subList(0, term + 1));
+        }
+        if (args.size() != types.length - 1 || Pageable.class.isAssignableFrom(types[types.length - 1]) == false) {
+            throw new IllegalClientRequest("The seek method " + method.getName() +
+                " must take the key values, followed by a Pageable");
+        }
+        args.add(pageable);
+        return args.toArray();
+    }
+
+    /**
+     * Finds the seek method declared by the repository interface.
+     *
+     * @param repositoryType the repository interface
+     * @param name the method name
+     * @return the method
+     */
+    static Method findSeekMethod(Class<?> repositoryType, String name) {
+        for (Method method : repositoryType.getMethods()) {
+            if (method.getName().equals(name)) {
+                return method;
+            }
+        }
+        throw new IllegalClientRequest("The keyset pagination of the sort requires the repository method " +
+            name + ", with the key values and a Pageable as the parameters");
+    }
+
+    /**
+     * Reads the key of an entity.
+     *
+     * @param entity the entity
+     * @param orders the orders of the key
+     * @return the key values
+     */
+    static List<Object> keyOf(Object entity, List<Order> orders) {
+        DirectFieldAccessor accessor = new DirectFieldAccessor(entity);
+        List<Object> key = new ArrayList<>(orders.size());
+        for (Order order : orders) {
+            key.add(accessor.getPropertyValue(order.getProperty()));
+        }
+        return key;
+    }
+
+    /**
+     * Encodes a key into an <code>after</code> token.
+     *
+     * @param key the key values
+     * @param mapper the Jackson object mapper of the entities
+     * @return the token
+     */
+    static String encode(List<Object> key, ObjectMapper mapper) {
+        try {
+            return Base64.getUrlEncoder().withoutPadding().encodeToString(mapper.writeValueAsBytes(key));
+        } catch (IOException ex) {
+            throw new IllegalArgumentException(ex);
+        }
+    }
+
+    /**
+     * Decodes an <code>after</code> token into the key values of the seek method.
+     *
+     * @param token the token
+     * @param method the seek method, whose parameters give the types of the values
+     * @param mapper the Jackson object mapper of the entities
+     * @return the key values
+     */
+    static List<Object> decode(String token, Method method, ObjectMapper mapper) {
+        List<?> values;
+        try {
+            values = mapper.readValue(Base64.getUrlDecoder().decode(token), List.class);
+        } catch (IOException | IllegalArgumentException ex) {
+            throw new IllegalClientRequest("The after token is not valid", ex);
+        }
+        // The last term of the method compares every key value, in order
+        Class<?>[] types = method.getParameterTypes();
+        int first = types.length - 1 - values.size();
+        if (first < 0) {
+            throw new IllegalClientRequest("The after token does not match the sort");
+        }
+        List<Object> key = new ArrayList<>(values.size());
+        for (int index = 0; index < values.size(); index++) {
+            key.add(mapper.convertValue(values.get(index), types[first + index]));
+        }
+        return key;
+    }
+
+    /**
+     * Finds the id property of a domain type: the field annotated with an
+     * <code>Id</code> annotation, of Spring Data or of the store, or else
+     * <code>id</code>.
+     *
+     * @param domainType the domain type
+     * @return the id property
+     */
+    static String idProperty(Class<?> domainType) {
+        Field[] found = new Field[1];
+        ReflectionUtils.doWithFields(domainType, field -> {
+            if (found[0] == null) {
+                found[0] = field;
+            }
+        }, field -> {
+            for (java.lang.annotation.Annotation annotation : field.getAnnotations()) {
+                if (annotation.annotationType().getSimpleName().equals("Id")) {
+                    return true;
+                }
+            }
+            return false;
+        });
+        return found[0] == null ? DEFAULT_ID : found[0].getName();
+    }
+
+    private static String toPart(String property) {
+        // A nested property is traversed with an underscore
+        StringBuilder part = new StringBuilder();
+        for (String segment : property.split("\\.")) {
+            if (part.length() > 0) {
+                part.append('_');
+            }
+            part.append(StringUtils.capitalize(segment));
+        }
+        return part.toString();
+    }
+}
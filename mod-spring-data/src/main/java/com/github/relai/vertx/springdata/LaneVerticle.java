@@ -0,0 +1,56 @@
+package com.github.relai.vertx.springdata;
+
+import static com.github.relai.vertx.springdata.RepositoryVerticle.LANE;
+import static com.github.relai.vertx.springdata.RepositoryVerticle.READ_LANE;
+import static com.github.relai.vertx.springdata.RepositoryVerticle.WRITE_LANE;
+
+import org.vertx.java.core.Future;
+import org.vertx.java.core.json.JsonObject;
+import org.vertx.java.platform.Verticle;
+
+/**
+ * Internal class of a verticle that deploys the read and write lanes of the
+ * Spring Data worker verticle, each with its own instances.
+ *
+ * <p>The lanes are deployed as children of this verticle, so they are undeployed
+ * along with it, under the single deployment ID of the {@link SpringDeployer}.
+ *
+ * <p>This class is for internal use by the mod only.
+ *
+ * @author relai
+ */
+public class LaneVerticle extends Verticle {
+    final static String READ_INSTANCES = "readInstances";
+    final static String WRITE_INSTANCES = "writeInstances";
+    final static String MULTI_THREADED = "multiThreaded";
+
+    @Override
+    public void start(Future<Void> startedResult) {
+        JsonObject config = container.config();
+        int readInstances = config.getInteger(READ_INSTANCES, 1);
+        int writeInstances = config.getInteger(WRITE_INSTANCES, 1);
+        boolean multiThreaded = config.getBoolean(MULTI_THREADED, false);
+
+        JsonObject laneConfig = config.copy();
+        laneConfig.removeField(READ_INSTANCES);
+        laneConfig.removeField(WRITE_INSTANCES);
+        laneConfig.removeField(MULTI_THREADED);
+        String verticle = RepositoryVerticle.class.getCanonicalName();
+
+        container.deployWorkerVerticle(verticle, laneConfig.copy().putString(LANE, READ_LANE),
+            readInstances, multiThreaded, read -> {
+                if (read.failed()) {
+                    startedResult.setFailure(read.cause());
+                    return;
+                }
+                container.deployWorkerVerticle(verticle, laneConfig.copy().putString(LANE, WRITE_LANE),
+                    writeInstances, multiThreaded, write -> {
+                        if (write.failed()) {
+                            startedResult.setFailure(write.cause());
+                        } else {
+                            startedResult.setResult(null);
+                        }
+                    });
+            });
+    }
+}
@@ -0,0 +1,159 @@
+package com.github.relai.vertx.springdata;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Internal class of a precompiled dispatch table for the custom methods of a
+ * Spring <code>Repository</code> interface.
+ *
+ * <p>The table is built once per repository interface when the {@link RepositoryVerticle}
+ * starts. It maps an action name and arity to the candidate methods, each resolved
+ * to a <code>MethodHandle</code> that takes its arguments as an object array.
+ * When only one method matches the name and arity, it is invoked without any
+ * argument checks; otherwise the overloads are told apart by the runtime argument types.
+ *
+ * @author relai
+ */
+class MethodDispatcher {
+
+    private static final MethodType INVOKER_TYPE =
+        MethodType.methodType(Object.class, Object.class, Object[].class);
+
+    private final Map<String, Invoker[]> table = new HashMap<>();
+
+    /**
+     * Builds the dispatch table for a repository interface.
+     *
+     * @param repositoryType the repository interface
+     */
+    MethodDispatcher(Class<?> repositoryType) {
+        Map<String, List<Invoker>> candidates = new HashMap<>();
+        for (Method m : repositoryType.getMethods()) {
+            if (Modifier.isStatic(m.getModifiers()) || m.isBridge()) {
+                continue;
+            }
+            Invoker invoker = Invoker.of(m);
+            if (invoker != null) {
+                candidates.computeIfAbsent(key(m.getName(), m.getParameterCount()),
+                    k -> new ArrayList<>()).add(invoker);
+            }
+        }
+        candidates.forEach((key, list) ->
+            table.put(key, list.toArray(new Invoker[list.size()])));
+    }
+
+    /**
+     * Resolves the invoker for the action and arguments.
+     *
+     * @param action the method name
+     * @param args the method arguments
+     * @return the invoker, or null if no method matches
+     */
+    Invoker resolve(String action, Object[] args) {
+        Invoker[] invokers = table.get(key(action, args.length));
+        if (invokers == null) {
+            return null;
+        }
+        if (invokers.length == 1) {
+            return invokers[0];
+        }
+        for (Invoker invoker : invokers) {
+            if (invoker.accepts(args)) {
+                return invoker;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Finds the repository method by a reflective scan. This is the fallback 
+     * when the action is not in the precompiled dispatch table, such as for an 
+     * argument that only converts to its parameter type by widening.
+     */
+    @SuppressWarnings("rawtypes")
+    static Method findMethod(Class<?> repoType, String action, Object[] args) {
+        Method method = null;
+        for (Method m : repoType.getMethods()) {
+            if (m.getName().equals(action) && m.getParameterCount() == args.length) {
+          		Class[] argTypes = m.getParameterTypes();
+            	boolean matched = true;            	
+            	for (int index = 0; matched && (index < args.length); index++) {
+            		// Ignore primitive type match check          
+            	   	matched = argTypes[index].isPrimitive() || 
+            	   			argTypes[index].isInstance(args[index]);
+            	}
+                if (matched) {
+                	method = m;
+                	break;
+                }
+            }
+        }
+        
+        if (method == null) 
+            throw new IllegalArgumentException("Cannot find the signature matching action " + action);
+        return method;
+    }
+
+    private static String key(String name, int arity) {
+        return name + "/" + arity;
+    }
+
+    /**
+     * A resolved repository method.
+     */
+    static class Invoker {
+        private final Class<?>[] paramTypes;
+        private final Class<?>[] argTypes;
+        private final MethodHandle handle;
+
+        private Invoker(Method method, MethodHandle handle) {
+            this.handle = handle;
+            paramTypes = method.getParameterTypes();
+            argTypes = new Class<?>[paramTypes.length];
+            for (int index = 0; index < paramTypes.length; index++) {
+                argTypes[index] = MethodType.methodType(paramTypes[index]).wrap().returnType();
+            }
+        }
+
+        static Invoker of(Method method) {
+            try {
+                MethodHandle mh = MethodHandles.publicLookup().unreflect(method)
+                    .asSpreader(Object[].class, method.getParameterCount())
+                    .asType(INVOKER_TYPE);
+                return new Invoker(method, mh);
+            } catch (IllegalAccessException | IllegalArgumentException ex) {
+                // Leave the method to the reflective fallback
+                return null;
+            }
+        }
+
+        boolean accepts(Object[] args) {
+            boolean matched = true;
+            for (int index = 0; matched && (index < args.length); index++) {
+                matched = args[index] == null ?
+                    !paramTypes[index].isPrimitive() :
+                    argTypes[index].isInstance(args[index]);
+            }
+            return matched;
+        }
+
+        Object invoke(Object repository, Object[] args) throws InvocationTargetException {
+            try {
+                return (Object) handle.invokeExact(repository, args);
+            } catch (RuntimeException | Error ex) {
+                throw ex;
+            } catch (Throwable ex) {
+                throw new InvocationTargetException(ex);
+            }
+        }
+    }
+}
@@ -0,0 +1,149 @@
+package com.github.relai.vertx.springdata;
+
+import static io.netty.handler.codec.http.HttpResponseStatus.NOT_FOUND;
+
+import java.io.Serializable;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.vertx.java.core.Handler;
+import org.vertx.java.core.eventbus.EventBus;
+import org.vertx.java.core.eventbus.Message;
+import org.vertx.java.core.eventbus.ReplyException;
+import org.vertx.java.core.impl.DefaultFutureResult;
+import org.vertx.java.core.json.JsonObject;
+
+/**
+ * Internal class of a near cache of the <code>findOne</code> replies of an
+ * {@link AsyncCrudRepositoryImpl}.
+ *
+ * <p>The cache is a bounded LRU map from the id to the entity, where each entry
+ * expires after the time to live. With stale-while-revalidate, an expired entry
+ * is still served for a while, and refreshed in the background on first use.
+ * The cache listens to the invalidation messages the worker verticle publishes
+ * after each write, so it stays coherent with the writes of every client.
+ *
+ * @author relai
+ * @param <ID> the entity Id type
+ */
+class NearCache<ID extends Serializable> {
+    private final AsyncCrudRepositoryImpl<ID> impl;
+    private final ClientMetrics metrics;
+    private final long ttl;
+    private final long stale;
+    private final Map<String, CachedReply> entries;
+    private final EventBus bus;
+    private final String address;
+    private final Handler<Message<JsonObject>> invalidation = this::invalidate;
+    // Counts the invalidations, to discard the loads that raced with one
+    private long epoch;
+
+    NearCache(AsyncCrudRepositoryImpl<ID> impl, EventBus bus, String address,
+        int maxEntries, long ttl, long stale, ClientMetrics metrics) {
+        this.impl = impl;
+        this.metrics = metrics;
+        this.ttl = ttl;
+        this.stale = stale;
+        this.entries = new LinkedHashMap<String, CachedReply>(16, 0.75f, true) {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, CachedReply> eldest) {
+                if (size() > maxEntries) {
+                    metrics.cacheEvictions.incrementAndGet();
+                    return true;
+                }
+                return false;
+            }
+        };
+        this.bus = bus;
+        this.address = address;
+        bus.registerHandler(address, invalidation);
+    }
+
+    /**
+     * Stops listening to the invalidation messages. The cache is then no longer
+     * coherent, so it must not be used afterwards.
+     */
+    void close() {
+        bus.unregisterHandler(address, invalidation);
+        synchronized (this) {
+            entries.clear();
+        }
+    }
+
+    void findOne(ID id, MessageHandler<JsonObject> onreply) {
+        String key = String.valueOf(id);
+        long now = System.currentTimeMillis();
+        CachedReply entry;
+        long start;
+        synchronized (this) {
+            entry = entries.get(key);
+            start = epoch;
+        }
+        if (entry != null && now < entry.expires + stale) {
+            metrics.cacheHits.incrementAndGet();
+            if (now >= entry.expires && entry.refreshing == false) {
+                entry.refreshing = true;
+                load(id, key, start, entry, null);
+            }
+            onreply.handle(new DefaultFutureResult<>(
+                new DerivedMessage<>(entry.message, entry.entity.copy())));
+            return;
+        }
+        metrics.cacheMisses.incrementAndGet();
+        load(id, key, start, null, onreply);
+    }
+
+    private void load(ID id, String key, long start, CachedReply previous,
+        MessageHandler<JsonObject> onreply) {
+        MessageHandler<JsonObject> onload = reply -> {
+            synchronized (this) {
+                if (reply.succeeded()) {
+                    Message<JsonObject> message = reply.result();
+                    if (epoch == start) {
+                        entries.put(key, new CachedReply(message, message.body().copy(),
+                            System.currentTimeMillis() + ttl));
+                    }
+                } else if (reply.cause() instanceof ReplyException &&
+                    ((ReplyException) reply.cause()).failureCode() == NOT_FOUND.code()) {
+                    entries.remove(key);
+                } else if (previous != null) {
+                    // Let a later call retry the refresh
+                    previous.refreshing = false;
+                }
+            }
+            if (onreply != null) {
+                onreply.handle(reply);
+            }
+        };
+        impl.fetchOne(id, onload);
+    }
+
+    private void invalidate(Message<JsonObject> message) {
+        JsonObject body = message.body();
+        synchronized (this) {
+            epoch++;
+            if (body.getBoolean(Invalidator.ALL, false)) {
+                entries.clear();
+            } else {
+                for (Object id : body.getArray(Invalidator.IDS)) {
+                    entries.remove(String.valueOf(id));
+                }
+            }
+        }
+    }
+
+    private static class CachedReply {
+        final Message<?> message;
+        final JsonObject entity;
+        final long expires;
+        volatile boolean refreshing;
+
+        CachedReply(Message<?> message, JsonObject entity, long expires) {
+            this.message = message;
+            this.entity = entity;
+            this.expires = expires;
+        }
+    }
+}
@@ -0,0 +1,102 @@
+package com.github.relai.vertx.springdata;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.domain.Sort.Direction;
+import org.springframework.data.domain.Sort.NullHandling;
+import org.springframework.data.domain.Sort.Order;
+import org.vertx.java.core.json.JsonArray;
+import org.vertx.java.core.json.JsonObject;
+
+/**
+ * Internal helper functions to convert <code>Pageable</code> and <code>Sort</code>
+ * to and from plain JSON in the event bus commands.
+ *
+ * <p>A <code>Pageable</code> is encoded as
+ * <pre> {"number": 2, "size": 25, "sort": [...]} </pre>
+ * and a <code>Sort</code> as an array of orders:
+ * <pre> [{"property": "name", "direction": "ASC", "nullHandling": "NULLS_FIRST", "ignoreCase": false}] </pre>
+ * The reply of a page is the content along with the page metadata:
+ * <pre> {"content": [...], "totalElements": 42, "totalPages": 2, "number": 0, "size": 25, "numberOfElements": 25} </pre>
+ *
+ * @author relai
+ */
+class PagingHelper {
+
+    final static String NUMBER = "number";
+    final static String SIZE = "size";
+    final static String SORT = "sort";
+    final static String PROPERTY = "property";
+    final static String DIRECTION = "direction";
+    final static String NULL_HANDLING = "nullHandling";
+    final static String IGNORE_CASE = "ignoreCase";
+    
+    // The page metadata in the reply of a findPage action
+    final static String CONTENT = "content";
+    final static String TOTAL_ELEMENTS = "totalElements";
+    final static String TOTAL_PAGES = "totalPages";
+    final static String NUMBER_OF_ELEMENTS = "numberOfElements";
+
+    static JsonObject toJson(Pageable pageable) {
+        JsonObject json = new JsonObject()
+            .putNumber(NUMBER, pageable.getPageNumber())
+            .putNumber(SIZE, pageable.getPageSize());
+        if (pageable.getSort() != null) {
+            json.putArray(SORT, toJson(pageable.getSort()));
+        }
+        return json;
+    }
+
+    static JsonArray toJson(Sort sort) {
+        JsonArray orders = new JsonArray();
+        for (Order order : sort) {
+            JsonObject json = new JsonObject()
+                .putString(PROPERTY, order.getProperty());
+            if (order.getDirection() != null) {
+                json.putString(DIRECTION, order.getDirection().name());
+            }
+            if (order.getNullHandling() != null && order.getNullHandling() != NullHandling.NATIVE) {
+                json.putString(NULL_HANDLING, order.getNullHandling().name());
+            }
+            if (order.isIgnoreCase()) {
+                json.putBoolean(IGNORE_CASE, true);
+            }
+            orders.addObject(json);
+        }
+        return orders;
+    }
+
+    static Pageable toPageable(JsonObject json) {
+        Number number = json.getNumber(NUMBER);
+        Number size = json.getNumber(SIZE);
+        if (number == null || size == null) {
+            throw new IllegalClientRequest("The page number and size are required");
+        }
+        if (number.intValue() < 0 || size.intValue() < 1) {
+            throw new IllegalClientRequest("The page number must not be negative and the size must be positive");
+        }
+        return new PageRequest(number.intValue(), size.intValue(), toSort(json.getArray(SORT)));
+    }
+
+    static Sort toSort(JsonArray orders) {
+        if (orders == null || orders.size() == 0) {
+            return null;
+        }
+        List<Order> list = new ArrayList<>(orders.size());
+        for (Object obj : orders) {
+            JsonObject json = (JsonObject) obj;
+            String direction = json.getString(DIRECTION);
+            String nullHandling = json.getString(NULL_HANDLING);
+            Order order = new Order(
+                direction == null ? Sort.DEFAULT_DIRECTION : Direction.fromString(direction),
+                json.getString(PROPERTY),
+                nullHandling == null ? NullHandling.NATIVE : NullHandling.valueOf(nullHandling));
+            list.add(json.getBoolean(IGNORE_CASE, false) ? order.ignoreCase() : order);
+        }
+        return new Sort(list);
+    }
+}
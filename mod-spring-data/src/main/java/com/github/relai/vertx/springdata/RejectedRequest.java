@@ -0,0 +1,27 @@
+package com.github.relai.vertx.springdata;
+
+import static io.netty.handler.codec.http.HttpResponseStatus.SERVICE_UNAVAILABLE;
+
+import org.vertx.java.core.eventbus.ReplyException;
+import org.vertx.java.core.eventbus.ReplyFailure;
+
+/**
+ * The failure of a call rejected by the admission control of an asynchronous
+ * repository, because the requests in flight and the wait queue are full. The
+ * call was not sent to the worker verticle, so it can safely be retried later.
+ * Its failure code is SERVICE_UNAVAILABLE (503).
+ *
+ * @author relai
+ */
+@SuppressWarnings("serial")
+public class RejectedRequest extends ReplyException {
+
+    /**
+     * Constructs a <code>RejectedRequest</code> with the specified error message
+     *
+     * @param message the detailed error message
+     */
+    public RejectedRequest(String message) {
+        super(ReplyFailure.RECIPIENT_FAILURE, SERVICE_UNAVAILABLE.code(), message);
+    }
+}
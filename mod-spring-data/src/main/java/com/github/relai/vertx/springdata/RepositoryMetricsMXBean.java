@@ -0,0 +1,38 @@
+package com.github.relai.vertx.springdata;
+
+/**
+ * The JMX view of the metrics of a {@link RepositoryVerticle} instance. Each
+ * instance registers one bean, named
+ * <code>com.github.relai.vertx.springdata:type=RepositoryVerticle,instance=...</code>.
+ *
+ * @author relai
+ */
+public interface RepositoryMetricsMXBean {
+
+    /**
+     * Gets the metrics of every repository and action, as the JSON document also
+     * answered on the metrics event bus address.
+     *
+     * @return the metrics in JSON
+     */
+    String getMetrics();
+
+    /**
+     * Gets the number of commands handled.
+     *
+     * @return the number of commands
+     */
+    long getRequestCount();
+
+    /**
+     * Gets the number of commands that failed.
+     *
+     * @return the number of failed commands
+     */
+    long getErrorCount();
+
+    /**
+     * Discards the metrics recorded so far.
+     */
+    void reset();
+}
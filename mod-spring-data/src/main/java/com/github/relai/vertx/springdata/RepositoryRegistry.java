@@ -0,0 +1,239 @@
+package com.github.relai.vertx.springdata;
+
+import java.io.Serializable;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.springframework.context.ApplicationContext;
+import org.springframework.data.repository.Repository;
+import org.springframework.data.repository.core.EntityInformation;
+import org.springframework.data.repository.core.RepositoryMetadata;
+import org.springframework.data.repository.core.support.DefaultRepositoryMetadata;
+import org.springframework.data.repository.core.support.RepositoryFactoryInformation;
+import org.vertx.java.core.VertxException;
+import org.vertx.java.core.json.JsonArray;
+
+import com.fasterxml.jackson.annotation.JsonFilter;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.databind.ser.DefaultSerializerProvider;
+import com.fasterxml.jackson.databind.ser.impl.SimpleBeanPropertyFilter;
+import com.fasterxml.jackson.databind.ser.impl.SimpleFilterProvider;
+
+/**
+ * Internal class of the registry of the repositories served by a {@link RepositoryVerticle}.
+ *
+ * <p>The registry is built once when the verticle starts, from every
+ * <code>RepositoryFactoryInformation</code> bean in the Spring <code>ApplicationContext</code>.
+ * Each entry is keyed by the canonical name of the repository interface, and
+ * holds everything needed to process a command: the repository bean, the domain
+ * and id types, the entity information, the Jackson reader and writer of the 
+ * domain type, and the dispatch table of the custom methods.
+ *
+ * @author relai
+ */
+class RepositoryRegistry {
+
+    private final ApplicationContext context;
+    private final ObjectMapper mapper;
+    private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+    private Entry defaultEntry;
+
+    /**
+     * Builds the registry from the repositories in the Spring application context.
+     *
+     * @param context the Spring application context
+     */
+    @SuppressWarnings("rawtypes")
+    RepositoryRegistry(ApplicationContext context) {
+        this.context = context;
+        this.mapper = context.getBean(ObjectMapper.class);
+
+        Map<String, RepositoryFactoryInformation> fm =
+            context.getBeansOfType(RepositoryFactoryInformation.class);
+        for (RepositoryFactoryInformation rfi : fm.values()) {
+            Entry entry = createEntry(rfi.getRepositoryInformation(), rfi.getEntityInformation());
+            entries.put(entry.getRepositoryType().getCanonicalName(), entry);
+        }
+
+        // The default repository applies if the context contains only a single
+        // repository factory
+        if (entries.size() == 1) {
+            defaultEntry = entries.values().iterator().next();
+        }
+    }
+
+    /**
+     * Gets the entry of the repository.
+     *
+     * @param repositoryName the canonical name of the repository interface,
+     *        or null for the default repository
+     * @return the repository entry
+     */
+    Entry get(String repositoryName) {
+        if (repositoryName == null) {
+            if (defaultEntry == null) {
+                throw new IllegalClientRequest(
+                    "The repository interface must be specified when there is more than one repository");
+            }
+            return defaultEntry;
+        }
+        Entry entry = entries.get(repositoryName);
+        if (entry == null) {
+            // A repository without a factory bean is resolved once and then cached
+            entry = entries.computeIfAbsent(repositoryName, this::resolve);
+        }
+        return entry;
+    }
+
+    /**
+     * Gets all the registered entries.
+     *
+     * @return the repository entries
+     */
+    Collection<Entry> entries() {
+        return entries.values();
+    }
+
+    /**
+     * Whether the entry is the default repository, used by the commands that 
+     * do not name their repository.
+     *
+     * @param entry the repository entry
+     * @return true if the entry is the default repository
+     */
+    boolean isDefault(Entry entry) {
+        return entry == defaultEntry;
+    }
+
+    ObjectMapper getObjectMapper() {
+        return mapper;
+    }
+
+    private Entry resolve(String repositoryName) {
+        Class<?> type;
+        try {
+            type = Class.forName(repositoryName);
+        } catch (ClassNotFoundException ex) {
+            throw new VertxException(ex);
+        }
+        if (Repository.class.isAssignableFrom(type) == false) {
+            throw new VertxException("The repository interface does not extend Repository");
+        }
+        return createEntry(new DefaultRepositoryMetadata(type), null);
+    }
+
+    private Entry createEntry(RepositoryMetadata metadata, EntityInformation<?, ?> entityInformation) {
+        Class<?> repoType = metadata.getRepositoryInterface();
+        Repository<?, ?> repository = (Repository<?, ?>) context.getBean(repoType);
+        return new Entry(repository, metadata, entityInformation, mapper);
+    }
+
+    /**
+     * The mixin that names the filter of the sparse fieldsets on a domain type.
+     */
+    @JsonFilter(Entry.FIELDS_FILTER)
+    private static class FieldsMixin {
+    }
+
+    /**
+     * The cached metadata of a repository.
+     */
+    static class Entry {
+        final static String FIELDS_FILTER = "fields";
+
+        private final Repository<?, ?> repository;
+        private final Class<?> repositoryType;
+        private final Class<?> domainType;
+        private final Class<? extends Serializable> idType;
+        private final ObjectReader reader;
+        private final ObjectWriter writer;
+        private final ObjectWriter fieldsWriter;
+        private final MethodDispatcher dispatcher;
+        private final EntityInformation<?, ?> entityInformation;
+
+        Entry(Repository<?, ?> repository, RepositoryMetadata metadata, 
+            EntityInformation<?, ?> entityInformation, ObjectMapper mapper) {
+            this.repository = repository;
+            this.entityInformation = entityInformation;
+            this.repositoryType = metadata.getRepositoryInterface();
+            this.domainType = metadata.getDomainType();
+            this.idType = metadata.getIdType();
+            this.reader = mapper.reader(domainType);
+            this.writer = mapper.writerWithType(domainType)
+                .without(SerializationFeature.FLUSH_AFTER_WRITE_VALUE);
+            // The filter applies to the domain type only, in a copy of the mapper
+            // so the full writer is left as is. The copy shares the serializers 
+            // of the mapper unless it has a provider of its own.
+            ObjectMapper fieldsMapper = mapper.copy();
+            fieldsMapper.setSerializerProvider(new DefaultSerializerProvider.Impl());
+            fieldsMapper.addMixInAnnotations(domainType, FieldsMixin.class);
+            this.fieldsWriter = fieldsMapper.writerWithType(domainType)
+                .without(SerializationFeature.FLUSH_AFTER_WRITE_VALUE);
+            this.dispatcher = new MethodDispatcher(repositoryType);
+        }
+
+        Repository<?, ?> getRepository() {
+            return repository;
+        }
+
+        Class<?> getRepositoryType() {
+            return repositoryType;
+        }
+
+        Class<?> getDomainType() {
+            return domainType;
+        }
+
+        Class<? extends Serializable> getIdType() {
+            return idType;
+        }
+
+        ObjectReader getReader() {
+            return reader;
+        }
+
+        ObjectWriter getWriter() {
+            return writer;
+        }
+
+        /**
+         * Gets the writer of a sparse fieldset, which writes only the given 
+         * properties of an entity. The other properties are not read at all, so 
+         * a lazy association outside the fieldset is not loaded.
+         *
+         * @param fields the names of the properties, or null for all of them
+         * @return the writer
+         */
+        ObjectWriter getWriter(JsonArray fields) {
+            if (fields == null || fields.size() == 0) {
+                return writer;
+            }
+            Set<String> names = new HashSet<>(fields.size());
+            for (Object field : fields) {
+                names.add(String.valueOf(field));
+            }
+            return fieldsWriter.with(new SimpleFilterProvider()
+                .addFilter(FIELDS_FILTER, SimpleBeanPropertyFilter.filterOutAllExcept(names)));
+        }
+
+        MethodDispatcher getDispatcher() {
+            return dispatcher;
+        }
+
+        /**
+         * Gets the entity information of the repository factory, which reads 
+         * the id of an entity.
+         *
+         * @return the entity information, or null for a repository without a factory bean
+         */
+        EntityInformation<?, ?> getEntityInformation() {
+            return entityInformation;
+        }
+    }
+}
@@ -1,29 +1,40 @@
 package com.github.relai.vertx.springdata;
 
-import com.fasterxml.jackson.databind.ObjectMapper;
 import io.netty.handler.codec.http.HttpResponseStatus;
 import static io.netty.handler.codec.http.HttpResponseStatus.CONFLICT;
+import static io.netty.handler.codec.http.HttpResponseStatus.GATEWAY_TIMEOUT;
 import static io.netty.handler.codec.http.HttpResponseStatus.INTERNAL_SERVER_ERROR;
 import static io.netty.handler.codec.http.HttpResponseStatus.NOT_ACCEPTABLE;
 import static io.netty.handler.codec.http.HttpResponseStatus.NOT_FOUND;
 import java.io.Serializable;
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
+import java.lang.reflect.UndeclaredThrowableException;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.logging.Level;
 import java.util.logging.Logger;
-import org.springframework.boot.SpringApplication;
+import org.springframework.beans.factory.NoSuchBeanDefinitionException;
 import org.springframework.context.ConfigurableApplicationContext;
 import org.springframework.dao.EmptyResultDataAccessException;
 import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageImpl;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Sort;
 import org.springframework.data.repository.CrudRepository;
+import org.springframework.data.repository.PagingAndSortingRepository;
+import org.springframework.data.repository.core.EntityInformation;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.util.NumberUtils;
 import org.springframework.data.repository.Repository;
-import org.springframework.data.repository.core.RepositoryMetadata;
-import org.springframework.data.repository.core.support.DefaultRepositoryMetadata;
-import org.springframework.data.repository.core.support.RepositoryFactoryInformation;
+import org.vertx.java.core.AsyncResult;
+import org.vertx.java.core.Handler;
 import org.vertx.java.core.VertxException;
 import org.vertx.java.core.eventbus.Message;
 import org.vertx.java.core.json.JsonArray;
@@ -31,6 +42,8 @@ import org.vertx.java.core.json.JsonElement;
 import org.vertx.java.core.json.JsonObject;
 import org.vertx.java.platform.Verticle;
 
+import com.fasterxml.jackson.databind.ObjectWriter;
+
 
 /**
  * Internal class of a worker verticle to query the database using Spring Data. It supports standard 
@@ -45,10 +58,23 @@ import org.vertx.java.platform.Verticle;
 public class RepositoryVerticle extends Verticle {   
     public final static String APP_CONTEXT = "applicationContext";
     public final static String REPOSITORY  = "repository";     
+    public final static String RESULT_CACHE = "resultCache";
+    public final static String SHARED_CONTEXT = "sharedContext";
+    public final static String LANE = "lane";
+    public final static String READ_ONLY = "readOnly";
+    public final static String QUERY_TIMEOUTS = "queryTimeouts";
+    public final static String ARGUMENT_CODECS = "argumentCodecs";
+    public final static String JAVA_SERIALIZATION = "javaSerialization";
+    
+    final static String READ_LANE = "read";
+    final static String WRITE_LANE = "write";
     
     final static String ACTION    = "action";
     final static String FINDALL   = "findAll";
     final static String FINDONE   = "findOne";
+    final static String FINDPAGE  = "findPage";
+    final static String FINDAFTER = "findAfter";
+    final static String FINDALLSTREAM = "findAllStream";
     final static String SAVE      = "save";
     final static String DELETE    = "delete";
     final static String DELETEALL = "deleteAll";
@@ -58,13 +84,49 @@ public class RepositoryVerticle extends Verticle {
     final static String ID = "id";
     final static String ENTITY = "entity";
     final static String ARGS = "args";
+    final static String ALIGNED = "aligned";
+    final static String PAGEABLE = "pageable";
+    final static String SORT = "sort";
+    final static String FIELDS = "fields";
+    final static String BATCH_SIZE = "batchSize";
+    final static String TIMEOUT = "timeout";
+    final static String DEADLINE = "deadline";
+    final static String SENT = "sent";
+    final static String CANCEL = "cancel";
+    final static String BATCH = "batch";
+    final static String OPERATIONS = "operations";
+    final static String TRANSACTIONAL = "transactional";
+    final static String RESULT = "result";
+    final static String FAILURE_CODE = "failureCode";
+    final static String MESSAGE = "message";
+    
+    final static long DEFAULT_TIMEOUT = 5000;
+    
+    // The prefixes of Spring Data derived queries that only read
+    private final static String[] READ_PREFIXES = {
+        "find", "read", "get", "query", "count", "exists", "stream"
+    };
+    final static String CODEC = "codec";
+    final static String FORMAT = "format";
+    final static String BINARY = "binary";
     
     private ConfigurableApplicationContext springContext;  
-	private Class<? extends Repository> defaultRepositoryType;
-    private Class<?> defaultEntityType;
-    private Class<? extends Serializable> defaultIdType;
+    private boolean sharedContext;
+    private RepositoryRegistry registry;
+    private EntityCodec codec;
+    private Invalidator invalidator;
+    private Map<RepositoryRegistry.Entry, ResultCache> resultCaches;
+    private ArgumentCodec compactCodec;
+    private ArgumentCodec javaCodec;
+    private Map<String, ArgumentCodec> argumentCodecs;
+    private TransactionTemplate transactionTemplate;
+    private PlatformTransactionManager transactionManager;
+    private boolean readOnly;
+    private boolean queryTimeouts;
+    private final WorkerMetrics metrics = new WorkerMetrics();
+    private final Handler<Message<JsonObject>> handler = this::handle;
     
-    @SuppressWarnings({ "rawtypes", "unchecked"})
+    @SuppressWarnings({ "rawtypes"})
 	@Override 
 	public void start() {
         
@@ -73,25 +135,45 @@ public class RepositoryVerticle extends Verticle {
             JsonObject config = getContainer().config();                                    
             String configClassName = config.getString(APP_CONTEXT);
             Class configClass = Class.forName(configClassName);         
-            SpringApplication app = new SpringApplication(configClass, JacksonAutoWire.class);
-            springContext = app.run();
+            sharedContext = config.getBoolean(SHARED_CONTEXT, false);
+            springContext = sharedContext ? 
+                SharedContext.acquire(configClass) : SharedContext.start(configClass);
                       
-            // Get the default repository type if the context contains only
-            // a single repository factory
-            Map<String, RepositoryFactoryInformation> fm = 
-                springContext.getBeansOfType(RepositoryFactoryInformation.class);   
-            if (fm.size() == 1) {
-                fm.values().forEach((RepositoryFactoryInformation rfi) -> { 
-                    defaultRepositoryType = (Class<? extends Repository>) 
-                        rfi.getRepositoryInformation().getRepositoryInterface();
-                    defaultIdType = rfi.getRepositoryInformation().getIdType();
-                    defaultEntityType = rfi.getRepositoryInformation().getDomainType();
-                });
-            }            
-                                        
-            vertx.eventBus().registerHandler(getEventBusAddress(), this::handle); 
+            // Register the repositories of the context, along with their metadata
+            registry = new RepositoryRegistry(springContext);
+            codec = new EntityCodec(registry.getObjectMapper());
+            invalidator = new Invalidator(vertx.eventBus(), registry);
+            resultCaches = createResultCaches(config.getObject(RESULT_CACHE));
+            
+            // Java serialization of the arguments is only accepted if enabled, and
+            // any other codec only if registered
+            boolean javaSerialization = config.getBoolean(JAVA_SERIALIZATION, false);
+            compactCodec = new CompactArgumentCodec(javaSerialization);
+            javaCodec = javaSerialization ? new JavaArgumentCodec() : null;
+            argumentCodecs = createArgumentCodecs(config.getArray(ARGUMENT_CODECS));
+            
+            // An instance of a lane only serves the commands of its lane, and the write
+            // lane also serves the commands sent without a lane
+            String lane = config.getString(LANE);
+            readOnly = READ_LANE.equals(lane) && config.getBoolean(READ_ONLY, false);
+            queryTimeouts = config.getBoolean(QUERY_TIMEOUTS, false);
+            if (readOnly || queryTimeouts) {
+                transactionManager = springContext.getBean(PlatformTransactionManager.class);
+            }
+            if (READ_LANE.equals(lane) == false) {
+                vertx.eventBus().registerHandler(getEventBusAddress(), handler); 
+                vertx.eventBus().registerHandler(getEventBusAddress(WRITE_LANE), handler); 
+            }
+            if (WRITE_LANE.equals(lane) == false) {
+                vertx.eventBus().registerHandler(getEventBusAddress(READ_LANE), handler); 
+            }
+            vertx.eventBus().registerHandler(WorkerMetrics.getAddress(), 
+                (Message<JsonObject> message) -> message.reply(metrics.toJson()));
+            metrics.register(getEventBusAddress() + (lane == null ? "" : "." + lane) + 
+                "@" + Integer.toHexString(System.identityHashCode(this)));
        
-        } catch (SecurityException | ClassNotFoundException ex) {
+        } catch (SecurityException | ReflectiveOperationException | ClassCastException | 
+                 NoSuchBeanDefinitionException ex) {
             Logger.getLogger(RepositoryVerticle.class.getName()).log(Level.SEVERE, null, ex);
             throw new VertxException(ex);
         }
@@ -100,195 +182,559 @@ public class RepositoryVerticle extends Verticle {
     @Override 
     public void stop() {
         super.stop();
-        if (springContext != null) {
+        metrics.unregister();
+        if (springContext != null && sharedContext) {
+            SharedContext.release(springContext);
+        } else if (springContext != null) {
             springContext.close();
         }
     }
     
    
     private void handle(Message<JsonObject> message) {
+        JsonObject command = message.body();
+        WorkerMetrics.Sample sample = metrics.start(command);
         Object result = null;
+        int failureCode = 0;
         try {
-            JsonObject command = message.body();   
-            byte[] args = command.getBinary(ARGS);                        
-            if (args != null) {            	 
-                 result = invoke(command);  
-            } else {            	
-                String action = command.getString(ACTION, "");
-                switch (action) {
-	                case FINDALL:
-	                    result = findAll(command);
-	                    break;
-	                case FINDONE:
-	                    result = findOne(command);
-	                    break;
-	                case EXISTS:
-	                	result = exists(command);
-	                	break;
-	                case DELETE:
-	                    delete(command);
-	                    result = Void.TYPE;
-	                    break;
-	                case DELETEALL:
-	                    deleteAll(command);
-	                    result = Void.TYPE;
-	                    break;
-	                case COUNT:
-	                    result = count(command);
-	                    break;
-	                case SAVE:
-	                    result = save(command);
-	                    break;
-	                default:
-	                	throw new IllegalClientRequest("Unknown action: " + action);
-                }                        
-            }  
+            String action = command.getString(ACTION, "");
+            long deadline = command.getLong(DEADLINE, 0);
+            if (deadline > 0 && System.currentTimeMillis() >= deadline) {
+                // The caller has given up on the reply, so the command is not run
+                failureCode = GATEWAY_TIMEOUT.code();
+                message.fail(failureCode, "The deadline of the command has passed");
+                return;
+            }
+            if (command.getField(ARGS) == null && FINDALLSTREAM.equals(action)) {
+                // The batches are replied by the stream itself
+                findAllStream(message);
+                return;
+            } else if (command.getField(ARGS) == null && BATCH.equals(action)) {
+                result = batch(command);
+            } else if (readOnly || (queryTimeouts && deadline > 0)) {
+                result = executeInTransaction(command, deadline);
+            } else {
+                result = executeCached(command);
+            }
             if (Void.TYPE.equals(result)) {
             	message.reply();
             } else {
             	message.reply(result);
             }
-        } catch (EmptyResultDataAccessException ex){
-            fail(message, NOT_FOUND, ex);
-        } catch (IllegalClientRequest ex) {
-            fail(message, NOT_ACCEPTABLE, ex);
-        } catch (OptimisticLockingFailureException ex) {
-            fail(message, CONFLICT, ex);
         } catch (InvocationTargetException | IllegalAccessException | RuntimeException ex) {
-            fail(message, INTERNAL_SERVER_ERROR, ex);
-        } 
+            failureCode = statusOf(ex).code();
+            fail(message, ex);
+        } finally {
+            metrics.end(sample, result, failureCode);
+        }
+    }
+    
+    /**
+     * Executes a single command.
+     * 
+     * @return the reply, or <code>Void.TYPE</code> for an empty reply
+     */
+    private Object execute(JsonObject command) 
+        throws IllegalAccessException, InvocationTargetException {
+        if (command.getField(ARGS) != null) {            	 
+             return invoke(command);  
+        }
+        Object result;
+        String action = command.getString(ACTION, "");
+        switch (action) {
+            case FINDALL:
+                result = findAll(command);
+                break;
+            case FINDONE:
+                result = findOne(command);
+                break;
+            case FINDPAGE:
+                result = findPage(command);
+                break;
+            case FINDAFTER:
+                result = findAfter(command);
+                break;
+            case EXISTS:
+            	result = exists(command);
+            	break;
+            case DELETE:
+                delete(command);
+                result = Void.TYPE;
+                break;
+            case DELETEALL:
+                deleteAll(command);
+                result = Void.TYPE;
+                break;
+            case COUNT:
+                result = count(command);
+                break;
+            case SAVE:
+                result = save(command);
+                break;
+            default:
+            	throw new IllegalClientRequest("Unknown action: " + action);
+        }                        
+        return result;
+    }
+    
+    /**
+     * Executes a single command, answering a read from the result cache of its 
+     * repository if it has one.
+     */
+    private Object executeCached(JsonObject command) 
+        throws IllegalAccessException, InvocationTargetException {
+        if (resultCaches.isEmpty()) {
+            return execute(command);
+        }
+        RepositoryRegistry.Entry entry = getEntry(command);
+        if (isRead(command) == false) {
+            // Clears the caches of this instance before replying, the others on the invalidation
+            Object result = execute(command);
+            clearResultCaches(entry.getDomainType());
+            return result;
+        }
+        ResultCache cache = resultCaches.get(entry);
+        if (cache == null) {
+            return execute(command);
+        }
+        String key = ResultCache.key(command, entry);
+        Object reply = cache.get(key);
+        metrics.cacheHit(reply != null);
+        if (reply == null) {
+            long start = cache.generation();
+            reply = execute(command);
+            cache.put(key, reply, start);
+        }
+        return reply;
+    }
+    
+    /**
+     * Executes a single command in a transaction, which is read-only in the read 
+     * lane. With the query timeouts, the time left until the deadline of the command
+     * is the timeout of the transaction, which the transaction manager applies to 
+     * the queries and statements, as the JPA and JDBC ones do.
+     */
+    private Object executeInTransaction(JsonObject command, long deadline) 
+        throws IllegalAccessException, InvocationTargetException {
+        TransactionTemplate template = new TransactionTemplate(transactionManager);
+        template.setReadOnly(readOnly);
+        if (queryTimeouts && deadline > 0) {
+            // The transaction timeout is in whole seconds, rounded up
+            long remaining = deadline - System.currentTimeMillis();
+            template.setTimeout((int) Math.max(1, (remaining + 999) / 1000));
+        }
+        try {
+            return template.execute(status -> {
+                try {
+                    return executeCached(command);
+                } catch (IllegalAccessException | InvocationTargetException ex) {
+                    throw new UndeclaredThrowableException(ex);
+                }
+            });
+        } catch (UndeclaredThrowableException ex) {
+            Throwable cause = ex.getUndeclaredThrowable();
+            if (cause instanceof InvocationTargetException) {
+                throw (InvocationTargetException) cause;
+            } else if (cause instanceof IllegalAccessException) {
+                throw (IllegalAccessException) cause;
+            }
+            throw ex;
+        }
+    }
+    
+    /**
+     * Creates the result caches of the repositories from the configuration, and
+     * clears them on the invalidations published after the writes of any verticle
+     * instance.
+     */
+    private Map<RepositoryRegistry.Entry, ResultCache> createResultCaches(JsonObject config) {
+        Map<RepositoryRegistry.Entry, ResultCache> caches = new HashMap<>();
+        if (config == null) {
+            return caches;
+        }
+        for (String name : config.getFieldNames()) {
+            if (ResultCache.ANY.equals(name) == false) {
+                caches.put(registry.get(name), ResultCache.of(config.getObject(name)));
+            }
+        }
+        JsonObject any = config.getObject(ResultCache.ANY);
+        if (any != null) {
+            for (RepositoryRegistry.Entry entry : registry.entries()) {
+                caches.computeIfAbsent(entry, e -> ResultCache.of(any));
+            }
+        }
+        
+        // A write through any repository of the domain type clears the caches of the type
+        for (RepositoryRegistry.Entry entry : registry.entries()) {
+            Class<?> domainType = entry.getDomainType();
+            vertx.eventBus().registerHandler(
+                Invalidator.getAddress(entry.getRepositoryType().getCanonicalName()), 
+                (Message<JsonObject> message) -> clearResultCaches(domainType));
+        }
+        return caches;
+    }
+    
+    private void clearResultCaches(Class<?> domainType) {
+        resultCaches.forEach((entry, cache) -> {
+            if (entry.getDomainType().equals(domainType)) {
+                cache.clear();
+            }
+        });
+    }
+    
+    /**
+     * Executes the operations of a batch envelope in order. The reply is an array 
+     * with the outcome of each operation: either <code>{"result": ...}</code>, 
+     * or <code>{"failureCode": 404, "message": "..."}</code>.
+     * 
+     * <p>A transactional batch runs in a single Spring transaction. The first 
+     * failing operation rolls back the transaction and fails the whole batch.
+     */
+    private JsonArray batch(JsonObject envelope) {
+        JsonArray operations = envelope.getArray(OPERATIONS);
+        if (operations == null) {
+            throw new IllegalClientRequest("The batch operations are required");
+        }
+        String repository = envelope.getString(REPOSITORY);
+        if (envelope.getBoolean(TRANSACTIONAL, false)) {
+            return getTransactionTemplate().execute(
+                status -> executeAll(operations, repository, true));
+        }
+        return executeAll(operations, repository, false);
+    }
+    
+    private JsonArray executeAll(JsonArray operations, String repository, boolean atomic) {
+        JsonArray results = new JsonArray();
+        int index = 0;
+        for (Object obj : operations) {
+            JsonObject operation = (JsonObject) obj;
+            if (repository != null && operation.getString(REPOSITORY) == null) {
+                operation.putString(REPOSITORY, repository);
+            }
+            JsonObject outcome = new JsonObject();
+            try {
+                String action = operation.getString(ACTION, "");
+                if (operation.getField(ARGS) == null && 
+                    (FINDALLSTREAM.equals(action) || BATCH.equals(action))) {
+                    throw new IllegalClientRequest("The action cannot be batched: " + action);
+                }
+                Object result = execute(operation);
+                if (Void.TYPE.equals(result) == false) {
+                    outcome.putValue(RESULT, result);
+                }
+            } catch (InvocationTargetException | IllegalAccessException | RuntimeException ex) {
+                if (atomic) {
+                    throw new BatchFailure(index, ex);
+                }
+                outcome.putNumber(FAILURE_CODE, statusOf(ex).code())
+                       .putString(MESSAGE, explain(ex));
+            }
+            results.addObject(outcome);
+            index++;
+        }
+        return results;
+    }
+    
+    private TransactionTemplate getTransactionTemplate() {
+        if (transactionTemplate == null) {
+            try {
+                transactionTemplate = new TransactionTemplate(
+                    springContext.getBean(PlatformTransactionManager.class));
+            } catch (NoSuchBeanDefinitionException ex) {
+                throw new IllegalClientRequest("A transactional batch requires a transaction manager", ex);
+            }
+        }
+        return transactionTemplate;
     }
     
     @SuppressWarnings({ "rawtypes", "unchecked" })
-	protected JsonArray findAll(JsonObject command) {
-        CrudRepository repository = getCrudRepository(command);
+	protected Object findAll(JsonObject command) {
+        RepositoryRegistry.Entry entry = getEntry(command);
         Iterable entities;
+        JsonObject pageable = command.getObject(PAGEABLE);
+        JsonArray sort = command.getArray(SORT);
         JsonArray idArray = command.getArray(ID);
-        if (idArray == null) {
-        	entities = repository.findAll();
+        if (pageable != null) {
+            entities = (Iterable) findAll(entry, PagingHelper.toPageable(pageable));
+        } else if (sort != null && sort.size() > 0) {
+            entities = (Iterable) findAll(entry, PagingHelper.toSort(sort));
+        } else if (idArray == null) {
+        	entities = getCrudRepository(entry).findAll();
+        } else if (command.getBoolean(ALIGNED, false)) {
+            entities = findAllAligned(toIds(idArray, entry), entry);
         } else {
-        	Iterable ids = fromJsonArray(idArray, getEntityIdType(command));
-        	entities = repository.findAll(ids);
+        	entities = getCrudRepository(entry).findAll(toIds(idArray, entry));
+        }
+        return writeEntities(entities, entry, command);
+    }
+    
+    @SuppressWarnings({ "rawtypes", "unchecked" })
+    protected Object findPage(JsonObject command) {
+        RepositoryRegistry.Entry entry = getEntry(command);
+        JsonObject json = command.getObject(PAGEABLE);
+        if (json == null) {
+            throw new IllegalClientRequest("The pageable is required");
+        }
+        Pageable pageable = PagingHelper.toPageable(json);
+        Object result = findAll(entry, pageable);
+        Page page = result instanceof Page ? (Page) result : toPage((Iterable) result, pageable, entry);
+        return metrics.encode(() -> isBinary(command) ? 
+            codec.toPageBytes(page, writerOf(entry, command)) : 
+            codec.toJsonPage(page, writerOf(entry, command)));
+    }
+    
+    /**
+     * Reads a slice of the keyset pagination: the first entities in the order of 
+     * the sort and id, or the ones after the key of the <code>after</code> token, 
+     * through the seek method of the repository. See {@link KeysetHelper}. The
+     * reply carries the token of the next slice, or null after the last one.
+     */
+    @SuppressWarnings({ "rawtypes", "unchecked" })
+    protected Object findAfter(JsonObject command) 
+        throws IllegalAccessException, InvocationTargetException {
+        RepositoryRegistry.Entry entry = getEntry(command);
+        JsonObject json = command.getObject(PAGEABLE);
+        if (json == null) {
+            throw new IllegalClientRequest("The pageable is required");
+        }
+        Pageable pageable = PagingHelper.toPageable(json);
+        List<Sort.Order> orders = KeysetHelper.keyOrders(pageable.getSort(), 
+            KeysetHelper.idProperty(entry.getDomainType()));
+        // One more entity tells whether there is a next slice
+        Pageable limit = new PageRequest(0, pageable.getPageSize() + 1, new Sort(orders));
+        
+        String after = command.getString(KeysetHelper.AFTER);
+        Object result;
+        if (after == null) {
+            result = findAll(entry, limit);
+        } else {
+            String name = KeysetHelper.seekMethodName(orders);
+            Method method = KeysetHelper.findSeekMethod(entry.getRepositoryType(), name);
+            List<Object> key = metrics.decode(() -> 
+                KeysetHelper.decode(after, method, registry.getObjectMapper()));
+            Object[] args = KeysetHelper.seekArguments(method, key, limit);
+            MethodDispatcher.Invoker invoker = entry.getDispatcher().resolve(name, args);
+            result = invoker != null ? 
+                invoker.invoke(entry.getRepository(), args) : method.invoke(entry.getRepository(), args);
+        }
+        
+        List content = new ArrayList();
+        ((Iterable) result).forEach(content::add);
+        String next = null;
+        if (content.size() > pageable.getPageSize()) {
+            content = content.subList(0, pageable.getPageSize());
+            next = KeysetHelper.encode(KeysetHelper.keyOf(content.get(content.size() - 1), orders), 
+                registry.getObjectMapper());
+        }
+        List slice = content;
+        String token = next;
+        return metrics.encode(() -> isBinary(command) ? 
+            codec.toSliceBytes(slice, token, writerOf(entry, command)) : 
+            codec.toJsonSlice(slice, token, writerOf(entry, command)));
+    }
+    
+    /**
+     * Builds the page of a repository whose <code>findAll(Pageable)</code> returns 
+     * the content only. A partial page is the last one, so the total is its end;
+     * otherwise the total is counted.
+     */
+    @SuppressWarnings({ "rawtypes", "unchecked" })
+    private Page toPage(Iterable result, Pageable pageable, RepositoryRegistry.Entry entry) {
+        List content = new ArrayList();
+        result.forEach(content::add);
+        boolean last = content.size() < pageable.getPageSize() && 
+            (content.isEmpty() == false || pageable.getOffset() == 0);
+        long total = last ? pageable.getOffset() + content.size() : getCrudRepository(entry).count();
+        return new PageImpl(content, pageable, total);
+    }
+    
+    /**
+     * Streams all entities in batches. Each batch is a reply that waits for the 
+     * acknowledgment of the client before the next batch is read, so the client 
+     * controls the flow. The end of the stream is an empty reply.
+     */
+    private void findAllStream(Message<JsonObject> message) {
+        JsonObject command = message.body();
+        RepositoryRegistry.Entry entry = getEntry(command);
+        int batchSize = command.getInteger(BATCH_SIZE, 0);
+        BatchCursor cursor;
+        if (supportsPaging(entry)) {
+            Sort sort = PagingHelper.toSort(command.getArray(SORT));
+            cursor = BatchCursor.paged(pageable -> findAll(entry, pageable), batchSize, sort);
+        } else {
+            cursor = BatchCursor.of(getCrudRepository(entry).findAll(), batchSize);
+        }
+        sendBatch(message, cursor, entry, command);
+    }
+    
+    private void sendBatch(Message<?> message, BatchCursor cursor, 
+        RepositoryRegistry.Entry entry, JsonObject command) {
+        List<?> batch = cursor.next();
+        if (batch == null) {
+            message.reply();
+            return;
         }
-        return toJsonArray(entities);
+        long timeout = command.getLong(TIMEOUT, DEFAULT_TIMEOUT);
+        message.replyWithTimeout(writeEntities(batch, entry, command), timeout, 
+            (AsyncResult<Message<JsonObject>> ack) -> {
+                // The stream is abandoned if the client cancels or does not acknowledge in time
+                if (ack.succeeded() && ack.result().body().getBoolean(CANCEL, false) == false) {
+                    try {
+                        sendBatch(ack.result(), cursor, entry, command);
+                    } catch (RuntimeException ex) {
+                        fail(ack.result(), ex);
+                    }
+                }
+            });
+    }
+    
+    private boolean supportsPaging(RepositoryRegistry.Entry entry) {
+        if (entry.getRepository() instanceof PagingAndSortingRepository) {
+            return true;
+        }
+        Object[] args = {new PageRequest(0, 1)};
+        MethodDispatcher.Invoker invoker = entry.getDispatcher().resolve(FINDALL, args);
+        return invoker != null && invoker.accepts(args);
+    }
+    
+    /**
+     * Calls <code>findAll</code> with a <code>Pageable</code> or <code>Sort</code>, 
+     * either through <code>PagingAndSortingRepository</code> or the same method 
+     * declared on the repository interface.
+     */
+    @SuppressWarnings("rawtypes")
+    private Object findAll(RepositoryRegistry.Entry entry, Object hint) {
+        Repository repository = entry.getRepository();
+        if (repository instanceof PagingAndSortingRepository) {
+            PagingAndSortingRepository r = (PagingAndSortingRepository) repository;
+            return hint instanceof Pageable ? r.findAll((Pageable) hint) : r.findAll((Sort) hint);
+        }
+        
+        Object[] args = {hint};
+        MethodDispatcher.Invoker invoker = entry.getDispatcher().resolve(FINDALL, args);
+        if (invoker == null || invoker.accepts(args) == false) {
+            throw new IllegalClientRequest("The repository does not support findAll with " + 
+                (hint instanceof Pageable ? "Pageable" : "Sort"));
+        }
+        try {
+            return invoker.invoke(repository, args);
+        } catch (InvocationTargetException ex) {
+            throw new VertxException(ex.getCause());
+        }
+    }
+    
+    /**
+     * Finds the entities with the given ids, aligned with the ids: the entity 
+     * of each id is at the same index, or null if it does not exist.
+     */
+    @SuppressWarnings({ "rawtypes", "unchecked" })
+    private List<Object> findAllAligned(List<Object> ids, RepositoryRegistry.Entry entry) {
+        CrudRepository repository = getCrudRepository(entry);
+        EntityInformation info = entry.getEntityInformation();
+        List<Object> aligned = new ArrayList<>(ids.size());
+        if (info == null) {
+            // Without the entity information, the id of an entity is unknown
+            for (Object id : ids) {
+                aligned.add(repository.findOne((Serializable) id));
+            }
+            return aligned;
+        }
+        Map<Object, Object> found = new HashMap<>();
+        for (Object entity : (Iterable<Object>) repository.findAll(ids)) {
+            found.put(info.getId(entity), entity);
+        }
+        for (Object id : ids) {
+            aligned.add(found.get(id));
+        }
+        return aligned;
+    }
+    
+    /**
+     * Reads the ids of the command, converting JSON numbers to the id type.
+     */
+    @SuppressWarnings("unchecked")
+    private List<Object> toIds(JsonArray idArray, RepositoryRegistry.Entry entry) {
+        List<Object> ids = metrics.decode(() -> codec.fromJsonArray(idArray, entry));
+        Class<?> idType = entry.getIdType();
+        if (idType != null && Number.class.isAssignableFrom(idType)) {
+            ids.replaceAll(id -> id instanceof Number && idType.isInstance(id) == false ?
+                NumberUtils.convertNumberToTargetClass((Number) id, (Class<Number>) idType) : id);
+        }
+        return ids;
     }
     
     @SuppressWarnings({ "unchecked" })
-	protected JsonObject findOne(JsonObject command) {
+	protected Object findOne(JsonObject command) {
+        RepositoryRegistry.Entry entry = getEntry(command);
         Serializable id = getId(command);
-        Object entity = getCrudRepository(command).findOne(id);
+        Object entity = getCrudRepository(entry).findOne(id);
         if (entity == null) {
             throw new EmptyResultDataAccessException("Cannot locate the record with id " + id.toString(), 1);
         }
-        return toJsonObject(entity);
+        return writeEntity(entity, entry, command);
     }
     
     @SuppressWarnings({ "unchecked" })
     protected Boolean exists(JsonObject command) {
         Serializable id = getId(command);
-        return getCrudRepository(command).exists(id);
+        return getCrudRepository(getEntry(command)).exists(id);
     }
     
     @SuppressWarnings({ "rawtypes", "unchecked" })
     protected void delete(JsonObject command) {
-        CrudRepository repository = getCrudRepository(command);
+        RepositoryRegistry.Entry entry = getEntry(command);
+        CrudRepository repository = getCrudRepository(entry);
         
         if (command.getField(ID) != null) {
         	repository.delete(getId(command));
+        	invalidator.ids(entry, new JsonArray().add(command.getValue(ID)));
         	return;
         } 
         
-        JsonElement entity = command.getElement(ENTITY);
-        Class entityType = getEntityIdType(command);
-        if (entity.isObject()) {
-            Object obj = fromJsonObject((JsonObject)entity, entityType);
-        	repository.delete(obj);
+        Object entity = readEntity(command, entry);
+        if (entity instanceof List) {
+        	repository.delete((List) entity);
+        	invalidator.entities(entry, (List) entity);
         } else {
-            List<Object> objs = fromJsonArray((JsonArray)entity, entityType);
-        	repository.delete(objs);
+        	repository.delete(entity);
+        	invalidator.entities(entry, Collections.singleton(entity));
         }
     }
     
     private void deleteAll(JsonObject command) {
-        getCrudRepository(command).deleteAll();
+        RepositoryRegistry.Entry entry = getEntry(command);
+        getCrudRepository(entry).deleteAll();
+        invalidator.all(entry);
     }
     
     private Long count(JsonObject command) {
-        return getCrudRepository(command).count();
+        return getCrudRepository(getEntry(command)).count();
     }
     
     @SuppressWarnings({ "rawtypes", "unchecked" })
-    private JsonElement save(JsonObject command) {
-        JsonElement entity = command.getElement(ENTITY);
-        CrudRepository repository = getCrudRepository(command);
-        Class entityType = getEntityType(command);
-        JsonElement ret;
-        if (entity.isObject()) {
-            Object obj = fromJsonObject((JsonObject)entity, entityType);
-        	Object result = repository.save(obj);
-        	ret = toJsonObject(result);
+    private Object save(JsonObject command) {
+        RepositoryRegistry.Entry entry = getEntry(command);
+        CrudRepository repository = getCrudRepository(entry);
+        Object entity = readEntity(command, entry);
+        Object ret;
+        if (entity instanceof List) {
+        	Iterable results = repository.save((List) entity);
+        	invalidator.entities(entry, results);
+        	ret = writeEntities(results, entry, command);
         } else {
-            List<Object> objs = fromJsonArray((JsonArray)entity, entityType);
-        	Iterable results = repository.save(objs);
-        	ret = toJsonArray(results);
+        	Object result = repository.save(entity);
+        	invalidator.entities(entry, Collections.singleton(result));
+        	ret = writeEntity(result, entry, command);
         }
         return ret;
     }
 	    
-    private Class<? extends Repository> getRepositoryType(JsonObject command) {
-        String repoName = command.getString(REPOSITORY);
-        Class<?> result = null;      
-        if (repoName == null || 
-            defaultRepositoryType != null && 
-            defaultRepositoryType.getCanonicalName().equals(repoName) ) {
-            result = defaultRepositoryType;
-        } else {
-            try {
-                result = Class.forName(repoName);
-            } catch (ClassNotFoundException ex) {
-                throw new VertxException(ex);
-            }
-        }        
-        if (Repository.class.isAssignableFrom(result) == false) {
-             throw new VertxException("The repository interface does not extend Repository");
-        }               
-        return (Class<? extends Repository>) result;
+    private RepositoryRegistry.Entry getEntry(JsonObject command) {
+        return registry.get(command.getString(REPOSITORY));
     }
     
-    private Class<? extends Serializable> getEntityIdType(JsonObject command) {
-        Class<? extends Serializable> result;
-        Class<? extends Repository> repoType = getRepositoryType(command);     
-        if (repoType.equals(defaultRepositoryType)) {
-            result = defaultIdType;
-        } else {
-            RepositoryMetadata repositoryMetaData = 
-                new DefaultRepositoryMetadata(repoType);
-            result = repositoryMetaData.getIdType();
-        }        
-        return result;
-    }
-    
-    private Class<?> getEntityType(JsonObject command) {
-        Class<?> result;
-        Class<? extends Repository> repoType = getRepositoryType(command);       
-        if (repoType.equals(defaultRepositoryType)) {
-            result = defaultEntityType;
-        } else {
-            RepositoryMetadata repositoryMetaData = 
-                new DefaultRepositoryMetadata(repoType);
-            result = repositoryMetaData.getDomainType();
-        }        
-        return result;
-    }
-        
-    private Repository getRepository(JsonObject command) {                 
-        Class<? extends Repository> type = getRepositoryType(command);
-    	Repository repository = springContext.getBean(type);        
-   	    return repository;
-    }
-    
-    private CrudRepository getCrudRepository(JsonObject command) {
-        Repository r = getRepository(command);        
+    private CrudRepository getCrudRepository(RepositoryRegistry.Entry entry) {
+        Repository r = entry.getRepository();        
         if (r instanceof CrudRepository == false) {
              throw new VertxException("The repository interface does not extend CrudRepository");
         }                
@@ -296,91 +742,243 @@ public class RepositoryVerticle extends Verticle {
     }
     
     @SuppressWarnings("rawtypes")
-	private JsonElement invoke(JsonObject command) 
+	private Object invoke(JsonObject command) 
         throws IllegalAccessException, IllegalArgumentException, InvocationTargetException {
         String action = command.getString(ACTION, "");
-        Object[] args = SerializationHelper.fromBytes(command.getBinary(ARGS));
-        Method method = null;
-        for (Method m : getRepositoryType(command).getMethods()) {
-            if (m.getName().equals(action) && m.getParameterCount() == args.length) {
-          		Class[] argTypes = m.getParameterTypes();
-            	boolean matched = true;            	
-            	for (int index = 0; matched && (index < args.length); index++) {
-            		// Ignore primitive type match check          
-            	   	matched = argTypes[index].isPrimitive() || 
-            	   			argTypes[index].isInstance(args[index]);
-            	}
-                if (matched) {
-                	method = m;
-                	break;
-                }
-            }
-        }
+        Object[] args = decodeArguments(command);
+        RepositoryRegistry.Entry entry = getEntry(command);
+        Object repository = entry.getRepository();
+        Object result;
         
-        if (method == null) 
-            throw new IllegalArgumentException("Cannot find the signature matching action " + action);
+        MethodDispatcher.Invoker invoker = entry.getDispatcher().resolve(action, args);
+        if (invoker != null) {
+            result = invoker.invoke(repository, args);
+        } else {
+            result = MethodDispatcher.findMethod(entry.getRepositoryType(), action, args)
+                .invoke(repository, args);
+        }
+        if (isRead(command) == false) {
+            // A custom write may change any entity
+            invalidator.all(entry);
+        }
         
-        Object repository = getRepository(command);
-        Object result = method.invoke(repository, args);
-        JsonElement msg;
+        Object msg;
         if (result == null) {
         	msg = new JsonObject();
         } else if (result instanceof Iterable)  {
-            msg = toJsonArray((Iterable) result);
-        } else if (getEntityIdType(command).isAssignableFrom(result.getClass())){
-            msg = toJsonObject(result); 
+            msg = writeEntities((Iterable) result, entry, command);
+        } else if (entry.getDomainType().isInstance(result)){
+            msg = writeEntity(result, entry, command); 
         } else {
             throw new IllegalArgumentException("The return type must be the entity object, a collection of the entity object or null");
         }
         return msg;
     }
          
-    private JsonObject toJsonObject(Object entity) {
-        ObjectMapper mapper = springContext.getBean(ObjectMapper.class);
-        Map map = mapper.convertValue(entity, HashMap.class);
-        return new JsonObject(map);
+    /**
+     * Decodes the arguments of a custom method. The built-in codecs are recognized
+     * by their encoding; any other codec is named in the command, and must be 
+     * registered with the verticle.
+     */
+    private Object[] decodeArguments(JsonObject command) {
+        byte[] bytes = command.getBinary(ARGS);
+        String codecName = command.getString(CODEC);
+        ArgumentCodec argumentCodec;
+        if (codecName != null) {
+            argumentCodec = argumentCodecs.get(codecName);
+            if (argumentCodec == null) 
+                throw new IllegalClientRequest("The argument codec is not registered: " + codecName);
+        } else if (CompactArgumentCodec.isCompact(bytes)) {
+            argumentCodec = compactCodec;
+        } else if (javaCodec != null) {
+            argumentCodec = javaCodec;
+        } else {
+            throw new IllegalClientRequest("The Java serialization of the arguments is not enabled");
+        }
+        return metrics.decode(() -> {
+            try {
+                return argumentCodec.decode(bytes);
+            } catch (RuntimeException ex) {
+                throw new IllegalClientRequest("Cannot decode the arguments", ex);
+            }
+        });
     }
     
-    private JsonArray toJsonArray(@SuppressWarnings("rawtypes") Iterable entities) {
-        JsonArray data = new JsonArray();
-        for (Object entity : entities) {
-            data.add(toJsonObject(entity));
-        }      
-        return data;
+    /**
+     * Creates the registered argument codecs by class name. A class is checked
+     * to be an {@link ArgumentCodec} before it is instantiated.
+     */
+    private static Map<String, ArgumentCodec> createArgumentCodecs(JsonArray names) 
+        throws ReflectiveOperationException {
+        Map<String, ArgumentCodec> codecs = new HashMap<>();
+        if (names != null) {
+            for (Object name : names) {
+                Class<? extends ArgumentCodec> codecType = 
+                    Class.forName((String) name).asSubclass(ArgumentCodec.class);
+                codecs.put(codecType.getName(), codecType.newInstance());
+            }
+        }
+        return codecs;
+    }
+         
+    /**
+     * Reads the entity or entities of the command. An encoded entity is 
+     * read straight from its JSON bytes.
+     * 
+     * @return the entity, or a list of entities
+     */
+    private Object readEntity(JsonObject command, RepositoryRegistry.Entry entry) {
+        if (isBinary(command)) {
+            return metrics.decode(() -> codec.fromBytes(command.getBinary(ENTITY), entry));
+        } 
+        JsonElement entity = command.getElement(ENTITY);
+        return metrics.decode(() -> entity.isObject() ? 
+            codec.fromJsonObject(entity.asObject(), entry) : 
+            codec.fromJsonArray(entity.asArray(), entry));
+    }
+    
+    private Object writeEntity(Object entity, RepositoryRegistry.Entry entry, 
+        JsonObject command) {
+        return metrics.encode(() -> isBinary(command) ? 
+            codec.toBytes(entity, writerOf(entry, command)) : 
+            codec.toJsonObject(entity, writerOf(entry, command)));
     }
     
-    private Object fromJsonObject(JsonObject entity, Class entityType) {
-        ObjectMapper mapper = springContext.getBean(ObjectMapper.class);
-        Object t = mapper.convertValue(entity.toMap(), entityType);
-        return t;
+    private Object writeEntities(Iterable<?> entities, RepositoryRegistry.Entry entry, 
+        JsonObject command) {
+        return metrics.encode(() -> isBinary(command) ? 
+            codec.toArrayBytes(entities, writerOf(entry, command)) : 
+            codec.toJsonArray(entities, writerOf(entry, command)));
     }
     
-    private List<Object> fromJsonArray(JsonArray objects, Class entityType) {
-    	List<Object> list = new ArrayList<>(objects.size());
-    	for(Object obj: objects) {
-    		if (obj instanceof JsonObject) {
-    			list.add(fromJsonObject((JsonObject)obj, entityType));
-    		} else {
-    			//throw new VertxException("Incorrect entity array.");
-    			list.add(obj);
-    		}
-    	}
-    	return list;    	
+    /**
+     * Gets the writer of the entities of the reply: the writer of the sparse 
+     * fieldset of the command, if any, or else of the whole domain type.
+     */
+    private ObjectWriter writerOf(RepositoryRegistry.Entry entry, JsonObject command) {
+        return entry.getWriter(command.getArray(FIELDS));
+    }
+    
+    private boolean isBinary(JsonObject command) {
+        return BINARY.equals(command.getString(FORMAT));
     }
     
     private Serializable getId(JsonObject command) {
         return command.getValue(ID);
     }
     
-    private void fail(Message<?> message, HttpResponseStatus status, Throwable ex) {
+    private void fail(Message<?> message, Exception ex) {
+        message.fail(statusOf(ex).code(), explain(ex));
+    }
+    
+    private static HttpResponseStatus statusOf(Throwable ex) {
+        if (ex instanceof BatchFailure) {
+            return statusOf(ex.getCause());
+        } else if (ex instanceof EmptyResultDataAccessException) {
+            return NOT_FOUND;
+        } else if (ex instanceof IllegalClientRequest) {
+            return NOT_ACCEPTABLE;
+        } else if (ex instanceof OptimisticLockingFailureException) {
+            return CONFLICT;
+        } else {
+            return INTERNAL_SERVER_ERROR;
+        }
+    }
+    
+    private static String explain(Throwable ex) {
         String explanation = ex.getMessage();
         if (explanation == null || explanation.isEmpty()) {
             explanation = "A runtime exception " + ex.getClass().getSimpleName() + " occurred.";
         }        
-        message.fail(status.code(), explanation);
+        return explanation;
+    }
+    
+    /**
+     * The failure of an operation in a transactional batch, which rolls back 
+     * the transaction.
+     */
+    private static class BatchFailure extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+
+        BatchFailure(int index, Throwable cause) {
+            super("Operation " + index + " failed: " + explain(cause), cause);
+        }
+    }
+    
+    /**
+     * Whether the command only reads. 
+     * Built-in actions are read or write by definition; a custom method is a read if its
+     * name is a derived query prefix.
+     * 
+     * @param command the command
+     * @return true if the command only reads
+     */
+    static boolean isRead(JsonObject command) {
+        String action = command.getString(ACTION, "");
+        if (command.getField(ARGS) == null) {
+            switch (action) {
+                case FINDALL:
+                case FINDONE:
+                case FINDPAGE:
+                case FINDAFTER:
+                case EXISTS:
+                case COUNT:
+                    return true;
+                default:
+                    return false;
+            }
+        }
+        for (String prefix : READ_PREFIXES) {
+            if (action.startsWith(prefix)) {
+                return true;
+            }
+        }
+        return false;
     }
     
     static String getEventBusAddress(){
         return RepositoryVerticle.class.getCanonicalName();
     }
+    
+    /**
+     * Stamps the send time and the absolute deadline of the reply into a copy of
+     * a command. The worker verticle does not run the command once the caller has 
+     * timed out, and records the time the command waited in the queue from the 
+     * send time. The command itself is left as is, since the caller may send it 
+     * again. The clocks of the client and the worker are assumed to be in sync.
+     * 
+     * @param command the command
+     * @param timeout the reply timeout in milliseconds
+     * @return the stamped copy of the command
+     */
+    static JsonObject stamp(JsonObject command, long timeout) {
+        long now = System.currentTimeMillis();
+        return command.copy()
+            .putNumber(SENT, now)
+            .putNumber(DEADLINE, now + timeout);
+    }
+    
+    /**
+     * Gets the event bus address of a lane. Without lanes, every instance serves 
+     * both lanes.
+     * 
+     * @param lane the read or write lane
+     * @return the address
+     */
+    static String getEventBusAddress(String lane){
+        return getEventBusAddress() + "." + lane;
+    }
+    
+    /**
+     * Gets the event bus address of the lane of a command. 
+     * 
+     * @param command the command
+     * @return the address of the read lane if the command only reads, or else the 
+     *         address of the write lane
+     */
+    static String getLaneAddress(JsonObject command) {
+        boolean read = isRead(command) || 
+            (command.getField(ARGS) == null && FINDALLSTREAM.equals(command.getString(ACTION)));
+        return getEventBusAddress(read ? READ_LANE : WRITE_LANE);
+    }
 }
@@ -0,0 +1,272 @@
+package com.github.relai.vertx.springdata;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Locale;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.GZIPOutputStream;
+
+import org.vertx.java.core.Vertx;
+import org.vertx.java.core.buffer.Buffer;
+import org.vertx.java.core.http.HttpServerRequest;
+import org.vertx.java.core.http.HttpServerResponse;
+import org.vertx.java.core.impl.BlockingAction;
+import org.vertx.java.core.impl.VertxInternal;
+
+/**
+ * Internal class that compresses the JSON responses of a {@link RestHelper} with
+ * the gzip or deflate content coding, as negotiated by the <code>Accept-Encoding</code>
+ * header of the request.
+ *
+ * <p>A body smaller than the minimum size is sent as is, since the compression
+ * would save fewer bytes than it costs. A body of at least the worker size is
+ * compressed on the background pool of Vert.x, so the event loop keeps serving
+ * the other requests meanwhile, and the response is then written back on the
+ * event loop. A chunked response is compressed incrementally, one chunk at a time;
+ * see {@link Chunks}.
+ *
+ * <p>Vert.x 2 has no public API to run blocking code off the event loop, other 
+ * than a worker verticle, which would copy each body over the event bus. The 
+ * background compression therefore goes through the internal 
+ * <code>BlockingAction</code> of Vert.x, on the pool of its file system calls. 
+ * If the vertx instance is not the internal implementation, every body is 
+ * compressed on the event loop. The chunks of a chunked response are always 
+ * compressed on the event loop, in order; each is at most 
+ * {@link ChunkedArrayWriter#BUFFER_SIZE} bytes, so the cost of a chunk is bounded.
+ *
+ * <p>The ETag of a compressed body carries the content coding as a suffix, as in
+ * <code>"3-gzip"</code>, since it is another representation. See {@link ETagHelper}.
+ *
+ * @author relai
+ */
+class ResponseCompressor {
+    final static String GZIP = "gzip";
+    final static String DEFLATE = "deflate";
+    final static String ACCEPT_ENCODING = "Accept-Encoding";
+    final static String CONTENT_ENCODING = "Content-Encoding";
+    final static String VARY = "Vary";
+
+    private final Vertx vertx;
+    private final int minSize;
+    private final int workerSize;
+
+    /**
+     * Constructs the compressor.
+     *
+     * @param vertx the vertx instance, to compress on the background pool, or null
+     *        to compress on the event loop
+     * @param minSize the minimum size of a body to compress, in bytes
+     * @param workerSize the minimum size of a body to compress on the background pool
+     */
+    ResponseCompressor(Vertx vertx, int minSize, int workerSize) {
+        this.vertx = vertx;
+        this.minSize = minSize;
+        this.workerSize = workerSize;
+    }
+
+    /**
+     * Writes a JSON body and ends the response, compressed if the client accepts it
+     * and the body is large enough.
+     *
+     * @param request HTTP request
+     * @param etag the ETag of the body, or null
+     * @param payload the UTF-8 encoded body
+     */
+    void end(HttpServerRequest request, String etag, byte[] payload) {
+        HttpServerResponse response = request.response()
+            .putHeader("content-type", "application/json")
+            .putHeader(VARY, ACCEPT_ENCODING);
+        String encoding = encodingOf(request, payload.length);
+        if (encoding == null) {
+            putETag(response, etag, null);
+            response.end(new Buffer(payload));
+        } else if (payload.length < workerSize || vertx instanceof VertxInternal == false) {
+            putETag(response, etag, encoding);
+            response.putHeader(CONTENT_ENCODING, encoding)
+                    .end(new Buffer(compress(payload, encoding)));
+        } else {
+            new BlockingAction<byte[]>((VertxInternal) vertx, compressed -> {
+                if (compressed.succeeded()) {
+                    putETag(response, etag, encoding);
+                    response.putHeader(CONTENT_ENCODING, encoding)
+                            .end(new Buffer(compressed.result()));
+                } else {
+                    putETag(response, etag, null);
+                    response.end(new Buffer(payload));
+                }
+            }) {
+                @Override
+                public byte[] action() {
+                    return compress(payload, encoding);
+                }
+            }.run();
+        }
+    }
+
+    /**
+     * Gets the content coding of a body of the given size, as {@link #end} 
+     * writes it.
+     *
+     * @param request HTTP request
+     * @param size the size of the body
+     * @return gzip, deflate, or null if the body is sent as is
+     */
+    String encodingOf(HttpServerRequest request, int size) {
+        return size < minSize ? null : negotiate(request.headers().get(ACCEPT_ENCODING));
+    }
+
+    /**
+     * Gets the content coding the client accepts, regardless of the size of the body.
+     *
+     * @param request HTTP request
+     * @return gzip, deflate, or null
+     */
+    String acceptedEncoding(HttpServerRequest request) {
+        return negotiate(request.headers().get(ACCEPT_ENCODING));
+    }
+
+    /**
+     * Starts the incremental compression of a chunked response, if the client
+     * accepts it. The content coding header is left to the writer of the chunks,
+     * since the response may yet fail before the first one.
+     *
+     * @param request HTTP request
+     * @return the compressor of the chunks, or null to send them as is
+     */
+    Chunks chunks(HttpServerRequest request) {
+        request.response().putHeader(VARY, ACCEPT_ENCODING);
+        String encoding = negotiate(request.headers().get(ACCEPT_ENCODING));
+        return encoding == null ? null : new Chunks(encoding);
+    }
+
+    private static void putETag(HttpServerResponse response, String etag, String encoding) {
+        if (etag != null) {
+            response.putHeader(ETagHelper.ETAG, encoding == null ? etag : ETagHelper.withEncoding(etag, encoding));
+        }
+    }
+
+    /**
+     * Chooses the content coding of the response from the <code>Accept-Encoding</code>
+     * header: the supported coding of the highest quality, gzip on a tie.
+     *
+     * @param acceptEncoding the header, or null
+     * @return gzip, deflate, or null for no compression
+     */
+    static String negotiate(String acceptEncoding) {
+        if (acceptEncoding == null) {
+            return null;
+        }
+        String best = null;
+        double bestQuality = 0;
+        for (String part : acceptEncoding.split(",")) {
+            String[] params = part.split(";");
+            String coding = params[0].trim().toLowerCase(Locale.US);
+            double quality = 1;
+            for (int index = 1; index < params.length; index++) {
+                String param = params[index].trim();
+                if (param.startsWith("q=")) {
+                    try {
+                        quality = Double.parseDouble(param.substring(2));
+                    } catch (NumberFormatException ex) {
+                        quality = 0;
+                    }
+                }
+            }
+            if (coding.equals("*")) {
+                coding = GZIP;
+            }
+            if ((coding.equals(GZIP) || coding.equals(DEFLATE)) &&
+                (quality > bestQuality || (quality == bestQuality && coding.equals(GZIP)))) {
+                best = coding;
+                bestQuality = quality;
+            }
+        }
+        return best;
+    }
+
+    /**
+     * Compresses a whole body.
+     *
+     * @param payload the body
+     * @param encoding gzip or deflate
+     * @return the compressed body
+     */
+    static byte[] compress(byte[] payload, String encoding) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(payload.length / 4 + 64);
+        try (DeflaterOutputStream out = open(bytes, encoding, false)) {
+            out.write(payload);
+        } catch (IOException ex) {
+            throw new IllegalStateException(ex);
+        }
+        return bytes.toByteArray();
+    }
+
+    private static DeflaterOutputStream open(ByteArrayOutputStream bytes, String encoding,
+        boolean syncFlush) throws IOException {
+        return GZIP.equals(encoding) ?
+            new GZIPOutputStream(bytes, ChunkedArrayWriter.BUFFER_SIZE, syncFlush) :
+            new DeflaterOutputStream(bytes, syncFlush);
+    }
+
+    /**
+     * The incremental compressor of a chunked response. Each chunk is compressed
+     * and flushed on its own, so the client can decode what it has received so
+     * far, while the compression still spans the chunks.
+     */
+    static class Chunks {
+        private final ByteArrayOutputStream bytes = new ByteArrayOutputStream(ChunkedArrayWriter.BUFFER_SIZE);
+        private final DeflaterOutputStream out;
+        private final String encoding;
+
+        Chunks(String encoding) {
+            this.encoding = encoding;
+            try {
+                this.out = open(bytes, encoding, true);
+            } catch (IOException ex) {
+                throw new IllegalStateException(ex);
+            }
+        }
+
+        String getEncoding() {
+            return encoding;
+        }
+
+        /**
+         * Compresses a chunk.
+         *
+         * @param chunk the chunk
+         * @return the compressed chunk, which is never empty
+         */
+        Buffer compress(Buffer chunk) {
+            try {
+                out.write(chunk.getBytes());
+                out.flush();
+            } catch (IOException ex) {
+                throw new IllegalStateException(ex);
+            }
+            return take();
+        }
+
+        /**
+         * Compresses the last chunk and ends the compression.
+         *
+         * @param chunk the last chunk
+         * @return the compressed chunk, along with the trailer of the coding
+         */
+        Buffer finish(Buffer chunk) {
+            try {
+                out.write(chunk.getBytes());
+                out.close();
+            } catch (IOException ex) {
+                throw new IllegalStateException(ex);
+            }
+            return take();
+        }
+
+        private Buffer take() {
+            Buffer compressed = new Buffer(bytes.toByteArray());
+            bytes.reset();
+            return compressed;
+        }
+    }
+}
@@ -5,9 +5,18 @@ import static io.netty.handler.codec.http.HttpResponseStatus.BAD_REQUEST;
 import static io.netty.handler.codec.http.HttpResponseStatus.CREATED;
 import static io.netty.handler.codec.http.HttpResponseStatus.INTERNAL_SERVER_ERROR;
 import static io.netty.handler.codec.http.HttpResponseStatus.NO_CONTENT;
+import static io.netty.handler.codec.http.HttpResponseStatus.NOT_FOUND;
+import static io.netty.handler.codec.http.HttpResponseStatus.NOT_IMPLEMENTED;
+import static io.netty.handler.codec.http.HttpResponseStatus.NOT_MODIFIED;
+import static io.netty.handler.codec.http.HttpResponseStatus.OK;
+import static io.netty.handler.codec.http.HttpResponseStatus.PRECONDITION_FAILED;
+import static io.netty.handler.codec.http.HttpResponseStatus.UNPROCESSABLE_ENTITY;
 import java.io.Serializable;
+import java.lang.reflect.InvocationHandler;
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Locale;
@@ -15,11 +24,15 @@ import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.domain.Sort;
 import org.vertx.java.core.AsyncResult;
+import org.vertx.java.core.AsyncResultHandler;
 import org.vertx.java.core.Handler;
+import org.vertx.java.core.Vertx;
 import org.vertx.java.core.buffer.Buffer;
 import org.vertx.java.core.eventbus.Message;
 import org.vertx.java.core.eventbus.ReplyException;
+import org.vertx.java.core.impl.DefaultFutureResult;
 import org.vertx.java.core.http.HttpServerRequest;
+import org.vertx.java.core.http.HttpServerResponse;
 import org.vertx.java.core.http.RouteMatcher;
 import org.vertx.java.core.json.JsonElement;
 import org.vertx.java.core.json.JsonObject;
@@ -51,6 +64,52 @@ import org.vertx.java.core.json.JsonArray;
  *    <li> <code> {@literal /tasks?page=2&size=15&sort=name.asc.nulls_first} </code> 
  * </ul>
  * For details, see {@link #getPageable getPageable} and {@link #getSort getSort} methods.
+ * A paged response carries the page metadata in the <code>X-Total-Count</code> 
+ * and <code>X-Total-Pages</code> headers.
+ * 
+ * <p>Deep pages are better read in keyset pagination, with an <code>after</code> 
+ * token instead of a page number: <code>/tasks?after=&amp;size=15&amp;sort=name</code>
+ * for the first page, and then the token of the <code>X-Next-After</code> header 
+ * of the previous response, as in <code>/tasks?after=WyJtaWxrIiwyXQ&amp;size=15&amp;sort=name</code>.
+ * See {@link AsyncPagingAndSortingRepository#findAfter findAfter}.
+ * 
+ * <p>A GET request may ask for a sparse fieldset of the entities, as in 
+ * <code>/tasks?fields=id,name</code>, so only these properties are read and 
+ * sent. See {@link #getFields getFields}.
+ * 
+ * <p>In the {@link #streaming streaming} mode, collections are written with 
+ * chunked transfer encoding: the entities are read from the repository in batches 
+ * and written to the response as they arrive, pausing while the client is slow.
+ * 
+ * <p>Collections of entities are created, updated, read and deleted in bulk, 
+ * with one request each:
+ * <ul>
+ *    <li> <code>POST /tasks</code> with an array of entities creates them all
+ *    <li> <code>PUT /tasks</code> with an array of entities updates them all
+ *    <li> <code>GET /tasks?ids=1,2,3</code> reads the entities with these ids
+ *    <li> <code>DELETE /tasks?ids=1,2,3</code> deletes the entities with these ids
+ * </ul>
+ * Each entity succeeds or fails on its own. The response is an array with the 
+ * outcome of each entity, in order, as in
+ * <code>[{"id": 1, "status": 200, "entity": {...}}, {"id": 2, "status": 404}]</code>.
+ * See {@link #getAllByIds getAllByIds}, {@link #doSaveAll doSaveAll} and 
+ * {@link #deleteByIds deleteByIds}. A single entity is only put to its own URL, 
+ * as in <code>PUT /tasks/1</code>, and an array only to the collection.
+ * 
+ * <p>With {@link #compression compression}, a JSON response is sent with the 
+ * gzip or deflate content coding when the client accepts it, including a 
+ * chunked response.
+ * 
+ * <p>With {@link #etags ETags}, a GET is answered with NOT_MODIFIED (304) when 
+ * the <code>If-None-Match</code> header matches, and a PUT or DELETE with 
+ * PRECONDITION_FAILED (412) when the <code>If-Match</code> header does not.
+ * 
+ * <p>A call rejected by the {@link AsyncRepositoryBuilder#admission admission 
+ * control} of the client is answered with SERVICE_UNAVAILABLE (503) and a 
+ * {@link #retryAfter Retry-After} header.
+ * 
+ * <p>With a {@link #metricsRoute metrics route}, the latency percentiles and 
+ * counters of a worker verticle instance are served as JSON for scraping.
  * 
  * @author relai
  * @param <ID> the Id type of the entity
@@ -61,12 +120,30 @@ public class RestHelper<ID extends Serializable> {
     final static String SORT = "sort";
     final static String SIZE = "size";
     final static String PAGE = "page";
+    final static String TOTAL_COUNT = "X-Total-Count";
+    final static String TOTAL_PAGES = "X-Total-Pages";
+    final static String RETRY_AFTER = "Retry-After";
+    final static String AFTER = "after";
+    final static String NEXT_AFTER = "X-Next-After";
+    final static String FIELDS = "fields";
+    final static String IDS = "ids";
+    final static String STATUS = "status";
+    final static String ENTITY = "entity";
+    final static String MESSAGE = "message";
+    final static String ETAG = "etag";
 
     final static int DEFAULT_SIZE = 25;
     final static int DEFAULT_PAGE = 0;
     
 	final AsyncCrudRepository<ID> client;
 	final Class<ID> idType;
+	final AsyncPagingAndSortingRepository<ID> pagingClient;
+	int streamBatchSize;
+	String metricsPath;
+	private int retryAfter = 1;
+	private boolean etags;
+	private String versionProperty;
+	private ResponseCompressor compressor;
    
 
     /**
@@ -78,6 +155,143 @@ public class RestHelper<ID extends Serializable> {
     public  RestHelper(AsyncCrudRepository<ID> client, Class<ID> idType) {
         this.client = client;
         this.idType = idType;        
+        this.pagingClient = toPagingClient(client);
+    }
+    
+    /**
+     * Enables the streaming mode, where collection responses are written in chunks
+     * instead of as one encoded string. The default is off.
+     * 
+     * @param batchSize the number of entities read from the repository at a time,
+     *        or 0 to turn off streaming
+     * @return this
+     */
+    public RestHelper<ID> streaming(int batchSize) {
+        if (batchSize < 0) {
+            throw new IllegalArgumentException("The batch size cannot be negative");
+        }
+        this.streamBatchSize = batchSize;
+        return this;
+    }
+    
+    /**
+     * Adds a route that serves the metrics of the worker verticle: for each 
+     * repository and action, the number of commands, the failure codes, and the 
+     * latency percentiles of the queue, decode, execute and encode phases in 
+     * microseconds. With several worker verticle instances, the metrics are 
+     * those of the instance that answers, as {@link AsyncCrudRepository#metrics}
+     * describes. The default is no route.
+     * 
+     * @param path the path of the route. For example, <code> "/metrics" </code>
+     * @return this
+     */
+    public RestHelper<ID> metricsRoute(String path) {
+        this.metricsPath = path;
+        return this;
+    }
+    
+    /**
+     * Sets the <code>Retry-After</code> header of the SERVICE_UNAVAILABLE (503) 
+     * response to a call rejected by the admission control of the client. See 
+     * {@link AsyncRepositoryBuilder#admission}. The default is 1 second.
+     * 
+     * @param seconds the delay the HTTP client is asked to wait before retrying
+     * @return this
+     */
+    public RestHelper<ID> retryAfter(int seconds) {
+        if (seconds < 0) {
+            throw new IllegalArgumentException("The retry delay cannot be negative");
+        }
+        this.retryAfter = seconds;
+        return this;
+    }
+    
+    /**
+     * Enables the strong ETags of the responses. The ETag of an entity is its 
+     * version, or else the hash of its content, as is the ETag of a collection.
+     * The ETag of a sparse fieldset of an entity also carries the hash of the 
+     * fieldset, since it is another representation of the entity.
+     * 
+     * <p>A GET whose <code>If-None-Match</code> header matches the current ETag is 
+     * answered with NOT_MODIFIED (304) and no body. For one entity with a version, 
+     * only the version is read and sent by the worker verticle to check it.
+     * 
+     * <p>A PUT or DELETE with an <code>If-Match</code> header is checked against 
+     * the current ETag before the entity is written, and is answered with 
+     * PRECONDITION_FAILED (412) if it does not match. The version of the entity 
+     * of a PUT is then set to the checked one, so a write in between still fails 
+     * with CONFLICT (409). The default is off.
+     * 
+     * @param versionProperty the version property of the entity JSON, such as 
+     *        <code>"version"</code>, or null to hash the content of the entities
+     * @return this
+     */
+    public RestHelper<ID> etags(String versionProperty) {
+        this.etags = true;
+        this.versionProperty = versionProperty;
+        return this;
+    }
+    
+    /**
+     * Enables the compression of the JSON responses, with the gzip or deflate 
+     * content coding negotiated by the <code>Accept-Encoding</code> header of 
+     * the request. A chunked response in the {@link #streaming streaming} mode is 
+     * compressed incrementally as its chunks are written. The default is off.
+     * 
+     * @param vertx the vertx instance, to compress the large bodies on its 
+     *        background pool rather than on the event loop, or null to compress 
+     *        all of them on the event loop. The chunks of a chunked response are 
+     *        always compressed on the event loop.
+     * @param minSize the minimum size of a body to compress, in bytes. A smaller 
+     *        body is sent as is.
+     * @param workerSize the minimum size of a body to compress on the background 
+     *        pool, in bytes
+     * @return this
+     */
+    public RestHelper<ID> compression(Vertx vertx, int minSize, int workerSize) {
+        if (minSize < 0 || workerSize < 0) {
+            throw new IllegalArgumentException("The sizes cannot be negative");
+        }
+        this.compressor = new ResponseCompressor(vertx, minSize, workerSize);
+        return this;
+    }
+    
+    /**
+     * Finds the native paging and sorting support of the client, which is 
+     * either the client itself or the implementation behind a repository proxy.
+     * 
+     * @return the paging client, or null if the client has none
+     */
+    @SuppressWarnings("unchecked")
+    private static <ID extends Serializable> AsyncPagingAndSortingRepository<ID> toPagingClient(
+        AsyncCrudRepository<ID> client) {
+        if (client instanceof AsyncPagingAndSortingRepository) {
+            return (AsyncPagingAndSortingRepository<ID>) client;
+        }
+        if (Proxy.isProxyClass(client.getClass())) {
+            InvocationHandler handler = Proxy.getInvocationHandler(client);
+            if (handler instanceof AsyncRepositoryProxyHandler) {
+                return (AsyncPagingAndSortingRepository<ID>) ((AsyncRepositoryProxyHandler) handler).impl;
+            }
+        }
+        return null;
+    }
+    
+    /**
+     * Gets the client of the reads of a request: the view of its sparse fieldset,
+     * if any, or else the client itself.
+     * 
+     * @param request HTTP request
+     * @return the client
+     */
+    private AsyncCrudRepository<ID> reader(HttpServerRequest request) {
+        String[] fields = getFields(request);
+        return (fields == null) ? client : client.fields(fields);
+    }
+    
+    private AsyncPagingAndSortingRepository<ID> pagingReader(HttpServerRequest request) {
+        String[] fields = getFields(request);
+        return (fields == null || pagingClient == null) ? pagingClient : pagingClient.fields(fields);
     }
     
     /**
@@ -89,8 +303,13 @@ public class RestHelper<ID extends Serializable> {
 	public Handler<HttpServerRequest> createRouteMatcher(String pattern) {
 	    String idPattern = pattern + "/:" + ID_STR;		
 		RouteMatcher matcher = new RouteMatcher();
+		if (metricsPath != null) {
+		    matcher.get(metricsPath, this::getMetrics);
+		}
 		matcher.get(pattern, 	  this::getAll)
 			   .post(pattern, 	  this::post)
+			   .put(pattern,      this::putAll)
+			   .delete(pattern,   this::deleteByIds)
 			   .get(idPattern,    this::getOne)
 			   .put(idPattern,    this::put)
 			   .delete(idPattern, this::delete);
@@ -108,12 +327,18 @@ public class RestHelper<ID extends Serializable> {
             Sort sort = getSort(request);
             Pageable pageable = getPageable(request, sort);
 
-            if (pageable != null) {
+            if (request.params().contains(IDS)) {
+                getAllByIds(request);
+            } else if (request.params().contains(AFTER) && pagingClient != null) {
+                getAllAfter(request, sort);
+            } else if (pageable != null) {
                 getAllWithPageable(request, pageable);
             } else if (sort != null) {
                 getAllWithSort(request, sort);
+            } else if (streamBatchSize > 0) {
+               getAllAsStream(request, null);
             } else {   
-               client.findAll(result -> onDatabaseResult(result, request));
+               reader(request).findAll(toResponse(request));
             }
         } catch (RuntimeException ex) {
             handleException(request, ex); 
@@ -121,13 +346,10 @@ public class RestHelper<ID extends Serializable> {
 	}
     
     protected void getAllWithPageable(HttpServerRequest request, Pageable pageable){
-         MessageHandler<JsonArray> onreply = result -> 
-             onDatabaseResult(result, request);
-         
-        if (client instanceof AsyncPagingAndSortingRepository) {
-            ((AsyncPagingAndSortingRepository)client).findAll(pageable, 
-                onreply );
+        if (pagingClient != null) {
+            pagingReader(request).findPage(pageable, result -> onPageResult(result, request));
         } else {
+            MessageHandler<JsonArray> onreply = toResponse(request);
             Method m = ReflectionUtils.findMethod(client.getClass(), 
                 "findAll", Pageable.class, MessageHandler.class);
             m.setAccessible(true);
@@ -135,13 +357,77 @@ public class RestHelper<ID extends Serializable> {
         }
     }
 
+    /**
+     * Gets the entities of the ids in the <code>ids</code> query parameter, as 
+     * in <code>ids=1,2,3</code>, in one call to the repository. Each element of the 
+     * response is the outcome of an id, in order: 
+     * <code>{"id": 1, "status": 200, "entity": {...}}</code>, or 
+     * <code>{"id": 2, "status": 404}</code> if the entity is not found.
+     * 
+     * @param request HTTP request
+     */
+    protected void getAllByIds(HttpServerRequest request) {
+        List<ID> ids = ids(request);
+        AsyncPagingAndSortingRepository<ID> reader = pagingReader(request);
+        if (reader instanceof AsyncCrudRepositoryImpl == false) {
+            request.response().setStatusCode(NOT_IMPLEMENTED.code())
+                   .end("The repository client does not support the retrieval by ids");
+            return;
+        }
+        ((AsyncCrudRepositoryImpl<ID>) reader).findAllAligned(ids, result -> {
+            if (result.failed()) {
+                handleException(request, result.cause());
+                return;
+            }
+            JsonArray entities = result.result().body();
+            JsonArray outcomes = new JsonArray();
+            for (int index = 0; index < ids.size(); index++) {
+                JsonObject entity = entities.get(index);
+                JsonObject outcome = new JsonObject().putValue(ID_STR, ids.get(index));
+                if (entity == null) {
+                    outcome.putNumber(STATUS, NOT_FOUND.code());
+                } else {
+                    outcome.putNumber(STATUS, OK.code()).putObject(ENTITY, entity);
+                }
+                outcomes.addObject(outcome);
+            }
+            onDatabaseResult(new DefaultFutureResult<>(new DerivedMessage<>(result.result(), outcomes)), request);
+        });
+    }
+
+    /**
+     * Gets a slice of the keyset pagination. The token of the next slice is 
+     * written to the <code>X-Next-After</code> header, unless this is the last slice.
+     * 
+     * @param request HTTP request
+     * @param sort the sort hint, or null for the id order
+     */
+    protected void getAllAfter(HttpServerRequest request, Sort sort) {
+        String after = request.params().get(AFTER);
+        String sizeStr = request.params().get(SIZE);
+        int size = (sizeStr != null) ? Integer.valueOf(sizeStr) : DEFAULT_SIZE;
+        pagingReader(request).findAfter(after.isEmpty() ? null : after, size, sort, result -> {
+            if (result.succeeded()) {
+                Message<JsonObject> message = result.result();
+                String next = message.body().getString(KeysetHelper.NEXT);
+                if (next != null) {
+                    request.response().putHeader(NEXT_AFTER, next);
+                }
+                JsonArray content = message.body().getArray(PagingHelper.CONTENT);
+                onDatabaseResult(new DefaultFutureResult<>(new DerivedMessage<>(message, content)), request);
+            } else {
+                handleException(request, result.cause());
+            }
+        });
+    }
+
     protected void getAllWithSort(HttpServerRequest request, Sort sort){
-        MessageHandler<JsonArray> onreply = result -> 
-             onDatabaseResult(result, request);
+        MessageHandler<JsonArray> onreply = toResponse(request);
          
-        if (client instanceof AsyncPagingAndSortingRepository) {
-            ((AsyncPagingAndSortingRepository)client).findAll(sort, 
-                onreply );
+        if (pagingClient != null && streamBatchSize > 0) {
+            getAllAsStream(request, sort);
+        } else if (pagingClient != null) {
+            pagingReader(request).findAll(sort, onreply);
         } else {
             Method m = ReflectionUtils.findMethod(client.getClass(), 
                 "findAll", Sort.class, MessageHandler.class);
@@ -150,6 +436,40 @@ public class RestHelper<ID extends Serializable> {
         }
     }
       
+    /**
+     * Streams all entities to the response with chunked transfer encoding.
+     * 
+     * @param request HTTP request
+     * @param sort the sort hint, or null
+     */
+    protected void getAllAsStream(HttpServerRequest request, Sort sort) {
+        HttpServerResponse response = request.response();
+        ChunkedArrayWriter writer = new ChunkedArrayWriter(response, chunksOf(request));
+        AsyncResultHandler<Void> endHandler = end -> {
+            if (end.succeeded()) {
+                writer.end();
+            } else if (writer.isStarted()) {
+                // Too late to report the failure: the client sees a truncated response
+                response.close();
+            } else {
+                handleException(request, end.cause());
+            }
+        };
+        BatchStream stream = sort == null ?
+            reader(request).findAllStream(streamBatchSize, writer::writeBatch, endHandler) :
+            pagingReader(request).findAllStream(sort, streamBatchSize, writer::writeBatch, endHandler);
+        writer.setStream(stream);
+    }
+      
+    /**
+     * Gets the metrics of the worker verticle.
+     * 
+     * @param request HTTP request
+     */
+    public void getMetrics(HttpServerRequest request) {
+        client.metrics(toResponse(request));
+    }
+      
     /**
      * Creates an entity. 
      * 
@@ -164,8 +484,42 @@ public class RestHelper<ID extends Serializable> {
      * @param request HTTP request
      */
 	public void getOne(HttpServerRequest request) {
-		client.findOne(id(request), result -> onDatabaseResult(result, request));
+        String ifNoneMatch = etags ? request.headers().get(ETagHelper.IF_NONE_MATCH) : null;
+        if (ifNoneMatch != null && versionProperty != null) {
+            getOneIfNoneMatch(request, ifNoneMatch);
+        } else {
+		    reader(request).findOne(id(request), toResponse(request));
+        }
 	}
+    
+    /**
+     * Gets one entity by Id, unless its version matches the <code>If-None-Match</code>
+     * header. The version is read first, without the rest of the entity.
+     * 
+     * @param request HTTP request
+     * @param ifNoneMatch the <code>If-None-Match</code> header
+     */
+    private void getOneIfNoneMatch(HttpServerRequest request, String ifNoneMatch) {
+        ID id = id(request);
+        MessageHandler<JsonObject> onversion = result -> {
+            Object version = result.succeeded() ? 
+                result.result().body().getValue(versionProperty) : null;
+            String etag = version == null ? null : ETagHelper.ofVersion(version, getFields(request));
+            // The size of the body, and so whether it is compressed, is not known yet:
+            // either representation the client holds is current
+            String encoding = compressor == null ? null : compressor.acceptedEncoding(request);
+            String encoded = etag == null || encoding == null ? null : ETagHelper.withEncoding(etag, encoding);
+            if (ETagHelper.matches(ifNoneMatch, etag, true)) {
+                notModified(request, etag);
+            } else if (ETagHelper.matches(ifNoneMatch, encoded, true)) {
+                notModified(request, encoded);
+            } else {
+                // The entity has changed, has no version, or is not found
+                reader(request).findOne(id, toResponse(request));
+            }
+        };
+        client.fields(versionProperty).findOne(id, onversion);
+    }
 
     /**
      * Updates an existing entity.
@@ -176,6 +530,15 @@ public class RestHelper<ID extends Serializable> {
 		save(request, false);
 	}
 
+    /**
+     * Updates existing entities in bulk. The body must be an array of entities.
+     * 
+     * @param request HTTP request
+     */
+	public void putAll(HttpServerRequest request) {
+		saveAll(request);
+	}
+
     /**
      * Deletes an entity by Id.
      * 
@@ -183,30 +546,190 @@ public class RestHelper<ID extends Serializable> {
      */
 	public void delete(HttpServerRequest request) {
         try {
-            client.delete(id(request), result -> onDatabaseResult(result, request)); 
+            ID id = id(request);
+            checkIfMatch(request, version -> 
+                client.delete(id, result -> onDatabaseResult(result, request))); 
         } catch (RuntimeException ex) {
             handleException(request, ex);
         }
 	}
+    
+    /**
+     * Deletes the entities of the ids in the <code>ids</code> query parameter, 
+     * as in <code>ids=1,2,3</code>, in one batch of the repository. Each id is 
+     * deleted on its own, so one that is not found does not keep the others 
+     * from being deleted. Each element of the response is the outcome of an id, 
+     * in order: <code>{"id": 1, "status": 204}</code>, or 
+     * <code>{"id": 2, "status": 404, "message": "..."}</code> if it failed.
+     * 
+     * @param request HTTP request
+     */
+	public void deleteByIds(HttpServerRequest request) {
+        try {
+            List<ID> ids = ids(request);
+            AsyncBatch<ID> batch = client.batch();
+            ids.forEach(batch::delete);
+            batch.execute(result -> {
+                if (result.failed()) {
+                    handleException(request, result.cause());
+                    return;
+                }
+                JsonArray replies = result.result().body();
+                JsonArray outcomes = new JsonArray();
+                for (int index = 0; index < ids.size(); index++) {
+                    JsonObject reply = replies.get(index);
+                    JsonObject outcome = new JsonObject().putValue(ID_STR, ids.get(index));
+                    Integer failureCode = reply.getInteger(RepositoryVerticle.FAILURE_CODE);
+                    if (failureCode == null) {
+                        outcome.putNumber(STATUS, NO_CONTENT.code());
+                    } else {
+                        outcome.putNumber(STATUS, failureCode)
+                               .putString(MESSAGE, reply.getString(RepositoryVerticle.MESSAGE));
+                    }
+                    outcomes.addObject(outcome);
+                }
+                onDatabaseResult(new DefaultFutureResult<>(new DerivedMessage<>(result.result(), outcomes)), request);
+            });
+        } catch (RuntimeException ex) {
+            handleException(request, ex);
+        }
+	}
+    
+    /**
+     * Checks the <code>If-Match</code> header of a request against the current 
+     * ETag of the entity, if there is such a header and ETags are enabled. 
+     * 
+     * @param request HTTP request
+     * @param onmatch the handler called with the current version of the entity, 
+     *        or null if it has none or was not checked. It is not called, and the 
+     *        response is written, if the header does not match.
+     */
+    private void checkIfMatch(HttpServerRequest request, Handler<Object> onmatch) {
+        String ifMatch = etags ? request.headers().get(ETagHelper.IF_MATCH) : null;
+        if (ifMatch == null) {
+            onmatch.handle(null);
+            return;
+        }
+        ID id = id(request);
+        if (versionProperty == null) {
+            checkIfMatchContent(request, id, ifMatch, onmatch);
+            return;
+        }
+        MessageHandler<JsonObject> onversion = result -> {
+            if (result.failed()) {
+                handleException(request, result.cause());
+                return;
+            }
+            Object version = result.result().body().getValue(versionProperty);
+            if (version == null) {
+                checkIfMatchContent(request, id, ifMatch, onmatch);
+            } else if (ETagHelper.matches(ifMatch, ETagHelper.ofVersion(version, null), false)) {
+                onmatch.handle(version);
+            } else {
+                preconditionFailed(request);
+            }
+        };
+        client.fields(versionProperty).findOne(id, onversion);
+    }
+    
+    private void checkIfMatchContent(HttpServerRequest request, ID id, String ifMatch, 
+        Handler<Object> onmatch) {
+        EncodedMessageHandler<JsonObject> onentity = result -> {
+            if (result.failed()) {
+                handleException(request, result.cause());
+                return;
+            }
+            // The entity may be encoded, as it is for the GET
+            Message<?> message = result.result();
+            Object data = message.body();
+            if (ETagHelper.matches(ifMatch, etagOf(data, payloadOf(data), null), false)) {
+                onmatch.handle(null);
+            } else {
+                preconditionFailed(request);
+            }
+        };
+        client.findOne(id, onentity);
+    }
 
     /**
-     *  Saves the entity. 
+     *  Saves the entity, or the entities of a bulk creation. 
      * 
      * @param request HTTP request
      * @param isNew  whether this entity is new (creation).
      */
     protected void save(HttpServerRequest request, boolean isNew) {        
         request.bodyHandler((Buffer body) -> {
+            Object data;
+            try {               
+                data = parse(body);
+            } catch (RuntimeException ex) {
+                Exception error = new IllegalArgumentException("The request body is not JSON", ex);
+                handleException(request, error);
+                return;
+            }
+            // A new entity is posted to the collection, and an update put to the entity
+            saveBody(data, request, isNew, isNew);
+        });
+	}
+
+    /**
+     * Saves the entities of a bulk update.
+     * 
+     * @param request HTTP request
+     */
+    protected void saveAll(HttpServerRequest request) {        
+        request.bodyHandler((Buffer body) -> {
+            Object data;
             try {               
-                String data = body.toString();
-                JsonObject entity = new JsonObject(data);    
-                doSave(entity, request, isNew);
+                data = parse(body);
             } catch (RuntimeException ex) {
                 Exception error = new IllegalArgumentException("The request body is not JSON", ex);
                 handleException(request, error);
+                return;
             }
+            saveBody(data, request, false, true);
         });
 	}
+    
+    /**
+     * Parses a request body, which is either an entity or an array of entities.
+     * 
+     * @param body the request body
+     * @return the JSON object or array
+     */
+    static JsonElement parse(Buffer body) {
+        String data = body.toString().trim();
+        return data.startsWith("[") ? new JsonArray(data) : new JsonObject(data);
+    }
+
+    /**
+     * Saves the body of a request. An array of entities is only accepted on the 
+     * collection, and a single entity only by a creation or on the URL of the entity.
+     * 
+     * @param body the JSON body
+     * @param request HTTP request
+     * @param isNew whether the entities are new
+     * @param onCollection whether the request is sent to the collection
+     */
+    void saveBody(Object body, HttpServerRequest request, boolean isNew, boolean onCollection) {
+        try {
+            if (body instanceof JsonArray && onCollection) {
+                doSaveAll((JsonArray) body, request, isNew);
+            } else if (body instanceof JsonObject && (isNew || onCollection == false)) {
+                doSave((JsonObject) body, request, isNew);
+            } else if (body instanceof JsonArray) {
+                throw new IllegalArgumentException("An array of entities is only put to the collection");
+            } else if (body instanceof JsonObject) {
+                throw new IllegalArgumentException("An array of entities is expected");
+            } else {
+                request.response()
+                   .setStatusCode(UNPROCESSABLE_ENTITY.code())
+                   .end();
+            }
+        } catch (RuntimeException ex) {
+            handleException(request, ex);
+        }
+    }
 
     /**
      * Saves the entity. This can be either a creation or update operation.
@@ -216,14 +739,107 @@ public class RestHelper<ID extends Serializable> {
      * @param isNew whether this is a new entity for creation or an existing entity for update
      */
 	protected void doSave(JsonObject entity, HttpServerRequest request, boolean isNew) {
-		client.save(entity, (result) -> {
+		EncodedMessageHandler<JsonObject> onreply = (result) -> {
 			if (isNew && result.succeeded()) {
 				request.response().setStatusCode(CREATED.code());
 			}
 			onDatabaseResult(result, request);
+		};
+		if (isNew) {
+		    client.save(entity, onreply);
+		    return;
+		}
+		checkIfMatch(request, version -> {
+		    if (version != null) {
+		        // The save fails as a conflict if the entity changes after the check
+		        entity.putValue(versionProperty, version);
+		    }
+		    client.save(entity, onreply);
 		});
 	}
 
+    /**
+     * Saves the entities in one batch of the repository. Each entity is saved on
+     * its own, so one that fails does not keep the others from being saved. Each 
+     * element of the response is the outcome of an entity, in order: 
+     * <code>{"id": 1, "status": 201, "entity": {...}}</code> for a creation, 
+     * <code>{"id": 1, "status": 200, "entity": {...}}</code> for an update, or 
+     * <code>{"id": 2, "status": 409, "message": "..."}</code> if it failed. With 
+     * {@link #etags ETags}, the outcome of a saved entity carries its ETag.
+     * 
+     * <p>An entity to update must have an id, or else it fails with BAD_REQUEST 
+     * (400) and is not saved. The version of each entity is checked by the save, 
+     * so the <code>If-Match</code> header, which cannot tell the entities apart, 
+     * is rejected.
+     * 
+     * @param entities the entities
+     * @param request HTTP request
+     * @param isNew whether these are new entities for creation or existing entities for update
+     */
+	protected void doSaveAll(JsonArray entities, HttpServerRequest request, boolean isNew) {
+        if (isNew == false && etags && request.headers().contains(ETagHelper.IF_MATCH)) {
+            throw new IllegalArgumentException(
+                "The If-Match header does not apply to a bulk update, whose entities are checked by version");
+        }
+        int status = isNew ? CREATED.code() : OK.code();
+        JsonArray outcomes = new JsonArray();
+        List<JsonObject> pending = new ArrayList<>();
+        AsyncBatch<ID> batch = client.batch();
+        for (Object element : entities) {
+            JsonObject outcome = new JsonObject();
+            outcomes.addObject(outcome);
+            if (element instanceof JsonObject == false) {
+                outcome.putNumber(STATUS, BAD_REQUEST.code())
+                       .putString(MESSAGE, "The element is not an entity");
+                continue;
+            }
+            JsonObject entity = (JsonObject) element;
+            Object id = entity.getValue(ID_STR);
+            if (id != null) {
+                outcome.putValue(ID_STR, id);
+            } else if (isNew == false) {
+                outcome.putNumber(STATUS, BAD_REQUEST.code())
+                       .putString(MESSAGE, "The id of the entity is required");
+                continue;
+            }
+            batch.save(entity);
+            pending.add(outcome);
+        }
+        if (pending.isEmpty()) {
+            writeOutcomes(request, outcomes);
+            return;
+        }
+		batch.execute(result -> {
+            if (result.failed()) {
+                handleException(request, result.cause());
+                return;
+            }
+            JsonArray replies = result.result().body();
+            for (int index = 0; index < pending.size(); index++) {
+                JsonObject reply = replies.get(index);
+                JsonObject outcome = pending.get(index);
+                Integer failureCode = reply.getInteger(RepositoryVerticle.FAILURE_CODE);
+                if (failureCode != null) {
+                    outcome.putNumber(STATUS, failureCode)
+                           .putString(MESSAGE, reply.getString(RepositoryVerticle.MESSAGE));
+                    continue;
+                }
+                JsonObject saved = reply.getObject(RepositoryVerticle.RESULT);
+                outcome.putValue(ID_STR, saved.getValue(ID_STR))
+                       .putNumber(STATUS, status)
+                       .putObject(ENTITY, saved);
+                if (etags) {
+                    outcome.putString(ETAG, etagOf(saved, payloadOf(saved), null));
+                }
+            }
+            writeOutcomes(request, outcomes);
+		});
+	}
+    
+    private void writeOutcomes(HttpServerRequest request, JsonArray outcomes) {
+        onDatabaseResult(new DefaultFutureResult<>(new DerivedMessage<>(null, outcomes)), request);
+    }
+
     /**
      * Processes the asynchronous database result.
      * 
@@ -238,6 +854,12 @@ public class RestHelper<ID extends Serializable> {
 				request.response()
 				  .setStatusCode(NO_CONTENT.code())
 				  .end();
+			} else if (data instanceof JsonArray && streamBatchSize > 0) {
+				new ChunkedArrayWriter(request.response(), chunksOf(request)).writeAll((JsonArray) data);
+			} else if ((etags || compressor != null) && 
+			    (data instanceof JsonElement || data instanceof byte[])) {
+			    byte[] payload = payloadOf(data);
+			    writeTagged(request, etags ? etagOf(data, payload, getFields(request)) : null, payload);
 			} else if (data instanceof JsonElement){
                 JsonElement el = (JsonElement) data;
 				String payload = el.isArray() ? 
@@ -245,6 +867,11 @@ public class RestHelper<ID extends Serializable> {
 	    		request.response()
 	    		   .putHeader("content-type", "application/json")
 	    	       .end(payload);
+	    	} else if (data instanceof byte[]) {
+	    		// Entities encoded by the worker verticle are written as is 
+	    		request.response()
+	    		   .putHeader("content-type", "application/json")
+	    	       .end(new Buffer((byte[]) data));
 	    	} else {
 	    		request.response()
 	    		   .setStatusCode(INTERNAL_SERVER_ERROR.code())
@@ -255,20 +882,141 @@ public class RestHelper<ID extends Serializable> {
 		}
 	}
 
+    /**
+     * Writes a response body along with its ETag, or NOT_MODIFIED (304) if the 
+     * <code>If-None-Match</code> header of a GET matches the ETag. The body is 
+     * compressed if compression is enabled.
+     * 
+     * @param request HTTP request
+     * @param etag the ETag of the body, or null
+     * @param payload the UTF-8 encoded body
+     */
+    private void writeTagged(HttpServerRequest request, String etag, byte[] payload) {
+        // The ETag of the representation sent, in the content coding of the body
+        String encoding = compressor == null ? null : compressor.encodingOf(request, payload.length);
+        String sent = etag == null || encoding == null ? etag : ETagHelper.withEncoding(etag, encoding);
+        if (sent != null && "GET".equals(request.method()) && 
+            ETagHelper.matches(request.headers().get(ETagHelper.IF_NONE_MATCH), sent, true)) {
+            notModified(request, sent);
+        } else if (compressor != null) {
+            compressor.end(request, etag, payload);
+        } else {
+            request.response()
+               .putHeader(ETagHelper.ETAG, etag)
+               .putHeader("content-type", "application/json")
+               .end(new Buffer(payload));
+        }
+    }
+    
+    private ResponseCompressor.Chunks chunksOf(HttpServerRequest request) {
+        return compressor == null ? null : compressor.chunks(request);
+    }
+    
+    private void notModified(HttpServerRequest request, String etag) {
+        if (compressor != null) {
+            request.response().putHeader(ResponseCompressor.VARY, ResponseCompressor.ACCEPT_ENCODING);
+        }
+        request.response()
+           .setStatusCode(NOT_MODIFIED.code())
+           .putHeader(ETagHelper.ETAG, etag)
+           .end();
+    }
+    
+    private void preconditionFailed(HttpServerRequest request) {
+        request.response()
+           .setStatusCode(PRECONDITION_FAILED.code())
+           .end("The entity does not match the If-Match header");
+    }
+    
+    private byte[] payloadOf(Object data) {
+        if (data instanceof byte[]) {
+            return (byte[]) data;
+        }
+        JsonElement el = (JsonElement) data;
+        String payload = el.isArray() ? el.asArray().encode() : el.asObject().encode();
+        return payload.getBytes(StandardCharsets.UTF_8);
+    }
+    
+    private String etagOf(Object data, byte[] payload, String[] fields) {
+        return data instanceof byte[] ? ETagHelper.of(payload, versionProperty, fields) :
+            ETagHelper.of((JsonElement) data, payload, versionProperty, fields);
+    }
+
+    /**
+     * Processes the asynchronous page result. The page metadata is written to the 
+     * response headers, and the content to the body.
+     * 
+     * @param result  the asynchronous event handler
+     * @param request  HTTP request
+     */
+	protected void onPageResult(AsyncResult<Message<JsonObject>> result, 
+			HttpServerRequest request) {
+		if (result.succeeded()) {
+			Message<JsonObject> message = result.result();
+			JsonObject page = message.body();
+			request.response()
+			   .putHeader(TOTAL_COUNT, String.valueOf(page.getLong(PagingHelper.TOTAL_ELEMENTS)))
+			   .putHeader(TOTAL_PAGES, String.valueOf(page.getLong(PagingHelper.TOTAL_PAGES)));
+			JsonArray content = page.getArray(PagingHelper.CONTENT);
+			onDatabaseResult(new DefaultFutureResult<>(new DerivedMessage<>(message, content)), request);
+		} else {
+            handleException(request, result.cause());
+		}
+	}
+
+    /**
+     * Creates a reply handler that writes the database result to the HTTP response.
+     * 
+     * @param <M> the message body type
+     * @param request HTTP request
+     * @return the reply handler
+     */
+    protected <M> MessageHandler<M> toResponse(HttpServerRequest request) {
+        EncodedMessageHandler<M> onreply = result -> onDatabaseResult(result, request);
+        return onreply;
+    }
+
+    /**
+     * Retrieves the IDs from the comma separated <code>ids</code> query parameter.
+     * 
+     * @param request HTTP request
+     * @return the IDs
+     */
+	protected List<ID> ids(HttpServerRequest request) {
+		String s = request.params().get(IDS);
+		if (s == null || s.trim().isEmpty()) {
+			throw new IllegalArgumentException("The ids are required");
+		}
+		List<ID> ids = new ArrayList<>();
+		for (String id : s.split(",")) {
+			ids.add(toId(id.trim()));
+		}
+		return ids;
+	}
+
     /**
      * Retrieves the ID from the HTTP request parameter.
      * 
      * @param request HTTP request
      * @return this
      */
-	@SuppressWarnings("unchecked")
 	protected ID id(HttpServerRequest request) {
 		String s = request.params().get(ID_STR);
 		
 		if (s == null || s.isEmpty()) {
     		throw new IllegalArgumentException();
     	}
-    	
+    	return toId(s);
+	}
+
+    /**
+     * Converts an ID from its string form.
+     * 
+     * @param s the string form of the ID
+     * @return the ID
+     */
+	@SuppressWarnings("unchecked")
+	protected ID toId(String s) {
     	ID result = null;
     	if (idType.isAssignableFrom(String.class)){
     		result = (ID) s;
@@ -276,7 +1024,7 @@ public class RestHelper<ID extends Serializable> {
     		result =  (ID) Long.valueOf(s);
     	} else {
     		try {
-				Method m = idType.getMethod("valueOf", new Class[]{String.class});
+				Method m = idType.getMethod("valueOf", String.class);
 				result = (ID) m.invoke(null, s);				
 			} catch (NoSuchMethodException | SecurityException | IllegalAccessException 
 					| IllegalArgumentException	| InvocationTargetException e) {
@@ -298,6 +1046,9 @@ public class RestHelper<ID extends Serializable> {
         if (errorCode < 0 || errorCode > 600) {
             errorCode = INTERNAL_SERVER_ERROR.code();    
         }
+        if (ex instanceof RejectedRequest) {
+            request.response().putHeader(RETRY_AFTER, String.valueOf(retryAfter));
+        }
         
         String explanation = ex.getMessage();
         if (explanation == null) {
@@ -337,7 +1088,7 @@ public class RestHelper<ID extends Serializable> {
         }     
         
         String[] properties = sortStr.split(",");
-        List<Order> orders = new ArrayList(properties.length);
+        List<Order> orders = new ArrayList<>(properties.length);
         for (String prop : properties) {                                
             String[] details = prop.split("\\.");                
             String propName = details[0];                
@@ -352,6 +1103,34 @@ public class RestHelper<ID extends Serializable> {
         return new Sort(orders);
     }
     
+    /**
+     * Retrieves the sparse fieldset of the query, as a comma separated list of 
+     * property names in the query parameter:
+     * <pre>
+     *  fields=property[,property]
+     * </pre>
+     * 
+     * <p>For example, <code>fields=id,name</code>. An unknown property is ignored.
+     * 
+     * <p> Override this method to define your customized fieldset format.
+     * 
+     * @param request HTTP request
+     * @return  the property names, or null for all properties
+     */
+    protected String[] getFields(HttpServerRequest request) {
+        String fieldsStr = request.params().get(FIELDS);
+        if (fieldsStr == null) {
+            return null;
+        }
+        List<String> fields = new ArrayList<>();
+        for (String field : fieldsStr.split(",")) {
+            if (field.trim().isEmpty() == false) {
+                fields.add(field.trim());
+            }
+        }
+        return fields.isEmpty() ? null : fields.toArray(new String[fields.size()]);
+    }
+    
     /**
      * Retrieves the paging specification from the request. The paging hint is
      * expected as optional query parameters as <pre>
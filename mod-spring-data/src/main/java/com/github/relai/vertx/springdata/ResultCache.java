@@ -0,0 +1,129 @@
+package com.github.relai.vertx.springdata;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.vertx.java.core.json.JsonObject;
+
+/**
+ * Internal class of the query result cache of a repository in the {@link RepositoryVerticle}.
+ *
+ * <p>The cache maps a normalized read command to its encoded reply, so that an
+ * identical command is answered without running the query again. It is a bounded
+ * LRU map, where each reply expires after the time to live. The cache is cleared
+ * whenever an entity of the domain type is written.
+ *
+ * @author relai
+ */
+class ResultCache {
+    final static String MAX_ENTRIES = "maxEntries";
+    final static String TTL = "ttl";
+    // The configuration that applies to every repository not configured by name
+    final static String ANY = "*";
+    // The fields of a read command that change its reply
+    private final static String[] KEY_FIELDS = {
+        RepositoryVerticle.ACTION, RepositoryVerticle.ID, RepositoryVerticle.ALIGNED,
+        RepositoryVerticle.PAGEABLE, RepositoryVerticle.SORT, KeysetHelper.AFTER,
+        RepositoryVerticle.ARGS, RepositoryVerticle.CODEC, RepositoryVerticle.FIELDS,
+        RepositoryVerticle.FORMAT
+    };
+
+    private final long ttl;
+    private final Map<String, CachedReply> entries;
+    // Counts the invalidations, to discard the replies that raced with one
+    private long generation;
+
+    ResultCache(int maxEntries, long ttl) {
+        this.ttl = ttl;
+        this.entries = new LinkedHashMap<String, CachedReply>(16, 0.75f, true) {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, CachedReply> eldest) {
+                return size() > maxEntries;
+            }
+        };
+    }
+
+    /**
+     * Creates a cache from its configuration.
+     *
+     * @param config the configuration, with the maximum number of entries and
+     *        the time to live in milliseconds
+     * @return the cache
+     */
+    static ResultCache of(JsonObject config) {
+        int maxEntries = config.getInteger(MAX_ENTRIES, 1000);
+        long ttl = config.getLong(TTL, 60000);
+        if (maxEntries <= 0 || ttl <= 0) {
+            throw new IllegalArgumentException("The result cache size and time to live must be positive");
+        }
+        return new ResultCache(maxEntries, ttl);
+    }
+
+    /**
+     * Builds the key of a command: the repository, and the fields of the command
+     * that change the reply, in name order. The others, such as the timeout and
+     * the time the command was sent, would make every key unique.
+     *
+     * @param command the command
+     * @param entry the repository entry
+     * @return the key
+     */
+    static String key(JsonObject command, RepositoryRegistry.Entry entry) {
+        Map<String, Object> values = command.toMap();
+        Map<String, Object> fields = new TreeMap<>();
+        for (String name : KEY_FIELDS) {
+            Object value = values.get(name);
+            if (value != null) {
+                fields.put(name, value);
+            }
+        }
+        return entry.getRepositoryType().getCanonicalName() + new JsonObject(fields).encode();
+    }
+
+    synchronized Object get(String key) {
+        CachedReply entry = entries.get(key);
+        if (entry == null) {
+            return null;
+        }
+        if (System.currentTimeMillis() >= entry.expires) {
+            entries.remove(key);
+            return null;
+        }
+        return entry.reply;
+    }
+
+    synchronized long generation() {
+        return generation;
+    }
+
+    /**
+     * Caches a reply, unless the cache was cleared since the query started.
+     *
+     * @param key the command key
+     * @param reply the encoded reply
+     * @param start the generation when the query started
+     */
+    synchronized void put(String key, Object reply, long start) {
+        if (generation == start) {
+            entries.put(key, new CachedReply(reply, System.currentTimeMillis() + ttl));
+        }
+    }
+
+    synchronized void clear() {
+        generation++;
+        entries.clear();
+    }
+
+    private static class CachedReply {
+        final Object reply;
+        final long expires;
+
+        CachedReply(Object reply, long expires) {
+            this.reply = reply;
+            this.expires = expires;
+        }
+    }
+}
@@ -0,0 +1,81 @@
+package com.github.relai.vertx.springdata;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.springframework.boot.SpringApplication;
+import org.springframework.context.ConfigurableApplicationContext;
+
+/**
+ * Internal class of the Spring application contexts shared by the worker verticle
+ * instances, one per configuration class.
+ *
+ * <p>The first instance to acquire the context of a configuration class starts it,
+ * and the others reuse it, so the data sources, connection pools and entity
+ * manager factories are created once instead of once per instance. The context is
+ * reference counted, and closed when the last instance releases it.
+ *
+ * <p>The contexts are shared by the verticles loaded by the same class loader,
+ * which includes the instances of a deployment.
+ *
+ * @author relai
+ */
+class SharedContext {
+    private final static Map<String, SharedContext> contexts = new HashMap<>();
+
+    private final String name;
+    private final ConfigurableApplicationContext context;
+    private int references;
+
+    private SharedContext(String name, ConfigurableApplicationContext context) {
+        this.name = name;
+        this.context = context;
+    }
+
+    /**
+     * Starts a Spring application context, with the Jackson auto configuration of
+     * the mod.
+     *
+     * @param configClass the Spring configuration class
+     * @return the context
+     */
+    static ConfigurableApplicationContext start(Class<?> configClass) {
+        return new SpringApplication(configClass, JacksonAutoWire.class).run();
+    }
+
+    /**
+     * Acquires the shared context of a configuration class, starting it if it is
+     * not started yet. The other instances wait for the start, rather than
+     * starting their own.
+     *
+     * @param configClass the Spring configuration class
+     * @return the context
+     */
+    static synchronized ConfigurableApplicationContext acquire(Class<?> configClass) {
+        String name = configClass.getName();
+        SharedContext shared = contexts.get(name);
+        if (shared == null) {
+            shared = new SharedContext(name, start(configClass));
+            contexts.put(name, shared);
+        }
+        shared.references++;
+        return shared.context;
+    }
+
+    /**
+     * Releases a shared context, and closes it if it is no longer used.
+     *
+     * @param context the context returned by {@link #acquire}
+     */
+    static synchronized void release(ConfigurableApplicationContext context) {
+        for (SharedContext shared : contexts.values()) {
+            if (shared.context == context) {
+                if (--shared.references == 0) {
+                    contexts.remove(shared.name);
+                    context.close();
+                }
+                return;
+            }
+        }
+    }
+}
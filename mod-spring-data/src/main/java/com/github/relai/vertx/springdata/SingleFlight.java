@@ -0,0 +1,82 @@
+package com.github.relai.vertx.springdata;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.vertx.java.core.AsyncResult;
+import org.vertx.java.core.Handler;
+import org.vertx.java.core.eventbus.EventBus;
+import org.vertx.java.core.eventbus.Message;
+import org.vertx.java.core.impl.DefaultFutureResult;
+import org.vertx.java.core.json.JsonElement;
+import org.vertx.java.core.json.JsonObject;
+
+/**
+ * Internal class that de-duplicates identical read commands in flight. The first
+ * command is sent to the worker verticle; an identical command sent before the
+ * reply arrives is not sent, and shares the reply of the first one instead.
+ * 
+ * <p>Two commands are identical when their JSON encodings are: the same action,
+ * repository, arguments and format. Each caller gets its own copy of a 
+ * <code>JsonObject</code> or <code>JsonArray</code> reply.
+ * 
+ * @author relai
+ */
+class SingleFlight {
+    private final EventBus bus;
+    private final ClientMetrics metrics;
+    private final Map<String, List<Handler<AsyncResult<Message<Object>>>>> inflight = new HashMap<>();
+
+    SingleFlight(EventBus bus, ClientMetrics metrics) {
+        this.bus = bus;
+        this.metrics = metrics;
+    }
+    
+    /**
+     * Sends the command, unless an identical command is in flight.
+     * 
+     * @param address the event bus address
+     * @param command the command
+     * @param timeout the reply timeout
+     * @param handler the reply handler
+     */
+    void send(String address, JsonObject command, long timeout, 
+        Handler<AsyncResult<Message<Object>>> handler) {
+        String key = command.encode();
+        synchronized (inflight) {
+            List<Handler<AsyncResult<Message<Object>>>> waiters = inflight.get(key);
+            if (waiters != null) {
+                waiters.add(handler);
+                metrics.collapsedRequests.incrementAndGet();
+                return;
+            }
+            waiters = new ArrayList<>(1);
+            waiters.add(handler);
+            inflight.put(key, waiters);
+        }
+        // The times are stamped after the key, so that they do not tell the commands apart
+        bus.sendWithTimeout(address, RepositoryVerticle.stamp(command, timeout), timeout, 
+            (AsyncResult<Message<Object>> result) -> complete(key, result));
+    }
+    
+    private void complete(String key, AsyncResult<Message<Object>> result) {
+        List<Handler<AsyncResult<Message<Object>>>> waiters;
+        synchronized (inflight) {
+            waiters = inflight.remove(key);
+        }
+        int last = waiters.size() - 1;
+        for (int index = 0; index <= last; index++) {
+            // The copies are made before the original is handed out to the last caller
+            if (index == last || result.failed() || result.result().body() instanceof JsonElement == false) {
+                waiters.get(index).handle(result);
+            } else {
+                Message<Object> message = result.result();
+                JsonElement el = (JsonElement) message.body();
+                Object copy = el.isArray() ? el.asArray().copy() : el.asObject().copy();
+                waiters.get(index).handle(new DefaultFutureResult<>(new DerivedMessage<>(message, copy)));
+            }
+        }
+    }
+}
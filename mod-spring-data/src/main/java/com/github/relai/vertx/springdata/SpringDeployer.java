@@ -1,8 +1,16 @@
 package com.github.relai.vertx.springdata;
 
 import static com.github.relai.vertx.springdata.RepositoryVerticle.APP_CONTEXT;
+import static com.github.relai.vertx.springdata.RepositoryVerticle.ARGUMENT_CODECS;
+import static com.github.relai.vertx.springdata.RepositoryVerticle.JAVA_SERIALIZATION;
+import static com.github.relai.vertx.springdata.RepositoryVerticle.RESULT_CACHE;
+import static com.github.relai.vertx.springdata.RepositoryVerticle.QUERY_TIMEOUTS;
+import static com.github.relai.vertx.springdata.RepositoryVerticle.READ_ONLY;
+import static com.github.relai.vertx.springdata.RepositoryVerticle.SHARED_CONTEXT;
+import org.springframework.data.repository.Repository;
 import org.vertx.java.core.AsyncResultHandler;
 import org.vertx.java.core.VertxException;
+import org.vertx.java.core.json.JsonArray;
 import org.vertx.java.core.json.JsonObject;
 import org.vertx.java.platform.Container;
 
@@ -31,9 +39,17 @@ import org.vertx.java.platform.Container;
 public class SpringDeployer {
     
     private final Container container;
-    private Class springConfigClass;
+    private Class<?> springConfigClass;
     private int   instances = 1;
     private boolean multiThreaded = false;
+    private boolean sharedContext = false;
+    private int readInstances = 0;
+    private int writeInstances = 0;
+    private boolean readOnly = false;
+    private boolean queryTimeouts = false;
+    private final JsonObject resultCache = new JsonObject();
+    private final JsonArray argumentCodecs = new JsonArray();
+    private boolean javaSerialization = false;
     
     
     /**
@@ -51,7 +67,7 @@ public class SpringDeployer {
      * @param configClass Spring Boot application configuration class
      * @return this
      */
-    public  SpringDeployer springConfigClass(Class configClass) {
+    public  SpringDeployer springConfigClass(Class<?> configClass) {
         springConfigClass = configClass;
         return this;
     }
@@ -78,6 +94,148 @@ public class SpringDeployer {
         return this;
     }
     
+    /**
+     * Specifies whether the worker verticle instances share a single Spring 
+     * application context. Default to false, where each instance starts its own 
+     * context, with its own data sources and connection pools.
+     * 
+     * <p>When shared, the context is started by the first instance, reused by the 
+     * others, and closed when the last instance stops. The beans of the context 
+     * must then be thread safe, as with a multi-threaded worker.
+     * 
+     * @param value true or false
+     * @return this
+     */
+    public SpringDeployer sharedContext(boolean value) {
+        this.sharedContext = value;
+        return this;
+    }
+    
+    /**
+     * Deploys separate read and write lanes of the worker verticle, each with its 
+     * own instances, instead of the instances of {@link #instances(int)}. The 
+     * clients send the commands that only read, including the custom methods 
+     * named as derived queries, to the read lane, and the others to the write 
+     * lane, so slow writes do not hold up the reads.
+     * 
+     * <p>The lanes are usually combined with a {@link #sharedContext(boolean) 
+     * shared context}, so both lanes use the same data sources. A result cache of
+     * the read lane is cleared on the invalidations published by the write lane.
+     * 
+     * @param readInstances the number of worker verticle instances of the read lane
+     * @param writeInstances the number of worker verticle instances of the write lane
+     * @return this
+     */
+    public SpringDeployer lanes(int readInstances, int writeInstances) {
+        if (readInstances <= 0 || writeInstances <= 0) 
+            throw new IllegalArgumentException("The instances of each lane must be positive");
+        this.readInstances = readInstances;
+        this.writeInstances = writeInstances;
+        return this;
+    }
+    
+    /**
+     * Specifies whether the read lane runs each command in a read-only 
+     * transaction, which lets the transaction manager and the database skip the 
+     * work of a write. Default to false. It requires {@link #lanes lanes} and a 
+     * <code>PlatformTransactionManager</code> bean. The streams of 
+     * <code>findAllStream</code> are not run in a transaction.
+     * 
+     * @param value true or false
+     * @return this
+     */
+    public SpringDeployer readOnlyTransactions(boolean value) {
+        this.readOnly = value;
+        return this;
+    }
+    
+    /**
+     * Specifies whether the worker verticle passes the time left until the 
+     * deadline of a command down to the database as a query timeout. Default to 
+     * false.
+     * 
+     * <p>The clients stamp the deadline of the reply into each command, and the 
+     * worker verticle always fails a command whose deadline has passed with 
+     * GATEWAY_TIMEOUT (504), without running it. With the query timeouts, a 
+     * command is also run in a transaction whose timeout is the time left, in 
+     * whole seconds, which the JPA and JDBC transaction managers apply to the 
+     * queries and statements. It requires a <code>PlatformTransactionManager</code>
+     * bean. The commands of a batch, and the streams of 
+     * <code>findAllStream</code>, are not given a timeout.
+     * 
+     * @param value true or false
+     * @return this
+     */
+    public SpringDeployer queryTimeouts(boolean value) {
+        this.queryTimeouts = value;
+        return this;
+    }
+    
+    /**
+     * Enables the query result cache of a repository in the worker verticle. The 
+     * reply of a read command is cached by the repository, action and arguments, 
+     * and the cache of a domain type is cleared whenever an entity of the type is 
+     * saved or deleted. Each worker verticle instance keeps its own cache.
+     * 
+     * @param repositoryInterface the repository interface
+     * @param maxEntries the maximum number of cached replies
+     * @param ttlMillis the time to live of a cached reply in milliseconds
+     * @return this
+     */
+    public SpringDeployer resultCache(Class<? extends Repository<?, ?>> repositoryInterface, 
+        int maxEntries, long ttlMillis) {
+        return resultCache(repositoryInterface.getCanonicalName(), maxEntries, ttlMillis);
+    }
+    
+    /**
+     * Enables the query result cache of every repository that is not configured 
+     * individually. See {@link #resultCache(Class, int, long)}.
+     * 
+     * @param maxEntries the maximum number of cached replies per repository
+     * @param ttlMillis the time to live of a cached reply in milliseconds
+     * @return this
+     */
+    public SpringDeployer resultCache(int maxEntries, long ttlMillis) {
+        return resultCache(ResultCache.ANY, maxEntries, ttlMillis);
+    }
+    
+    private SpringDeployer resultCache(String name, int maxEntries, long ttlMillis) {
+        if (maxEntries <= 0 || ttlMillis <= 0) 
+            throw new IllegalArgumentException("The result cache size and time to live must be positive");
+        resultCache.putObject(name, new JsonObject()
+            .putNumber(ResultCache.MAX_ENTRIES, maxEntries)
+            .putNumber(ResultCache.TTL, ttlMillis));
+        return this;
+    }
+    
+    /**
+     * Registers a custom argument codec with the worker verticle, so the custom
+     * methods called through a client built with 
+     * {@link AsyncRepositoryBuilder#argumentCodec} can be decoded. A command that
+     * names any other codec is rejected.
+     * 
+     * @param codecType the argument codec class
+     * @return this
+     */
+    public SpringDeployer argumentCodec(Class<? extends ArgumentCodec> codecType) {
+        argumentCodecs.addString(codecType.getName());
+        return this;
+    }
+    
+    /**
+     * Specifies whether the worker verticle accepts the arguments of the custom 
+     * methods in Java serialization, as encoded by {@link JavaArgumentCodec} or the
+     * fallback of {@link CompactArgumentCodec}. Default to false, since Java 
+     * deserialization of the bytes sent by any client on the event bus is unsafe.
+     * 
+     * @param value true or false
+     * @return this
+     */
+    public SpringDeployer javaSerialization(boolean value) {
+        this.javaSerialization = value;
+        return this;
+    }
+    
     /**
      * Deploys the Spring Data worker verticle.
      */
@@ -96,6 +254,31 @@ public class SpringDeployer {
         
         JsonObject config = new JsonObject();
         config.putString(APP_CONTEXT , springConfigClass.getCanonicalName());
+        if (sharedContext) {
+            config.putBoolean(SHARED_CONTEXT, true);
+        }
+        if (resultCache.size() > 0) {
+            config.putObject(RESULT_CACHE, resultCache);
+        }
+        if (queryTimeouts) {
+            config.putBoolean(QUERY_TIMEOUTS, true);
+        }
+        if (argumentCodecs.size() > 0) {
+            config.putArray(ARGUMENT_CODECS, argumentCodecs);
+        }
+        if (javaSerialization) {
+            config.putBoolean(JAVA_SERIALIZATION, true);
+        }
+        if (readInstances > 0) {
+            config.putBoolean(READ_ONLY, readOnly)
+                  .putNumber(LaneVerticle.READ_INSTANCES, readInstances)
+                  .putNumber(LaneVerticle.WRITE_INSTANCES, writeInstances)
+                  .putBoolean(LaneVerticle.MULTI_THREADED, multiThreaded);
+            container.deployVerticle(LaneVerticle.class.getCanonicalName(), config, 1, doneHandler);
+            return;
+        }
+        if (readOnly) 
+            throw new VertxException("Read-only transactions require the read and write lanes");
         container.deployWorkerVerticle(RepositoryVerticle.class.getCanonicalName(), 
                 config, instances, multiThreaded, doneHandler);
     }
@@ -0,0 +1,286 @@
+package com.github.relai.vertx.springdata;
+
+import static com.github.relai.vertx.springdata.RepositoryVerticle.*;
+
+import java.lang.management.ManagementFactory;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.vertx.java.core.json.JsonObject;
+
+/**
+ * Internal class of the metrics of a {@link RepositoryVerticle} instance, for
+ * each repository and action, including the custom methods.
+ *
+ * <p>The time to handle a command is split into three phases, each recorded in a
+ * latency histogram in microseconds: decoding the entities and arguments from
+ * the message, executing the repository call, and encoding the reply. The time 
+ * a command waited from its send time to the start of its handling is recorded
+ * as its queue time, to the millisecond of the clocks. The number
+ * of commands, the failure codes, the hits and misses of the result cache, and
+ * the sizes of the binary payloads are also recorded. The metrics are answered on the {@link #getAddress metrics address}
+ * and registered as a {@link RepositoryMetricsMXBean}.
+ *
+ * <p>The phases of the command in progress are accumulated per thread, so the
+ * metrics work with a multi-threaded worker.
+ *
+ * @author relai
+ */
+class WorkerMetrics implements RepositoryMetricsMXBean {
+    final static String QUEUE = "queue";
+    final static String DECODE = "decode";
+    final static String EXECUTE = "execute";
+    final static String ENCODE = "encode";
+    final static String ERRORS = "errors";
+    final static String REQUEST_BYTES = "requestBytes";
+    final static String REPLY_BYTES = "replyBytes";
+    final static String CACHE_HITS = "cacheHits";
+    final static String CACHE_MISSES = "cacheMisses";
+    final static String DEFAULT_REPOSITORY = "default";
+
+    private final Map<String, Map<String, ActionMetrics>> repositories = new ConcurrentHashMap<>();
+    private final ThreadLocal<Sample> current = new ThreadLocal<>();
+    private final AtomicLong requests = new AtomicLong();
+    private final AtomicLong errors = new AtomicLong();
+    private ObjectName name;
+
+    /**
+     * Starts the sample of a command on the current thread.
+     *
+     * @param command the command
+     * @return the sample
+     */
+    Sample start(JsonObject command) {
+        Sample sample = new Sample(command.getString(REPOSITORY, DEFAULT_REPOSITORY),
+            command.getString(ACTION, ""));
+        byte[] payload = command.getField(ARGS) != null ?
+            command.getBinary(ARGS) : command.getField(ENTITY) instanceof byte[] ?
+            command.getBinary(ENTITY) : null;
+        sample.requestBytes = payload == null ? -1 : payload.length;
+        long sent = command.getLong(SENT, 0);
+        sample.queue = sent > 0 ? Math.max(0, System.currentTimeMillis() - sent) : -1;
+        current.set(sample);
+        return sample;
+    }
+
+    /**
+     * Ends the sample of a command, and records it.
+     *
+     * @param sample the sample
+     * @param reply the reply, or null if the command failed
+     * @param failureCode the failure code, or 0 if the command succeeded
+     */
+    void end(Sample sample, Object reply, int failureCode) {
+        current.remove();
+        long total = System.nanoTime() - sample.start;
+        ActionMetrics metrics = repositories
+            .computeIfAbsent(sample.repository, name -> new ConcurrentHashMap<>())
+            .computeIfAbsent(sample.action, name -> new ActionMetrics());
+        if (sample.queue >= 0) {
+            metrics.queue.record(TimeUnit.MILLISECONDS.toMicros(sample.queue));
+        }
+        metrics.decode.record(toMicros(sample.decode));
+        metrics.encode.record(toMicros(sample.encode));
+        metrics.execute.record(toMicros(total - sample.decode - sample.encode));
+        if (sample.requestBytes >= 0) {
+            metrics.requestBytes.record(sample.requestBytes);
+        }
+        if (reply instanceof byte[]) {
+            metrics.replyBytes.record(((byte[]) reply).length);
+        }
+        if (sample.cacheHit != null) {
+            (sample.cacheHit ? metrics.cacheHits : metrics.cacheMisses).incrementAndGet();
+        }
+        requests.incrementAndGet();
+        if (failureCode != 0) {
+            errors.incrementAndGet();
+            metrics.errors.computeIfAbsent(failureCode, code -> new AtomicLong()).incrementAndGet();
+        }
+    }
+
+    /**
+     * Records whether the command in progress, if any, was answered from the
+     * result cache.
+     *
+     * @param hit true on a hit, false on a miss
+     */
+    void cacheHit(boolean hit) {
+        Sample sample = current.get();
+        if (sample != null) {
+            sample.cacheHit = hit;
+        }
+    }
+
+    /**
+     * Decodes part of the command, and adds the time to the decode phase of the
+     * command in progress, if any.
+     */
+    <T> T decode(Supplier<T> decoder) {
+        long start = System.nanoTime();
+        try {
+            return decoder.get();
+        } finally {
+            Sample sample = current.get();
+            if (sample != null) {
+                sample.decode += System.nanoTime() - start;
+            }
+        }
+    }
+
+    /**
+     * Encodes part of the reply, and adds the time to the encode phase of the
+     * command in progress, if any.
+     */
+    <T> T encode(Supplier<T> encoder) {
+        long start = System.nanoTime();
+        try {
+            return encoder.get();
+        } finally {
+            Sample sample = current.get();
+            if (sample != null) {
+                sample.encode += System.nanoTime() - start;
+            }
+        }
+    }
+
+    /**
+     * Builds the metrics document: for each repository and action, the number of
+     * commands, the count of each failure code, the result cache hits and misses,
+     * and the histograms of the queue
+     * time, of the phases and of the binary payload sizes.
+     *
+     * @return the metrics
+     */
+    JsonObject toJson() {
+        JsonObject json = new JsonObject();
+        repositories.forEach((repository, actions) -> {
+            JsonObject byAction = new JsonObject();
+            actions.forEach((action, metrics) -> byAction.putObject(action, metrics.toJson()));
+            json.putObject(repository, byAction);
+        });
+        return json;
+    }
+
+    @Override
+    public String getMetrics() {
+        return toJson().encodePrettily();
+    }
+
+    @Override
+    public long getRequestCount() {
+        return requests.get();
+    }
+
+    @Override
+    public long getErrorCount() {
+        return errors.get();
+    }
+
+    @Override
+    public void reset() {
+        repositories.clear();
+        requests.set(0);
+        errors.set(0);
+    }
+
+    /**
+     * Registers the metrics with the platform MBean server.
+     *
+     * @param instance the name of the verticle instance
+     */
+    void register(String instance) {
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            name = new ObjectName(WorkerMetrics.class.getPackage().getName() +
+                ":type=RepositoryVerticle,instance=" + ObjectName.quote(instance));
+            server.registerMBean(this, name);
+        } catch (JMException ex) {
+            // The metrics are still answered on the event bus
+            Logger.getLogger(WorkerMetrics.class.getName()).log(Level.WARNING, null, ex);
+            name = null;
+        }
+    }
+
+    void unregister() {
+        if (name == null) {
+            return;
+        }
+        try {
+            ManagementFactory.getPlatformMBeanServer().unregisterMBean(name);
+        } catch (JMException ex) {
+            Logger.getLogger(WorkerMetrics.class.getName()).log(Level.WARNING, null, ex);
+        }
+        name = null;
+    }
+
+    /**
+     * Gets the event bus address where the worker verticle answers its metrics.
+     * With several verticle instances, a request is answered by one of them.
+     *
+     * @return the address
+     */
+    static String getAddress() {
+        return RepositoryVerticle.getEventBusAddress() + ".metrics";
+    }
+
+    private static long toMicros(long nanos) {
+        return TimeUnit.NANOSECONDS.toMicros(nanos);
+    }
+
+    /**
+     * The phases of a command in progress.
+     */
+    static class Sample {
+        final String repository;
+        final String action;
+        final long start = System.nanoTime();
+        long decode;
+        long encode;
+        long queue;
+        int requestBytes;
+        // Null if the command was not looked up in a result cache
+        Boolean cacheHit;
+
+        Sample(String repository, String action) {
+            this.repository = repository;
+            this.action = action;
+        }
+    }
+
+    private static class ActionMetrics {
+        final Histogram queue = new Histogram();
+        final Histogram decode = new Histogram();
+        final Histogram execute = new Histogram();
+        final Histogram encode = new Histogram();
+        final Histogram requestBytes = new Histogram();
+        final Histogram replyBytes = new Histogram();
+        final Map<Integer, AtomicLong> errors = new ConcurrentHashMap<>();
+        final AtomicLong cacheHits = new AtomicLong();
+        final AtomicLong cacheMisses = new AtomicLong();
+
+        JsonObject toJson() {
+            JsonObject errorCounts = new JsonObject();
+            errors.forEach((code, count) -> errorCounts.putNumber(String.valueOf(code), count.get()));
+            return new JsonObject()
+                .putNumber(COUNT, execute.getCount())
+                .putObject(ERRORS, errorCounts)
+                .putNumber(CACHE_HITS, cacheHits.get())
+                .putNumber(CACHE_MISSES, cacheMisses.get())
+                .putObject(QUEUE, queue.toJson())
+                .putObject(DECODE, decode.toJson())
+                .putObject(EXECUTE, execute.toJson())
+                .putObject(ENCODE, encode.toJson())
+                .putObject(REQUEST_BYTES, requestBytes.toJson())
+                .putObject(REPLY_BYTES, replyBytes.toJson());
+        }
+    }
+}
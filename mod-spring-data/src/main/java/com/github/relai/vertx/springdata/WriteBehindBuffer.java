@@ -0,0 +1,101 @@
+package com.github.relai.vertx.springdata;
+
+import static com.github.relai.vertx.springdata.RepositoryVerticle.*;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.vertx.java.core.Vertx;
+import org.vertx.java.core.eventbus.Message;
+import org.vertx.java.core.eventbus.ReplyException;
+import org.vertx.java.core.eventbus.ReplyFailure;
+import org.vertx.java.core.impl.DefaultFutureResult;
+import org.vertx.java.core.json.JsonArray;
+import org.vertx.java.core.json.JsonObject;
+
+/**
+ * Internal class that buffers the single entity <code>save</code> calls of an
+ * {@link AsyncCrudRepositoryImpl}, and flushes them as one <code>save</code> of
+ * an array, which the worker verticle runs in a single transaction.
+ *
+ * <p>The buffer is flushed when it holds the maximum number of entities, or when
+ * the window has passed since the first call. Each caller gets its own saved
+ * entity. If the worker fails the batch, the transaction was rolled back, and the
+ * entities are saved one by one instead, so that only the caller of the failing
+ * entity gets the failure.
+ *
+ * @author relai
+ */
+class WriteBehindBuffer {
+    private final AsyncCrudRepositoryImpl<?> impl;
+    private final Vertx vertx;
+    private final int maxEntities;
+    private final long window;
+    private List<Waiter> pending = new ArrayList<>();
+    private long timerId;
+
+    WriteBehindBuffer(AsyncCrudRepositoryImpl<?> impl, Vertx vertx, int maxEntities, long window) {
+        this.impl = impl;
+        this.vertx = vertx;
+        this.maxEntities = maxEntities;
+        this.window = window;
+    }
+
+    void save(JsonObject entity, MessageHandler<JsonObject> onreply) {
+        if (pending.isEmpty()) {
+            timerId = vertx.setTimer(window, id -> flush());
+        }
+        pending.add(new Waiter(entity, onreply));
+        if (pending.size() >= maxEntities) {
+            vertx.cancelTimer(timerId);
+            flush();
+        }
+    }
+
+    private void flush() {
+        if (pending.isEmpty()) {
+            return;
+        }
+        List<Waiter> batch = pending;
+        pending = new ArrayList<>();
+
+        JsonArray entities = new JsonArray();
+        for (Waiter waiter : batch) {
+            entities.addObject(waiter.entity);
+        }
+        MessageHandler<JsonArray> onreply = reply -> {
+            if (reply.succeeded()) {
+                Message<JsonArray> message = reply.result();
+                JsonArray saved = message.body();
+                for (int index = 0; index < batch.size(); index++) {
+                    JsonObject entity = saved.get(index);
+                    batch.get(index).onreply.handle(
+                        new DefaultFutureResult<>(new DerivedMessage<>(message, entity)));
+                }
+            } else if (reply.cause() instanceof ReplyException &&
+                ((ReplyException) reply.cause()).failureType() == ReplyFailure.RECIPIENT_FAILURE &&
+                reply.cause() instanceof RejectedRequest == false) {
+                // Nothing was saved, so find the failing entities by saving them one by one
+                for (Waiter waiter : batch) {
+                    impl.process(SAVE, null, waiter.entity, waiter.onreply);
+                }
+            } else {
+                // Whether the batch was saved is unknown, so it is not retried
+                for (Waiter waiter : batch) {
+                    waiter.onreply.handle(new DefaultFutureResult<>(reply.cause()));
+                }
+            }
+        };
+        impl.process(SAVE, null, entities, onreply);
+    }
+
+    private static class Waiter {
+        final JsonObject entity;
+        final MessageHandler<JsonObject> onreply;
+
+        Waiter(JsonObject entity, MessageHandler<JsonObject> onreply) {
+            this.entity = entity;
+            this.onreply = onreply;
+        }
+    }
+}
@@ -1,13 +1,12 @@
 package com.github.relai.vertx.springdata;
 
-import static io.netty.handler.codec.http.HttpResponseStatus.UNPROCESSABLE_ENTITY;
 import static io.netty.handler.codec.http.HttpResponseStatus.INTERNAL_SERVER_ERROR;
 
 import java.io.Serializable;
 
+import org.vertx.java.core.Vertx;
 import org.vertx.java.core.buffer.Buffer;
 import org.vertx.java.core.http.HttpServerRequest;
-import org.vertx.java.core.json.JsonObject;
 
 import com.jetdrone.vertx.yoke.middleware.Router;
 import com.jetdrone.vertx.yoke.middleware.YokeRequest;
@@ -41,6 +40,36 @@ public class YokeRestHelper<ID extends Serializable> extends RestHelper<ID>{
         super(client, idType);
     }
 	
+    @Override
+    public YokeRestHelper<ID> streaming(int batchSize) {
+        super.streaming(batchSize);
+        return this;
+    }
+    
+    @Override
+    public YokeRestHelper<ID> metricsRoute(String path) {
+        super.metricsRoute(path);
+        return this;
+    }
+    
+    @Override
+    public YokeRestHelper<ID> retryAfter(int seconds) {
+        super.retryAfter(seconds);
+        return this;
+    }
+    
+    @Override
+    public YokeRestHelper<ID> compression(Vertx vertx, int minSize, int workerSize) {
+        super.compression(vertx, minSize, workerSize);
+        return this;
+    }
+    
+    @Override
+    public YokeRestHelper<ID> etags(String versionProperty) {
+        super.etags(versionProperty);
+        return this;
+    }
+	
     /**
      * Creates a Yoke router for the REST application.
      * 
@@ -50,8 +79,13 @@ public class YokeRestHelper<ID extends Serializable> extends RestHelper<ID>{
 	public Router createRouter(String pattern) {
 	    String idPattern = pattern + "/:" + ID_STR;		
 		Router matcher = new Router();
+		if (metricsPath != null) {
+		    matcher.get(metricsPath, this::getMetrics);
+		}
 		matcher.get(pattern, 	  this::getAll)
 			   .post(pattern, 	  this::post)
+			   .put(pattern,      this::putAll)
+			   .delete(pattern,   this::deleteByIds)
 			   .get(idPattern,    this::getOne)
 			   .put(idPattern,    this::put)
 			   .delete(idPattern, this::delete);
@@ -61,23 +95,27 @@ public class YokeRestHelper<ID extends Serializable> extends RestHelper<ID>{
 	@Override
 	protected void save(HttpServerRequest request, boolean isNew) {
 		if (request instanceof YokeRequest) {
-			Object body = ((YokeRequest)request).body();		
-			
-			if (body instanceof Buffer) {
-		         body = new JsonObject(((Buffer)body).toString());
-		    }	       
-			
-		    if ((body instanceof JsonObject)) {
-		    	doSave((JsonObject) body, request, isNew);
-		    } else {
- 	           request.response()
- 	             .setStatusCode(UNPROCESSABLE_ENTITY.code())
- 	             .end();
-		   }		
+			saveBody(body((YokeRequest) request), request, isNew, isNew);
+		} else {
+			request.response()
+			  .setStatusCode(INTERNAL_SERVER_ERROR.code())
+			  .end();		
+		}
+	}
+
+	@Override
+	protected void saveAll(HttpServerRequest request) {
+		if (request instanceof YokeRequest) {
+			saveBody(body((YokeRequest) request), request, false, true);
 		} else {
 			request.response()
 			  .setStatusCode(INTERNAL_SERVER_ERROR.code())
 			  .end();		
 		}
 	}
+
+	private static Object body(YokeRequest request) {
+		Object body = request.body();
+		return (body instanceof Buffer) ? parse((Buffer) body) : body;
+	}
 }
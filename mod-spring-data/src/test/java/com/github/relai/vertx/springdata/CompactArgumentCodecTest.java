@@ -0,0 +1,111 @@
+package com.github.relai.vertx.springdata;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.sql.Timestamp;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.LinkedHashSet;
+import java.util.Locale;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.domain.Sort.Direction;
+import org.springframework.data.domain.Sort.NullHandling;
+import org.springframework.data.domain.Sort.Order;
+import org.vertx.java.core.VertxException;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class CompactArgumentCodecTest {
+    
+    private final ArgumentCodec codec = new CompactArgumentCodec();
+    
+    @Test
+    public void roundTripScalars() {
+        Object[] args = {null, true, false, (byte) -3, (short) 300, -42, Long.MAX_VALUE,
+            1.5f, -2.25d, 'x', "café", new BigDecimal("-12.345"), 
+            new BigInteger("123456789012345678901234567890"), UUID.randomUUID(),
+            new Date(), new java.sql.Date(86400000L), new Timestamp(1234567890123L),
+            TimeUnit.SECONDS};
+        assertArrayEquals(args, codec.decode(codec.encode(args)));
+    }
+    
+    @Test
+    public void roundTripPagingAndSorting() {
+        Sort sort = new Sort(new Order(Direction.DESC, "priority", NullHandling.NULLS_LAST),
+            new Order(Direction.ASC, "name").ignoreCase());
+        Object[] args = {new PageRequest(3, 15, sort), new PageRequest(0, 25), sort};
+        Object[] decoded = codec.decode(codec.encode(args));
+        assertArrayEquals(args, decoded);
+        assertTrue(((Sort) decoded[2]).getOrderFor("name").isIgnoreCase());
+    }
+    
+    @Test
+    public void roundTripCollections() {
+        Object[] args = {Arrays.asList(1L, 2L, 3L), 
+            new LinkedHashSet<>(Arrays.asList("a", "b")), Collections.emptyList()};
+        assertArrayEquals(args, codec.decode(codec.encode(args)));
+    }
+    
+    @Test
+    public void compactBoolean() {
+        assertEquals(3, codec.encode(new Object[]{Boolean.TRUE}).length);
+    }
+    
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectUnsupportedType() {
+        codec.encode(new Object[]{new StringBuilder("x")});
+    }
+    
+    @Test
+    public void javaFallback() {
+        Object[] args = {"x", Locale.CANADA};
+        ArgumentCodec fallback = new CompactArgumentCodec(true);
+        assertArrayEquals(args, fallback.decode(fallback.encode(args)));
+    }
+    
+    @Test(expected = VertxException.class)
+    public void rejectJavaWithoutFallback() {
+        ArgumentCodec fallback = new CompactArgumentCodec(true);
+        codec.decode(fallback.encode(new Object[]{Locale.CANADA}));
+    }
+    
+    @Test(expected = VertxException.class)
+    public void rejectOversizedCount() {
+        // An empty list, with its size replaced by Integer.MAX_VALUE
+        byte[] bytes = codec.encode(new Object[]{Collections.emptyList()});
+        byte[] oversized = Arrays.copyOf(bytes, bytes.length + 4);
+        System.arraycopy(new byte[]{(byte) 0xFE, (byte) 0xFF, (byte) 0xFF, (byte) 0xFF, 0x0F}, 0,
+            oversized, bytes.length - 1, 5);
+        codec.decode(oversized);
+    }
+    
+    @Test(expected = VertxException.class)
+    public void rejectTruncatedArguments() {
+        byte[] bytes = codec.encode(new Object[]{"a", "b"});
+        codec.decode(Arrays.copyOf(bytes, 2));
+    }
+    
+    @Test(expected = VertxException.class)
+    public void rejectNonEnumType() {
+        // The enum type name replaced by an interface name of the same length
+        byte[] bytes = codec.encode(new Object[]{TimeUnit.SECONDS});
+        String encoded = new String(bytes, StandardCharsets.ISO_8859_1)
+            .replace(TimeUnit.class.getName(), "java.util.concurrent.Executor");
+        codec.decode(encoded.getBytes(StandardCharsets.ISO_8859_1));
+    }
+    
+    @Test
+    public void legacyEncodingIsNotCompact() {
+        byte[] bytes = new JavaArgumentCodec().encode(new Object[]{1});
+        assertTrue(CompactArgumentCodec.isCompact(bytes) == false);
+    }
+}
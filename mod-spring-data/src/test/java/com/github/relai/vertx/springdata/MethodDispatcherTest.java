@@ -0,0 +1,80 @@
+package com.github.relai.vertx.springdata;
+
+import java.lang.reflect.Method;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+/**
+ * Tests the dispatch of the custom repository methods.
+ */
+public class MethodDispatcherTest {
+
+    public interface ItemFinder {
+        String findByName(String name);
+        String findByPriority(long priority);
+        String findByPriority(String priority);
+    }
+
+    interface HiddenFinder {
+        String findByName(String name);
+    }
+
+    private final static ItemFinder finder = new ItemFinder() {
+        @Override
+        public String findByName(String name) {return "name " + name;}
+        @Override
+        public String findByPriority(long priority) {return "long " + priority;}
+        @Override
+        public String findByPriority(String priority) {return "string " + priority;}
+    };
+
+    @Test
+    public void dispatchUnique() throws Exception {
+        MethodDispatcher dispatcher = new MethodDispatcher(ItemFinder.class);
+        MethodDispatcher.Invoker invoker = dispatcher.resolve("findByName", new Object[] {"tea"});
+        assertNotNull(invoker);
+        assertEquals("name tea", invoker.invoke(finder, new Object[] {"tea"}));
+    }
+
+    @Test
+    public void dispatchOverloaded() throws Exception {
+        MethodDispatcher dispatcher = new MethodDispatcher(ItemFinder.class);
+        Object[] longArgs = {3L};
+        assertEquals("long 3", dispatcher.resolve("findByPriority", longArgs).invoke(finder, longArgs));
+        Object[] stringArgs = {"high"};
+        assertEquals("string high", 
+            dispatcher.resolve("findByPriority", stringArgs).invoke(finder, stringArgs));
+    }
+
+    @Test
+    public void fallbackOnWidening() throws Exception {
+        // An int only converts to the long parameter by widening, which the
+        // dispatcher leaves to the reflective scan
+        MethodDispatcher dispatcher = new MethodDispatcher(ItemFinder.class);
+        Object[] args = {3};
+        assertNull(dispatcher.resolve("findByPriority", args));
+        Method method = MethodDispatcher.findMethod(ItemFinder.class, "findByPriority", args);
+        assertEquals(long.class, method.getParameterTypes()[0]);
+        assertEquals("long 3", method.invoke(finder, args));
+    }
+
+    @Test
+    public void fallbackOnHiddenInterface() throws Exception {
+        // The method handles of a non-public interface cannot be looked up
+        MethodDispatcher dispatcher = new MethodDispatcher(HiddenFinder.class);
+        Object[] args = {"tea"};
+        assertNull(dispatcher.resolve("findByName", args));
+        Method method = MethodDispatcher.findMethod(HiddenFinder.class, "findByName", args);
+        method.setAccessible(true);
+        assertEquals("name tea", method.invoke((HiddenFinder) name -> "name " + name, args));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void noMatchingMethod() {
+        MethodDispatcher.findMethod(ItemFinder.class, "findByName", new Object[] {1, 2});
+    }
+}
@@ -0,0 +1,218 @@
+package com.github.relai.vertx.springdata.benchmark.load;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Predicate;
+
+import org.springframework.beans.BeanWrapperImpl;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageImpl;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Sort;
+
+/**
+ * A stand-in for a database repository, backed by a <code>ConcurrentHashMap</code>,
+ * shared by the load test and the JMH benchmarks.
+ * Every call blocks the calling thread for the injected latency, the way a query
+ * blocks a worker thread, so that the load test measures the event bus round 
+ * trip and the worker pool rather than a database.
+ * 
+ * @author relai
+ */
+public class InMemoryLoadItemRepository implements LoadItemRepository {
+    private final Map<Long, LoadItem> items = new ConcurrentHashMap<>();
+    private final AtomicLong sequence = new AtomicLong();
+    private final long latencyMicros;
+
+    /**
+     * Creates the repository with the given number of items, with the ids from 
+     * 1 to the count.
+     * 
+     * @param count the number of items
+     * @param latencyMicros the latency of each call in microseconds
+     */
+    public InMemoryLoadItemRepository(int count, long latencyMicros) {
+        this.latencyMicros = latencyMicros;
+        for (int index = 0; index < count; index++) {
+            LoadItem item = new LoadItem();
+            item.setName("item " + index);
+            item.setPriority(index % 10);
+            doSave(item);
+        }
+    }
+
+    @Override
+    public List<LoadItem> findByName(String name) {
+        return findByName(name, null);
+    }
+
+    @Override
+    public List<LoadItem> findByName(String name, Sort sort) {
+        pause();
+        return filter(sorted(sort), item -> name.equals(item.getName()));
+    }
+
+    @Override
+    public List<LoadItem> findByPriority(int priority) {
+        return findByPriorityBetween(priority, priority);
+    }
+
+    @Override
+    public List<LoadItem> findByPriority(Long priority) {
+        return findByPriorityBetween(priority.intValue(), priority.intValue());
+    }
+
+    @Override
+    public List<LoadItem> findByPriorityBetween(int from, int to) {
+        pause();
+        return filter(items.values(), item -> item.getPriority() >= from && item.getPriority() <= to);
+    }
+
+    @Override
+    public <S extends LoadItem> S save(S entity) {
+        pause();
+        return doSave(entity);
+    }
+
+    @Override
+    public <S extends LoadItem> Iterable<S> save(Iterable<S> entities) {
+        pause();
+        for (S entity : entities) {
+            doSave(entity);
+        }
+        return entities;
+    }
+
+    @Override
+    public LoadItem findOne(Long id) {
+        pause();
+        return items.get(id);
+    }
+
+    @Override
+    public boolean exists(Long id) {
+        pause();
+        return items.containsKey(id);
+    }
+
+    @Override
+    public Iterable<LoadItem> findAll() {
+        pause();
+        return new ArrayList<>(items.values());
+    }
+
+    @Override
+    public Iterable<LoadItem> findAll(Iterable<Long> ids) {
+        pause();
+        List<LoadItem> found = new ArrayList<>();
+        for (Long id : ids) {
+            LoadItem item = items.get(id);
+            if (item != null) {
+                found.add(item);
+            }
+        }
+        return found;
+    }
+
+    @Override
+    public Iterable<LoadItem> findAll(Sort sort) {
+        pause();
+        return sorted(sort);
+    }
+
+    @Override
+    public Page<LoadItem> findAll(Pageable pageable) {
+        pause();
+        List<LoadItem> all = sorted(pageable.getSort());
+        int from = Math.min(pageable.getOffset(), all.size());
+        int to = Math.min(from + pageable.getPageSize(), all.size());
+        return new PageImpl<>(new ArrayList<>(all.subList(from, to)), pageable, all.size());
+    }
+
+    @Override
+    public long count() {
+        pause();
+        return items.size();
+    }
+
+    @Override
+    public void delete(Long id) {
+        pause();
+        items.remove(id);
+    }
+
+    @Override
+    public void delete(LoadItem entity) {
+        pause();
+        items.remove(entity.getId());
+    }
+
+    @Override
+    public void delete(Iterable<? extends LoadItem> entities) {
+        pause();
+        for (LoadItem entity : entities) {
+            items.remove(entity.getId());
+        }
+    }
+
+    @Override
+    public void deleteAll() {
+        pause();
+        items.clear();
+    }
+
+    private <S extends LoadItem> S doSave(S entity) {
+        if (entity.getId() == null) {
+            entity.setId(sequence.incrementAndGet());
+        }
+        items.put(entity.getId(), entity);
+        return entity;
+    }
+
+    private static List<LoadItem> filter(Iterable<LoadItem> items, Predicate<LoadItem> condition) {
+        List<LoadItem> found = new ArrayList<>();
+        for (LoadItem item : items) {
+            if (condition.test(item)) {
+                found.add(item);
+            }
+        }
+        return found;
+    }
+
+    private List<LoadItem> sorted(Sort sort) {
+        List<LoadItem> all = new ArrayList<>(items.values());
+        Comparator<LoadItem> order = Comparator.comparing(LoadItem::getId);
+        if (sort != null) {
+            Comparator<LoadItem> byProperties = null;
+            for (Sort.Order property : sort) {
+                Comparator<LoadItem> next = byProperty(property);
+                byProperties = byProperties == null ? next : byProperties.thenComparing(next);
+            }
+            if (byProperties != null) {
+                order = byProperties.thenComparing(order);
+            }
+        }
+        all.sort(order);
+        return all;
+    }
+
+    @SuppressWarnings({ "rawtypes", "unchecked" })
+    private static Comparator<LoadItem> byProperty(Sort.Order property) {
+        Comparator<Comparable> values = Comparator.nullsLast(Comparator.naturalOrder());
+        Comparator<LoadItem> order = Comparator.comparing(item -> 
+            (Comparable) new BeanWrapperImpl(item).getPropertyValue(property.getProperty()), values);
+        return property.isAscending() ? order : order.reversed();
+    }
+
+    private void pause() {
+        if (latencyMicros > 0) {
+            LockSupport.parkNanos(TimeUnit.MICROSECONDS.toNanos(latencyMicros));
+        }
+    }
+}
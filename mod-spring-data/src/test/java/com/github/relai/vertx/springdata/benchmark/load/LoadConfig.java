@@ -0,0 +1,24 @@
+package com.github.relai.vertx.springdata.benchmark.load;
+
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.env.Environment;
+
+/**
+ * The Spring configuration of the load test, with the in-memory repository and
+ * no database. The repository is sized and slowed down by the system properties
+ * <code>load.items</code> (default 1000) and <code>load.latencyMicros</code> 
+ * (default 0).
+ * 
+ * @author relai
+ */
+@Configuration
+public class LoadConfig {
+    
+    @Bean
+    public LoadItemRepository loadItemRepository(Environment env) {
+        return new InMemoryLoadItemRepository(
+            env.getProperty("load.items", Integer.class, 1000),
+            env.getProperty("load.latencyMicros", Long.class, 0L));
+    }
+}
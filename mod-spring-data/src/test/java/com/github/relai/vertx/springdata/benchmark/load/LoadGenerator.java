@@ -0,0 +1,145 @@
+package com.github.relai.vertx.springdata.benchmark.load;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+import org.vertx.java.core.Handler;
+
+/**
+ * Drives an asynchronous operation a number of times, with a fixed number of 
+ * calls in flight, and records the latency of each call.
+ * 
+ * @author relai
+ */
+class LoadGenerator {
+
+    /**
+     * An asynchronous call under load.
+     */
+    @FunctionalInterface
+    interface Operation {
+        /**
+         * Makes the call.
+         * 
+         * @param index the index of the call
+         * @param done to call with true if the call succeeded
+         */
+        void call(int index, Handler<Boolean> done);
+    }
+
+    private final int requests;
+    private final int concurrency;
+    private final Operation operation;
+    private final Handler<Result> onresult;
+    private final long[] latencies;
+    private int issued;
+    private int completed;
+    private int errors;
+    private long start;
+
+    private LoadGenerator(int requests, int concurrency, Operation operation, 
+        Handler<Result> onresult) {
+        this.requests = requests;
+        this.concurrency = concurrency;
+        this.operation = operation;
+        this.onresult = onresult;
+        this.latencies = new long[requests];
+    }
+
+    /**
+     * Runs the load. The calls must complete on the event loop of the caller.
+     * 
+     * @param requests the total number of calls
+     * @param concurrency the number of calls in flight
+     * @param operation the call
+     * @param onresult the handler of the result, once every call completed
+     */
+    static void run(int requests, int concurrency, Operation operation, Handler<Result> onresult) {
+        new LoadGenerator(requests, concurrency, operation, onresult).start();
+    }
+
+    private void start() {
+        start = System.nanoTime();
+        for (int index = 0; index < concurrency && issued < requests; index++) {
+            next();
+        }
+    }
+
+    private void next() {
+        int index = issued++;
+        long sent = System.nanoTime();
+        operation.call(index, succeeded -> {
+            latencies[index] = System.nanoTime() - sent;
+            if (succeeded == false) {
+                errors++;
+            }
+            if (++completed == requests) {
+                onresult.handle(new Result(latencies, errors, System.nanoTime() - start));
+            } else if (issued < requests) {
+                next();
+            }
+        });
+    }
+
+    /**
+     * The throughput and the latency distribution of a run.
+     */
+    static class Result {
+        private final long[] latencies;
+        private final int errors;
+        private final long elapsed;
+
+        Result(long[] latencies, int errors, long elapsed) {
+            this.latencies = latencies.clone();
+            Arrays.sort(this.latencies);
+            this.errors = errors;
+            this.elapsed = elapsed;
+        }
+
+        double getThroughput() {
+            return latencies.length * (double) TimeUnit.SECONDS.toNanos(1) / elapsed;
+        }
+
+        int getErrors() {
+            return errors;
+        }
+
+        /**
+         * Gets the latency at a percentile.
+         * 
+         * @param percentile the percentile, from 0 to 100
+         * @return the latency in microseconds
+         */
+        long getLatency(double percentile) {
+            int rank = (int) Math.ceil(percentile / 100 * latencies.length);
+            return toMicros(latencies[Math.max(0, Math.min(rank, latencies.length) - 1)]);
+        }
+
+        /**
+         * Describes the latency histogram, with a bucket for each power of two 
+         * microseconds, such as <code>&lt;=256us: 1204</code>.
+         * 
+         * @return the histogram
+         */
+        String histogram() {
+            StringBuilder text = new StringBuilder();
+            int index = 0;
+            for (long bound = 64; index < latencies.length; bound *= 2) {
+                int count = 0;
+                while (index < latencies.length && toMicros(latencies[index]) <= bound) {
+                    count++;
+                    index++;
+                }
+                if (count > 0) {
+                    text.append(text.length() == 0 ? "" : ", ")
+                        .append("<=").append(bound).append("us: ").append(count);
+                }
+            }
+            return text.toString();
+        }
+
+        private static long toMicros(long nanos) {
+            return TimeUnit.NANOSECONDS.toMicros(nanos);
+        }
+    }
+}
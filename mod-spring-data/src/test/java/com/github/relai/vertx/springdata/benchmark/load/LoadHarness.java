@@ -0,0 +1,238 @@
+package com.github.relai.vertx.springdata.benchmark.load;
+
+import static org.vertx.testtools.VertxAssert.assertTrue;
+import static org.vertx.testtools.VertxAssert.testComplete;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+import org.junit.Test;
+import org.vertx.java.core.http.HttpClient;
+import org.vertx.java.core.http.HttpClientRequest;
+import org.vertx.java.core.http.HttpServer;
+import org.vertx.java.core.json.JsonObject;
+import org.vertx.testtools.TestVerticle;
+
+import com.github.relai.vertx.springdata.AsyncCrudRepository;
+import com.github.relai.vertx.springdata.AsyncRepositoryBuilder;
+import com.github.relai.vertx.springdata.RestHelper;
+import com.github.relai.vertx.springdata.SpringDeployer;
+
+/**
+ * Measures the event bus round trip of the mod under concurrency, against the
+ * in-memory repository of {@link LoadConfig} instead of a database.
+ *
+ * <p>For each combination of worker verticle instances and threading, the worker
+ * is deployed, and then driven at each concurrency, first through an
+ * {@link AsyncCrudRepository} client and then over HTTP through a {@link RestHelper}.
+ * The calls are <code>findOne</code> of a random id, mixed with a share of
+ * <code>save</code> calls. Each run reports its throughput, latency percentiles
+ * in microseconds, and latency histogram.
+ *
+ * <p>With a list size, each concurrency also runs a <code>list</code> scenario of
+ * HTTP GETs of a page of items, which reports the response bytes too, to
+ * compare the compressed and uncompressed responses of large collections.
+ *
+ * <p>The harness is not part of the integration tests. Run it on its own, for example:
+ * <pre>
+ * mvn verify -Dit.test=LoadHarness -Dload.concurrency=1,16,64 -Dload.latencyMicros=500
+ * </pre>
+ * The system properties, with their defaults, are:
+ * <ul>
+ *   <li><code>load.instances=1,4</code>: the worker verticle instances
+ *   <li><code>load.multiThreaded=false,true</code>: whether the worker is multi-threaded
+ *   <li><code>load.concurrency=1,16,64</code>: the number of calls in flight
+ *   <li><code>load.requests=10000</code>: the calls in each run
+ *   <li><code>load.writePercent=10</code>: the percentage of <code>save</code> calls
+ *   <li><code>load.items=1000</code>: the items in the repository
+ *   <li><code>load.latencyMicros=0</code>: the latency injected into each repository call
+ *   <li><code>load.listSize=0</code>: the items in each GET of the <code>list</code>
+ *        scenario, or 0 to skip it
+ *   <li><code>load.acceptEncoding=</code>: the <code>Accept-Encoding</code> header of
+ *        the <code>list</code> scenario, such as <code>gzip</code>, or empty for none
+ * </ul>
+ *
+ * @author relai
+ */
+public class LoadHarness extends TestVerticle {
+
+    private static final int PORT_NUMBER = 8090;
+
+    private final int[] instances = ints("load.instances", "1,4");
+    private final String[] multiThreaded = System.getProperty("load.multiThreaded", "false,true").split(",");
+    private final int[] concurrency = ints("load.concurrency", "1,16,64");
+    private final int requests = Integer.getInteger("load.requests", 10000);
+    private final int writePercent = Integer.getInteger("load.writePercent", 10);
+    private final int items = Integer.getInteger("load.items", 1000);
+    private final int listSize = Integer.getInteger("load.listSize", 0);
+    private final String acceptEncoding = System.getProperty("load.acceptEncoding", "");
+
+    private final List<String> report = new ArrayList<>();
+    private AsyncCrudRepository<Long> client;
+    private HttpServer server;
+
+    @Override
+    public void start() {
+        initialize();
+
+        client = new AsyncRepositoryBuilder<Long>(vertx.eventBus())
+            .repositoryInterface(LoadItemRepository.class)
+            .build();
+        RestHelper<Long> rest = new RestHelper<>(client, Long.class)
+            .compression(vertx, 1024, 16384);
+        server = vertx.createHttpServer()
+            .requestHandler(rest.createRouteMatcher("/items"))
+            .listen(PORT_NUMBER, listening -> startTests());
+    }
+
+    @Test
+    public void load() {
+        List<Consumer<Runnable>> steps = new ArrayList<>();
+        for (int count : instances) {
+            for (String threading : multiThreaded) {
+                steps.add(done -> runSetup(count, Boolean.parseBoolean(threading), done));
+            }
+        }
+        report.add(String.format("%-8s %9s %13s %11s %10s %8s %8s %8s %8s %8s %7s",
+            "scenario", "instances", "multiThreaded", "concurrency", "req/s",
+            "p50", "p90", "p99", "p999", "max", "errors"));
+        runSteps(steps.iterator(), () -> {
+            for (String line : report) {
+                getContainer().logger().info(line);
+            }
+            server.close();
+            testComplete();
+        });
+    }
+
+    private void runSetup(int count, boolean threading, Runnable done) {
+        new SpringDeployer(container)
+            .springConfigClass(LoadConfig.class)
+            .instances(count)
+            .multiThreaded(threading)
+            .deploy(deployed -> {
+                assertTrue(deployed.succeeded());
+                List<Consumer<Runnable>> steps = new ArrayList<>();
+                String setup = String.format("%9d %13b", count, threading);
+                for (int inFlight : concurrency) {
+                    steps.add(next -> runClient(setup, inFlight, next));
+                    steps.add(next -> runRest(setup, inFlight, next));
+                    if (listSize > 0) {
+                        steps.add(next -> runList(setup, inFlight, next));
+                    }
+                }
+                runSteps(steps.iterator(), () ->
+                    container.undeployVerticle(deployed.result(), undeployed -> done.run()));
+            });
+    }
+
+    private void runClient(String setup, int inFlight, Runnable done) {
+        LoadGenerator.run(requests, inFlight, (index, ondone) -> {
+            long id = randomId();
+            if (isWrite(index)) {
+                client.save(item(id), reply -> ondone.handle(reply.succeeded()));
+            } else {
+                client.findOne(id, reply -> ondone.handle(reply.succeeded()));
+            }
+        }, result -> {
+            report("client", setup, inFlight, result);
+            done.run();
+        });
+    }
+
+    private void runRest(String setup, int inFlight, Runnable done) {
+        HttpClient http = vertx.createHttpClient()
+            .setHost("localhost")
+            .setPort(PORT_NUMBER)
+            .setKeepAlive(true)
+            .setMaxPoolSize(inFlight);
+        LoadGenerator.run(requests, inFlight, (index, ondone) -> {
+            long id = randomId();
+            HttpClientRequest request = isWrite(index) ?
+                http.put("/items/" + id, resp -> resp.bodyHandler(body -> ondone.handle(resp.statusCode() == 200))) :
+                http.get("/items/" + id, resp -> resp.bodyHandler(body -> ondone.handle(resp.statusCode() == 200)));
+            request.exceptionHandler(ex -> ondone.handle(false));
+            if (isWrite(index)) {
+                request.end(item(id).encode());
+            } else {
+                request.end();
+            }
+        }, result -> {
+            http.close();
+            report("rest", setup, inFlight, result);
+            done.run();
+        });
+    }
+
+    private void runList(String setup, int inFlight, Runnable done) {
+        HttpClient http = vertx.createHttpClient()
+            .setHost("localhost")
+            .setPort(PORT_NUMBER)
+            .setKeepAlive(true)
+            .setMaxPoolSize(inFlight);
+        AtomicLong bytes = new AtomicLong();
+        int pages = Math.max(1, items / listSize);
+        LoadGenerator.run(requests, inFlight, (index, ondone) -> {
+            int page = ThreadLocalRandom.current().nextInt(pages);
+            HttpClientRequest request = http.get("/items?page=" + page + "&size=" + listSize, 
+                resp -> resp.bodyHandler(body -> {
+                    bytes.addAndGet(body.length());
+                    ondone.handle(resp.statusCode() == 200);
+                }));
+            request.exceptionHandler(ex -> ondone.handle(false));
+            if (acceptEncoding.isEmpty() == false) {
+                request.putHeader("Accept-Encoding", acceptEncoding);
+            }
+            request.end();
+        }, result -> {
+            http.close();
+            report("list", setup, inFlight, result);
+            report.add("         bytes per response: " + bytes.get() / requests);
+            done.run();
+        });
+    }
+
+    private void report(String kind, String setup, int inFlight, LoadGenerator.Result result) {
+        report.add(String.format("%-8s %s %11d %10.0f %8d %8d %8d %8d %8d %7d",
+            kind, setup, inFlight, result.getThroughput(),
+            result.getLatency(50), result.getLatency(90), result.getLatency(99),
+            result.getLatency(99.9), result.getLatency(100), result.getErrors()));
+        report.add("         latency histogram: " + result.histogram());
+    }
+
+    private boolean isWrite(int index) {
+        return index % 100 < writePercent;
+    }
+
+    private long randomId() {
+        return 1 + ThreadLocalRandom.current().nextInt(items);
+    }
+
+    private static JsonObject item(long id) {
+        return new JsonObject()
+            .putNumber("id", id)
+            .putString("name", "item " + id)
+            .putNumber("priority", (int) (id % 10));
+    }
+
+    private static void runSteps(Iterator<Consumer<Runnable>> steps, Runnable done) {
+        if (steps.hasNext()) {
+            steps.next().accept(() -> runSteps(steps, done));
+        } else {
+            done.run();
+        }
+    }
+
+    private static int[] ints(String property, String defaults) {
+        String[] values = System.getProperty(property, defaults).split(",");
+        int[] result = new int[values.length];
+        for (int index = 0; index < values.length; index++) {
+            result[index] = Integer.parseInt(values[index].trim());
+        }
+        return result;
+    }
+}
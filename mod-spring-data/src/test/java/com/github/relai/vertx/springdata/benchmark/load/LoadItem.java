@@ -0,0 +1,60 @@
+package com.github.relai.vertx.springdata.benchmark.load;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The domain class of the load test and of the JMH benchmarks. Its size grows 
+ * with the number of tags.
+ * 
+ * @author relai
+ */
+public class LoadItem implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    Long id;
+    Long version;
+    int priority;
+    String name;
+    String notes;
+    List<String> tags = new ArrayList<>();
+
+    /**
+     * Creates an item with the given number of tags.
+     * 
+     * @param id the id
+     * @param tagCount the number of tags
+     * @return the item
+     */
+    public static LoadItem of(long id, int tagCount) {
+        LoadItem item = new LoadItem();
+        item.setId(id);
+        item.setVersion(1L);
+        item.setName("item " + id);
+        item.setPriority((int) (id % 10));
+        item.setNotes("Notes of the item " + id);
+        for (int index = 0; index < tagCount; index++) {
+            item.getTags().add("tag-" + index);
+        }
+        return item;
+    }
+
+    public Long getId() {return id;}
+    public void setId(Long id) {this.id = id;}
+
+    public Long getVersion() {return version;}
+    public void setVersion(Long version) {this.version = version;}
+
+    public int  getPriority() {return priority;}
+    public void setPriority(int priority) {this.priority = priority;}
+
+    public String getName() {return name;}
+    public void   setName(String name) {this.name = name;}
+
+    public String getNotes() {return notes;}
+    public void   setNotes(String notes) {this.notes = notes;}
+
+    public List<String> getTags() {return tags;}
+    public void setTags(List<String> tags) {this.tags = tags;}
+}
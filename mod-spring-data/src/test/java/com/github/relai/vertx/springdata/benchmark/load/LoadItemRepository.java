@@ -0,0 +1,20 @@
+package com.github.relai.vertx.springdata.benchmark.load;
+
+import java.util.List;
+
+import org.springframework.data.domain.Sort;
+import org.springframework.data.repository.PagingAndSortingRepository;
+
+/**
+ * The repository of the load test and of the JMH benchmarks, with overloaded 
+ * custom methods to exercise the method resolution.
+ * 
+ * @author relai
+ */
+public interface LoadItemRepository extends PagingAndSortingRepository<LoadItem, Long> {
+    List<LoadItem> findByName(String name);
+    List<LoadItem> findByName(String name, Sort sort);
+    List<LoadItem> findByPriority(int priority);
+    List<LoadItem> findByPriority(Long priority);
+    List<LoadItem> findByPriorityBetween(int from, int to);
+}
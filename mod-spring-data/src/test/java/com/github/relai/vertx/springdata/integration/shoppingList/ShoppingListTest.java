@@ -1,10 +1,30 @@
 package com.github.relai.vertx.springdata.integration.shoppingList;
 
+import com.github.relai.vertx.springdata.AsyncPagingAndSortingRepository;
 import com.github.relai.vertx.springdata.AsyncRepositoryBuilder;
+import com.github.relai.vertx.springdata.BatchStream;
+import com.github.relai.vertx.springdata.JavaArgumentCodec;
+import com.github.relai.vertx.springdata.RejectedRequest;
+import com.github.relai.vertx.springdata.RepositoryVerticle;
+import com.github.relai.vertx.springdata.RestHelper;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.GZIPInputStream;
 
 import org.junit.Test;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Sort;
+import org.vertx.java.core.AsyncResultHandler;
+import org.vertx.java.core.Handler;
 import org.vertx.java.core.eventbus.ReplyException;
 import org.vertx.java.core.json.JsonArray;
+import org.vertx.java.core.json.JsonElement;
 import org.vertx.java.core.json.JsonObject;
 import org.vertx.testtools.TestVerticle;
 
@@ -16,19 +36,28 @@ import com.jetdrone.vertx.yoke.Yoke;
 import com.jetdrone.vertx.yoke.middleware.BodyParser;
 
 import static io.netty.handler.codec.http.HttpResponseStatus.CONFLICT;
+import static io.netty.handler.codec.http.HttpResponseStatus.GATEWAY_TIMEOUT;
+import static io.netty.handler.codec.http.HttpResponseStatus.NOT_ACCEPTABLE;
+import static io.netty.handler.codec.http.HttpResponseStatus.NOT_FOUND;
 import org.vertx.java.core.buffer.Buffer;
 import org.vertx.java.core.http.HttpClient;
 import org.vertx.java.core.http.HttpClientRequest;
 import org.vertx.java.core.http.HttpClientResponse;
 import static org.vertx.testtools.VertxAssert.assertEquals;
+import static org.vertx.testtools.VertxAssert.assertNotNull;
 import static org.vertx.testtools.VertxAssert.assertTrue;
 import static org.vertx.testtools.VertxAssert.testComplete;
 
 public class ShoppingListTest extends TestVerticle {
     
     private static final int PORT_NUMBER = 8088;
+    private static final int STREAMING_PORT_NUMBER = 8089;
+    private static final int COMPRESSED_PORT_NUMBER = 8087;
+    private static final int METRICS_PORT_NUMBER = 8086;
+    private static final int ETAG_PORT_NUMBER = 8085;
 
 	AsyncShoppingItemRepository client;
+	String deploymentId;
 
 	@Override
 	public void start() {
@@ -46,8 +75,22 @@ public class ShoppingListTest extends TestVerticle {
         
         SpringDeployer deployer = new SpringDeployer(container);
         deployer.springConfigClass(Config.class)
-                .deploy(result -> startTests());       
+                .deploy(result -> {
+                    deploymentId = result.result();
+                    startTests();
+                });       
 	}
+    
+    /**
+     * Replaces the worker verticle of the shared setup with one of its own 
+     * configuration, so a test of an option does not run alongside the default.
+     */
+    private void redeploy(SpringDeployer deployer, AsyncResultHandler<String> ondeployed) {
+        container.undeployVerticle(deploymentId, undeployed -> {
+            assertTrue(undeployed.succeeded());
+            deployer.springConfigClass(Config.class).deploy(ondeployed);
+        });
+    }
 		
     @Test
 	public void restGetAll() {		
@@ -65,6 +108,7 @@ public class ShoppingListTest extends TestVerticle {
         createHttpClient().get("/shoppinglist?page=0&size=3&sort=name.asc.nulls_first",
             (HttpClientResponse resp) -> {
                 assertEquals(200, resp.statusCode());
+                assertTrue(resp.headers().get("X-Total-Count") != null);
                 resp.bodyHandler((Buffer data) -> {
                     JsonArray array = new JsonArray(data.toString());
                     JsonObject apples = (JsonObject) array.get(1);
@@ -76,6 +120,207 @@ public class ShoppingListTest extends TestVerticle {
         ).end();
 	}
     
+    @Test
+	public void restGetAllAsStream() {		
+        RestHelper<Long> rest = new RestHelper<>(client, Long.class).streaming(2);
+        vertx.createHttpServer()
+            .requestHandler(rest.createRouteMatcher("/shoppinglist"))
+            .listen(STREAMING_PORT_NUMBER, server -> {
+                createHttpClient().setPort(STREAMING_PORT_NUMBER).get("/shoppinglist?sort=name", resp -> {
+                    assertEquals(200, resp.statusCode());
+                    assertEquals("chunked", resp.headers().get("Transfer-Encoding"));
+                    resp.bodyHandler((Buffer data) -> {
+                        JsonArray array = new JsonArray(data.toString());
+                        assertTrue(array.size() > 2);
+                        getContainer().logger().info("rest get all as stream: " + data.toString());
+                        testComplete();
+                    });
+                }).end();
+            });
+	}
+    
+    @Test
+	public void restGetAllCompressed() {
+        RestHelper<Long> rest = new RestHelper<>(client, Long.class).compression(vertx, 64, 256);
+        listen(rest, COMPRESSED_PORT_NUMBER, http -> http.get("/shoppinglist?sort=name", resp -> {
+            assertEquals(200, resp.statusCode());
+            assertEquals("gzip", resp.headers().get("Content-Encoding"));
+            resp.bodyHandler((Buffer data) -> {
+                JsonArray array = new JsonArray(gunzip(data));
+                assertTrue(array.size() > 2);
+                getContainer().logger().info("rest get all compressed: " + 
+                    data.length() + " bytes for " + array.encode().length());
+                testComplete();
+            });
+        }).putHeader("Accept-Encoding", "deflate;q=0.5, gzip").end());
+	}
+    
+    @Test
+	public void restGetAllCompressedNotModified() {
+        RestHelper<Long> rest = new RestHelper<>(client, Long.class)
+            .etags("version")
+            .compression(vertx, 64, 256);
+        listen(rest, COMPRESSED_PORT_NUMBER, http -> http.get("/shoppinglist?sort=name", resp -> {
+            String etag = resp.headers().get("ETag");
+            assertTrue(etag.endsWith("-gzip\""));
+            // The 304 carries the ETag of the compressed representation
+            http.get("/shoppinglist?sort=name", notModified -> {
+                assertEquals(304, notModified.statusCode());
+                assertEquals(etag, notModified.headers().get("ETag"));
+                // The uncompressed representation has another ETag
+                http.get("/shoppinglist?sort=name", identity -> {
+                    assertEquals(200, identity.statusCode());
+                    assertTrue(etag.equals(identity.headers().get("ETag")) == false);
+                    testComplete();
+                }).putHeader("If-None-Match", etag).end();
+            }).putHeader("Accept-Encoding", "gzip").putHeader("If-None-Match", etag).end();
+        }).putHeader("Accept-Encoding", "gzip").end());
+	}
+    
+    @Test
+	public void restGetOneNotCompressed() {
+        RestHelper<Long> rest = new RestHelper<>(client, Long.class).compression(vertx, 64, 256);
+        listen(rest, COMPRESSED_PORT_NUMBER, http -> http.get("/shoppinglist/1", resp -> {
+            assertEquals(200, resp.statusCode());
+            assertEquals(null, resp.headers().get("Content-Encoding"));
+            resp.bodyHandler((Buffer data) -> {
+                assertEquals("coffee", new JsonObject(data.toString()).getString("name"));
+                testComplete();
+            });
+        }).putHeader("Accept-Encoding", "gzip").end());
+	}
+    
+    @Test
+	public void restGetAllAsStreamCompressed() {
+        RestHelper<Long> rest = new RestHelper<>(client, Long.class)
+            .streaming(2)
+            .compression(null, 0, 0);
+        vertx.createHttpServer()
+            .requestHandler(rest.createRouteMatcher("/shoppinglist"))
+            .listen(COMPRESSED_PORT_NUMBER, server -> {
+                createHttpClient().setPort(COMPRESSED_PORT_NUMBER).get("/shoppinglist?sort=name", resp -> {
+                    assertEquals(200, resp.statusCode());
+                    assertEquals("chunked", resp.headers().get("Transfer-Encoding"));
+                    assertEquals("gzip", resp.headers().get("Content-Encoding"));
+                    resp.bodyHandler((Buffer data) -> {
+                        JsonArray array = new JsonArray(gunzip(data));
+                        assertTrue(array.size() > 2);
+                        testComplete();
+                    });
+                }).putHeader("Accept-Encoding", "gzip").end();
+            });
+	}
+    
+    private static String gunzip(Buffer data) {
+        try (GZIPInputStream in = new GZIPInputStream(new ByteArrayInputStream(data.getBytes()))) {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] chunk = new byte[1024];
+            for (int read = in.read(chunk); read > 0; read = in.read(chunk)) {
+                out.write(chunk, 0, read);
+            }
+            return new String(out.toByteArray(), StandardCharsets.UTF_8);
+        } catch (IOException ex) {
+            throw new IllegalStateException(ex);
+        }
+    }
+    
+    @Test
+	public void restMetrics() {		       
+        RestHelper<Long> rest = new RestHelper<>(client, Long.class).metricsRoute("/metrics");
+        listen(rest, METRICS_PORT_NUMBER, http -> client.count(counted -> {
+            http.get("/metrics", resp -> {
+                assertEquals(200, resp.statusCode());
+                resp.bodyHandler((Buffer data) -> {
+                    JsonObject count = new JsonObject(data.toString())
+                        .getObject("default").getObject("count");
+                    assertTrue(count.getLong("count") >= 1);
+                    JsonObject execute = count.getObject("execute");
+                    assertTrue(execute.getLong("p50") <= execute.getLong("p999"));
+                    // The queue time is recorded from the send time the client stamps
+                    assertTrue(count.getObject("queue").getLong("count") >= 1);
+                    getContainer().logger().info("rest metrics: " + count.encode());
+                    testComplete();
+                });
+            }).end();
+        }));
+	}
+    
+    @Test
+	public void restGetAllAfter() {
+        client.findAll(found -> {
+            Set<Long> ids = new HashSet<>();
+            found.result().body().forEach(entity -> ids.add(((JsonObject) entity).getLong("id")));
+            JsonArray all = new JsonArray();
+            getAllAfter("", all, () -> {
+                // The keys (priority desc, id asc) strictly increase across the slices
+                for (int index = 1; index < all.size(); index++) {
+                    JsonObject previous = all.get(index - 1);
+                    JsonObject current = all.get(index);
+                    int previousPriority = previous.getInteger("priority");
+                    int currentPriority = current.getInteger("priority");
+                    assertTrue(previousPriority > currentPriority || 
+                        (previousPriority == currentPriority && 
+                         previous.getLong("id").longValue() < current.getLong("id").longValue()));
+                }
+                // The slices hold every entity once, without duplicates or gaps
+                Set<Long> sliced = new HashSet<>();
+                all.forEach(entity -> sliced.add(((JsonObject) entity).getLong("id")));
+                assertEquals(ids.size(), all.size());
+                assertEquals(ids, sliced);
+                getContainer().logger().info("rest get all after: " + all.encode());
+                testComplete();
+            });
+        });
+	}
+    
+    private void getAllAfter(String after, JsonArray all, Runnable done) {
+        createHttpClient().get("/shoppinglist?size=2&sort=priority.desc&after=" + after, resp -> {
+            assertEquals(200, resp.statusCode());
+            resp.bodyHandler(data -> {
+                JsonArray slice = new JsonArray(data.toString());
+                assertTrue(slice.size() <= 2);
+                slice.forEach(all::add);
+                String next = resp.headers().get("X-Next-After");
+                if (next == null) {
+                    done.run();
+                } else {
+                    getAllAfter(next, all, done);
+                }
+            });
+        }).end();
+    }
+    
+    @Test
+	public void restGetAllFields() {
+        createHttpClient().get("/shoppinglist?sort=name.asc&fields=id,name", resp -> {
+            assertEquals(200, resp.statusCode());
+            resp.bodyHandler(data -> {
+                JsonArray items = new JsonArray(data.toString());
+                assertTrue(items.size() > 0);
+                for (Object item : items) {
+                    JsonObject json = (JsonObject) item;
+                    assertNotNull(json.getLong("id"));
+                    json.removeField("id");
+                    json.removeField("name");
+                    assertEquals(0, json.size());
+                }
+                getContainer().logger().info("rest get fields: " + items.encode());
+                testComplete();
+            });
+        }).end();
+	}
+    
+    @Test
+	public void findOneFields() {
+        client.fields("name").findOne(1L, result -> {
+            assertTrue(result.succeeded());
+            JsonObject coffee = result.result().body();
+            assertEquals("coffee", coffee.getString("name"));
+            assertEquals(1, coffee.size());
+            testComplete();
+        });
+	}
+    
     @Test
 	public void restGetAllBySort() {		       
         createHttpClient().get("/shoppinglist?sort=name.asc", resp -> {
@@ -144,6 +389,143 @@ public class ShoppingListTest extends TestVerticle {
         request.write(content).end();                
 	}
     
+    @Test
+	public void restGetOneNotModified() {
+        RestHelper<Long> rest = new RestHelper<>(client, Long.class).etags("version");
+        listen(rest, ETAG_PORT_NUMBER, http -> http.get("/shoppinglist/1", resp -> {
+            assertEquals(200, resp.statusCode());
+            String etag = resp.headers().get("ETag");
+            assertNotNull(etag);
+            http.get("/shoppinglist/1", notModified -> {
+                assertEquals(304, notModified.statusCode());
+                assertEquals(etag, notModified.headers().get("ETag"));
+                testComplete();
+            }).putHeader("If-None-Match", etag).end();
+        }).end());
+	}
+    
+    @Test
+	public void restGetOneFieldsNotModified() {
+        RestHelper<Long> rest = new RestHelper<>(client, Long.class).etags("version");
+        listen(rest, ETAG_PORT_NUMBER, http -> http.get("/shoppinglist/1", resp -> {
+            String etag = resp.headers().get("ETag");
+            // A sparse fieldset is another representation, with its own ETag
+            http.get("/shoppinglist/1?fields=id,version", fields -> {
+                assertEquals(200, fields.statusCode());
+                String fieldsETag = fields.headers().get("ETag");
+                assertTrue(etag.equals(fieldsETag) == false);
+                http.get("/shoppinglist/1?fields=version,id", notModified -> {
+                    assertEquals(304, notModified.statusCode());
+                    assertEquals(fieldsETag, notModified.headers().get("ETag"));
+                    testComplete();
+                }).putHeader("If-None-Match", fieldsETag).end();
+            }).putHeader("If-None-Match", etag).end();
+        }).end());
+	}
+    
+    @Test
+	public void restGetAllNotModified() {
+        RestHelper<Long> rest = new RestHelper<>(client, Long.class).etags("version");
+        listen(rest, ETAG_PORT_NUMBER, http -> http.get("/shoppinglist?sort=name", resp -> {
+            assertEquals(200, resp.statusCode());
+            String etag = resp.headers().get("ETag");
+            assertNotNull(etag);
+            http.get("/shoppinglist?sort=name", notModified -> {
+                assertEquals(304, notModified.statusCode());
+                testComplete();
+            }).putHeader("If-None-Match", etag).end();
+        }).end());
+	}
+    
+    @Test
+	public void restDeleteIfMatch() {
+        RestHelper<Long> rest = new RestHelper<>(client, Long.class).etags("version");
+        listen(rest, ETAG_PORT_NUMBER, http -> http.delete("/shoppinglist/1", resp -> {
+            assertEquals(412, resp.statusCode());
+            client.exists(1L, exists -> {
+                assertTrue(exists.result().body());
+                testComplete();
+            });
+        }).putHeader("If-Match", "\"-1\"").end());
+	}
+    
+    @Test
+	public void restBulk() {
+        JsonArray items = new JsonArray()
+            .addObject(new JsonObject().putString("name", "tea").putNumber("priority", 3))
+            .addObject(new JsonObject().putString("name", "honey").putNumber("priority", 4));
+        bulk(createHttpClient().post("/shoppinglist", created -> {
+            assertEquals(200, created.statusCode());
+            created.bodyHandler(data -> {
+                JsonArray outcomes = new JsonArray(data.toString());
+                assertEquals(2, outcomes.size());
+                JsonObject tea = ((JsonObject) outcomes.get(0)).getObject("entity");
+                JsonObject honey = ((JsonObject) outcomes.get(1)).getObject("entity");
+                assertEquals(201, (int) ((JsonObject) outcomes.get(0)).getInteger("status"));
+                assertEquals("honey", honey.getString("name"));
+                String ids = tea.getLong("id") + "," + honey.getLong("id") + ",999";
+                createHttpClient().get("/shoppinglist?ids=" + ids, found -> {
+                    assertEquals(200, found.statusCode());
+                    found.bodyHandler(body -> {
+                        JsonArray gets = new JsonArray(body.toString());
+                        assertEquals(3, gets.size());
+                        assertEquals("tea", ((JsonObject) gets.get(0)).getObject("entity").getString("name"));
+                        assertEquals(404, (int) ((JsonObject) gets.get(2)).getInteger("status"));
+                        // Each entity of the update succeeds or fails on its own
+                        tea.putString("name", "green tea");
+                        honey.putNumber("priority", 5).putNumber("version", 99);
+                        JsonObject noId = new JsonObject().putString("name", "sage");
+                        bulk(createHttpClient().put("/shoppinglist", updated -> {
+                            assertEquals(200, updated.statusCode());
+                            updated.bodyHandler(puts -> {
+                                JsonArray outcomes2 = new JsonArray(puts.toString());
+                                JsonObject greenTea = outcomes2.get(0);
+                                assertEquals(200, (int) greenTea.getInteger("status"));
+                                assertEquals("green tea", greenTea.getObject("entity").getString("name"));
+                                assertEquals(409, (int) ((JsonObject) outcomes2.get(1)).getInteger("status"));
+                                assertEquals(400, (int) ((JsonObject) outcomes2.get(2)).getInteger("status"));
+                                createHttpClient().delete("/shoppinglist?ids=" + ids, deleted -> {
+                                    assertEquals(200, deleted.statusCode());
+                                    deleted.bodyHandler(deletes -> {
+                                        JsonArray outcome = new JsonArray(deletes.toString());
+                                        assertEquals(204, (int) ((JsonObject) outcome.get(1)).getInteger("status"));
+                                        assertEquals(404, (int) ((JsonObject) outcome.get(2)).getInteger("status"));
+                                        testComplete();
+                                    });
+                                }).end();
+                            });
+                        }), new JsonArray().addObject(tea).addObject(honey).addObject(noId));
+                    });
+                }).end();
+            });
+        }), items);
+	}
+    
+    @Test
+	public void restBulkRoutes() {
+        // A single entity is not put to the collection, nor an array to an entity
+        client.count(before -> {
+            bulk(createHttpClient().put("/shoppinglist", single -> {
+                assertEquals(400, single.statusCode());
+                bulk(createHttpClient().put("/shoppinglist/2", array -> {
+                    assertEquals(400, array.statusCode());
+                    client.count(after -> {
+                        assertEquals(before.result().body(), after.result().body());
+                        testComplete();
+                    });
+                }), new JsonArray().addObject(new JsonObject().putString("name", "oat milk")));
+            }), new JsonObject().putString("name", "oat milk"));
+        });
+	}
+    
+    private static void bulk(HttpClientRequest request, JsonElement entities) {
+        Buffer content = new Buffer(entities.isArray() ? 
+            entities.asArray().encode() : entities.asObject().encode());
+        request.headers().add("Content-Length", String.valueOf(content.length()));
+        request.headers().add("Content-Type", "application/json");
+        request.write(content).end();
+    }
+    
     @Test
     public void testDelelte() {
         createHttpClient().delete("/shoppinglist/5", resp -> {
@@ -163,6 +545,18 @@ public class ShoppingListTest extends TestVerticle {
 		});
 	}
 
+    @Test
+	public void javaSerializationNotEnabled() {	
+        AsyncShoppingItemRepository java = new AsyncRepositoryBuilder<Long>(vertx.eventBus())
+            .argumentCodec(new JavaArgumentCodec())
+            .build(AsyncShoppingItemRepository.class);
+		java.findByPriority(3, reply -> {
+			assertTrue(reply.failed());
+			assertEquals(NOT_ACCEPTABLE.code(), ((ReplyException) reply.cause()).failureCode());
+            testComplete();
+		});
+	}
+
     @Test
 	public void findByPriorityIsNull() {	
 		client.findByNameIsNull(reply -> {
@@ -175,6 +569,390 @@ public class ShoppingListTest extends TestVerticle {
 	}
 	
 
+    @Test
+	public void findAllAsJsonBytes() {	
+        AsyncShoppingItemRepository bytesClient = new AsyncRepositoryBuilder<Long>(vertx.eventBus())
+            .jsonBytes(true)
+            .build(AsyncShoppingItemRepository.class);
+		bytesClient.findAll(reply -> {
+			assertTrue(reply.succeeded());
+			JsonArray items = reply.result().body();
+			// The decoded entities are the ones of a client without JSON bytes
+			client.findAll(expected -> {
+			    assertEquals(expected.result().body().size(), items.size());
+			    for (int index = 0; index < items.size(); index++) {
+			        JsonObject entity = expected.result().body().get(index);
+			        JsonObject decoded = items.get(index);
+			        assertEquals(entity.getLong("id"), decoded.getLong("id"));
+			        assertEquals(entity.getString("name"), decoded.getString("name"));
+			    }
+			    getContainer().logger().info("find all as json bytes: " + items.toString());
+			    testComplete();
+			});
+		});
+	}
+
+    @Test
+	public void saveAsJsonBytes() {	
+        AsyncShoppingItemRepository bytesClient = new AsyncRepositoryBuilder<Long>(vertx.eventBus())
+            .jsonBytes(true)
+            .build(AsyncShoppingItemRepository.class);
+        JsonObject tea = new JsonObject()
+            .putString("name", "tea")
+            .putNumber("priority", 4);
+		bytesClient.save(tea, reply -> {
+			assertTrue(reply.succeeded());
+			JsonObject saved = reply.result().body();
+			assertEquals("tea", saved.getString("name"));
+		    getContainer().logger().info("save as json bytes: " + saved.toString());
+            testComplete();
+		});
+	}
+
+    @Test
+	public void findPage() {	
+        AsyncPagingAndSortingRepository<Long> pagingClient = 
+            (AsyncPagingAndSortingRepository<Long>) new AsyncRepositoryBuilder<Long>(vertx.eventBus()).build();
+		pagingClient.findPage(new PageRequest(0, 2, new Sort("name")), reply -> {
+			assertTrue(reply.succeeded());
+			JsonObject page = reply.result().body();
+			assertEquals(2, page.getArray("content").size());
+			assertEquals(0, page.getInteger("number").intValue());
+			assertTrue(page.getLong("totalElements") >= 2);
+			assertTrue(page.getInteger("totalPages") >= 1);
+		    getContainer().logger().info("find page: " + page.toString());
+            testComplete();
+		});
+	}
+
+    @Test
+	public void findPageOfNoSize() {
+        JsonObject findPage = new JsonObject()
+            .putString("action", "findPage")
+            .putObject("pageable", new JsonObject().putNumber("number", 0).putNumber("size", 0));
+        String address = RepositoryVerticle.class.getCanonicalName() + ".write";
+        vertx.eventBus().sendWithTimeout(address, findPage, 5000, reply -> {
+            assertTrue(reply.failed());
+            assertEquals(NOT_ACCEPTABLE.code(), ((ReplyException) reply.cause()).failureCode());
+            testComplete();
+        });
+	}
+
+    @Test
+	public void findAllStream() {	
+        client.count(total -> {
+            AtomicInteger received = new AtomicInteger();
+            BatchStream[] stream = new BatchStream[1];
+            stream[0] = client.findAllStream(2, batch -> {
+                assertTrue(batch.size() > 0 && batch.size() <= 2);
+                received.addAndGet(batch.size());
+                // Hold the next batch back for a moment
+                stream[0].pause();
+                vertx.setTimer(10, id -> stream[0].resume());
+            }, end -> {
+                assertTrue(end.succeeded());
+                assertEquals(total.result().body().intValue(), received.get());
+                getContainer().logger().info("find all stream: " + received.get());
+                testComplete();
+            });
+        });
+	}
+
+    @Test
+	public void batch() {	
+        client.batch()
+            .findOne(1L)
+            .exists(2L)
+            .findOne(999L)
+            .call("findByPriority", 3)
+            .execute(reply -> {
+                assertTrue(reply.succeeded());
+                JsonArray outcomes = reply.result().body();
+                assertEquals(4, outcomes.size());
+                JsonObject coffee = ((JsonObject) outcomes.get(0)).getObject("result");
+                assertEquals("coffee", coffee.getString("name"));
+                assertTrue(((JsonObject) outcomes.get(1)).getBoolean("result"));
+                assertEquals(NOT_FOUND.code(), ((JsonObject) outcomes.get(2)).getInteger("failureCode").intValue());
+                assertTrue(((JsonObject) outcomes.get(3)).getArray("result").size() > 0);
+                getContainer().logger().info("batch: " + outcomes.toString());
+                testComplete();
+            });
+	}
+
+    @Test
+	public void transactionalBatchRollsBack() {	
+        JsonObject tea = new JsonObject()
+            .putString("name", "tea")
+            .putNumber("priority", 4);
+        client.count(before -> {
+            client.batch()
+                .save(tea)
+                .findOne(999L)
+                .transactional(true)
+                .execute(reply -> {
+                    assertTrue(reply.failed());
+                    assertEquals(NOT_FOUND.code(), ((ReplyException) reply.cause()).failureCode());
+                    client.count(after -> {
+                        assertEquals(before.result().body(), after.result().body());
+                        testComplete();
+                    });
+                });
+        });
+	}
+
+    @Test
+	public void coalescedFindOne() {	
+        AsyncShoppingItemRepository coalescing = new AsyncRepositoryBuilder<Long>(vertx.eventBus())
+            .coalescing(vertx, 0)
+            .build(AsyncShoppingItemRepository.class);
+        AtomicInteger replies = new AtomicInteger();
+        Runnable done = () -> {
+            if (replies.incrementAndGet() == 4) {
+                testComplete();
+            }
+        };
+        coalescing.findOne(1L, reply -> {
+            assertTrue(reply.succeeded());
+            assertEquals("coffee", reply.result().body().getString("name"));
+            done.run();
+        });
+        coalescing.findOne(1L, reply -> {
+            assertEquals("coffee", reply.result().body().getString("name"));
+            done.run();
+        });
+        coalescing.exists(2L, reply -> {
+            assertTrue(reply.result().body());
+            done.run();
+        });
+        coalescing.findOne(999L, reply -> {
+            assertTrue(reply.failed());
+            assertEquals(NOT_FOUND.code(), ((ReplyException) reply.cause()).failureCode());
+            done.run();
+        });
+	}
+
+    @Test
+	public void singleFlight() {	
+        AsyncRepositoryBuilder<Long> builder = new AsyncRepositoryBuilder<Long>(vertx.eventBus())
+            .singleFlight(true);
+        AsyncShoppingItemRepository flightClient = builder.build(AsyncShoppingItemRepository.class);
+        AtomicInteger replies = new AtomicInteger();
+        for (int index = 0; index < 3; index++) {
+            flightClient.findAll(reply -> {
+                assertTrue(reply.succeeded());
+                assertTrue(reply.result().body().size() > 0);
+                if (replies.incrementAndGet() == 3) {
+                    assertEquals(2, builder.metrics().getCollapsedRequests());
+                    testComplete();
+                }
+            });
+        }
+	}
+
+    @Test
+	public void nearCache() {	
+        AsyncRepositoryBuilder<Long> builder = new AsyncRepositoryBuilder<Long>(vertx.eventBus())
+            .nearCache(100, 60000);
+        AsyncShoppingItemRepository cached = builder.build(AsyncShoppingItemRepository.class);
+        // A dedicated entity, since the test renames it
+        client.save(new JsonObject().putString("name", "espresso"), created -> {
+            Long id = created.result().body().getLong("id");
+            cached.findOne(id, first -> {
+                cached.findOne(id, second -> {
+                    assertEquals("espresso", second.result().body().getString("name"));
+                    assertEquals(1, builder.metrics().getCacheHits());
+                    assertEquals(1, builder.metrics().getCacheMisses());
+                    // A write by another client invalidates the cached entity
+                    JsonObject decaf = second.result().body().putString("name", "decaf");
+                    client.save(decaf, saved -> {
+                        assertTrue(saved.succeeded());
+                        cached.findOne(id, third -> {
+                            assertEquals("decaf", third.result().body().getString("name"));
+                            assertEquals(2, builder.metrics().getCacheMisses());
+                            cached.close();
+                            testComplete();
+                        });
+                    });
+                });
+            });
+        });
+	}
+
+    @Test
+	public void resultCache() {	
+        redeploy(new SpringDeployer(container).resultCache(100, 60000), deployed -> {
+            client.findAll(first -> {
+                int size = first.result().body().size();
+                client.findAll(second -> {
+                    assertEquals(size, second.result().body().size());
+                    // A write clears the cached replies of the domain type
+                    JsonObject tea = new JsonObject().putString("name", "tea");
+                    client.save(tea, saved -> {
+                        assertTrue(saved.succeeded());
+                        client.findAll(third -> {
+                            assertEquals(size + 1, third.result().body().size());
+                            client.metrics(reply -> {
+                                JsonObject findAll = reply.result().body()
+                                    .getObject("default").getObject("findAll");
+                                // The second findAll is a hit, the one after the save a miss
+                                assertEquals(1, (long) findAll.getLong("cacheHits"));
+                                assertEquals(2, (long) findAll.getLong("cacheMisses"));
+                                testComplete();
+                            });
+                        });
+                    });
+                });
+            });
+        });
+	}
+
+    @Test
+	public void writeBehind() {	
+        AsyncShoppingItemRepository buffered = new AsyncRepositoryBuilder<Long>(vertx.eventBus())
+            .writeBehind(vertx, 10, 50)
+            .build(AsyncShoppingItemRepository.class);
+        AtomicInteger replies = new AtomicInteger();
+        Runnable done = () -> {
+            if (replies.incrementAndGet() == 3) {
+                testComplete();
+            }
+        };
+        for (String name : new String[] {"tea", "juice"}) {
+            buffered.save(new JsonObject().putString("name", name), reply -> {
+                assertTrue(reply.succeeded());
+                assertEquals(name, reply.result().body().getString("name"));
+                assertTrue(reply.result().body().getLong("id") != null);
+                done.run();
+            });
+        }
+        // Only the caller of the stale entity gets the failure
+        JsonObject milk = new JsonObject()
+            .putNumber("id", 2)
+            .putNumber("version", 1)
+            .putString("name", "low-fat milk");
+        buffered.save(milk, reply -> {
+            assertTrue(reply.failed());
+            assertEquals(CONFLICT.code(), ((ReplyException) reply.cause()).failureCode());
+            done.run();
+        });
+	}
+
+    @Test
+	public void expiredDeadline() {
+        client.count(before -> {
+            JsonObject save = new JsonObject()
+                .putString("action", "save")
+                .putObject("entity", new JsonObject().putString("name", "late tea"))
+                .putNumber("deadline", System.currentTimeMillis() - 1);
+            String address = RepositoryVerticle.class.getCanonicalName() + ".write";
+            vertx.eventBus().sendWithTimeout(address, save, 5000, reply -> {
+                assertTrue(reply.failed());
+                assertEquals(GATEWAY_TIMEOUT.code(), ((ReplyException) reply.cause()).failureCode());
+                // The expired save was not run
+                client.count(after -> {
+                    assertEquals(before.result().body(), after.result().body());
+                    testComplete();
+                });
+            });
+        });
+	}
+
+    @Test
+	public void queryTimeouts() {
+        redeploy(new SpringDeployer(container).queryTimeouts(true), deployed -> {
+            assertTrue(deployed.succeeded());
+            // The commands of a client with a timeout run in a transaction of the time left
+            AsyncShoppingItemRepository timed = new AsyncRepositoryBuilder<Long>(vertx.eventBus())
+                .timeout(5000)
+                .build(AsyncShoppingItemRepository.class);
+            timed.save(new JsonObject().putString("name", "lemonade"), saved -> {
+                assertTrue(saved.succeeded());
+                timed.findOne(saved.result().body().getLong("id"), found -> {
+                    assertTrue(found.succeeded());
+                    assertEquals("lemonade", found.result().body().getString("name"));
+                    testComplete();
+                });
+            });
+        });
+	}
+
+    @Test
+	public void admission() {
+        AsyncRepositoryBuilder<Long> builder = new AsyncRepositoryBuilder<Long>(vertx.eventBus())
+            .admission(1, 1);
+        AsyncShoppingItemRepository bounded = builder.build(AsyncShoppingItemRepository.class);
+        AtomicInteger replies = new AtomicInteger();
+        Runnable done = () -> {
+            if (replies.incrementAndGet() == 3) {
+                assertEquals(1, builder.metrics().getRejectedRequests());
+                assertEquals(0, builder.metrics().getQueuedRequests());
+                assertEquals(0, builder.metrics().getInFlightRequests());
+                testComplete();
+            }
+        };
+        // The first call is sent, the second waits, and the third is turned away
+        for (int index = 0; index < 3; index++) {
+            boolean admitted = index < 2;
+            bounded.count(reply -> {
+                assertEquals(admitted, reply.succeeded());
+                if (admitted == false) {
+                    assertTrue(reply.cause() instanceof RejectedRequest);
+                    assertEquals(503, ((ReplyException) reply.cause()).failureCode());
+                }
+                done.run();
+            });
+        }
+	}
+
+    @Test
+	public void lanes() {
+        // Only the lanes serve, so the save is answered by the write lane and the 
+        // find by the read lane
+        SpringDeployer deployer = new SpringDeployer(container)
+            .sharedContext(true)
+            .lanes(2, 1)
+            .readOnlyTransactions(true);
+        redeploy(deployer, deployed -> {
+            assertTrue(deployed.succeeded());
+            client.save(new JsonObject().putString("name", "coffee"), saved -> {
+                assertTrue(saved.succeeded());
+                client.findOne(saved.result().body().getLong("id"), found -> {
+                    assertTrue(found.succeeded());
+                    assertEquals("coffee", found.result().body().getString("name"));
+                    testComplete();
+                });
+            });
+        });
+	}
+
+    @Test
+	public void sharedContext() {
+        int started = Config.getStarted();
+        redeploy(new SpringDeployer(container).sharedContext(true), first -> {
+            assertTrue(first.succeeded());
+            new SpringDeployer(container)
+                .springConfigClass(Config.class)
+                .sharedContext(true)
+                .deploy(second -> {
+                    assertTrue(second.succeeded());
+                    // Both deployments run on the context started by the first
+                    assertEquals(started + 1, Config.getStarted());
+                    container.undeployVerticle(first.result(), undeployed -> {
+                        assertTrue(undeployed.succeeded());
+                        // The context is still open for the remaining deployment
+                        client.save(new JsonObject().putString("name", "cocoa"), saved -> {
+                            assertTrue(saved.succeeded());
+                            client.findOne(saved.result().body().getLong("id"), found -> {
+                                assertTrue(found.succeeded());
+                                assertEquals("cocoa", found.result().body().getString("name"));
+                                testComplete();
+                            });
+                        });
+                    });
+                });
+        });
+	}
+
     @Test         
 	public void negativeTestOptimisticLock() {		 
 		JsonObject milk = new JsonObject();
@@ -193,6 +971,18 @@ public class ShoppingListTest extends TestVerticle {
 		 
 	}
     
+    /**
+     * Serves a REST helper of its own options, alongside the one of the shared setup.
+     */
+    private void listen(RestHelper<Long> rest, int port, Handler<HttpClient> onlisten) {
+        vertx.createHttpServer()
+            .requestHandler(rest.createRouteMatcher("/shoppinglist"))
+            .listen(port, server -> {
+                assertTrue(server.succeeded());
+                onlisten.handle(createHttpClient().setPort(port));
+            });
+    }
+    
     private HttpClient createHttpClient() {
         return getVertx().createHttpClient()
                          .setHost("localhost")
@@ -1,10 +1,19 @@
 package com.github.relai.vertx.springdata.integration.shoppingList.domain;
 
+import java.util.concurrent.atomic.AtomicInteger;
+
 import org.springframework.boot.autoconfigure.EnableAutoConfiguration;
 import org.springframework.context.annotation.Configuration;
 
 @Configuration
 @EnableAutoConfiguration
 public class Config {
+    private final static AtomicInteger started = new AtomicInteger();
+
+    public Config() {
+        started.incrementAndGet();
+    }
 
+    /** Returns the number of application contexts started with this configuration. */
+    public static int getStarted() {return started.get();}
 }
@@ -18,4 +18,9 @@ public interface ShoppingItemRepository extends CrudRepository<ShoppingItem,Long
    
    Page<ShoppingItem> findAll(Pageable pageable);
    Iterable<ShoppingItem> findAll(Sort sort);
+   
+   // The seek methods of the keyset pagination by id, and by priority descending
+   List<ShoppingItem> findByIdGreaterThan(Long id, Pageable pageable);
+   List<ShoppingItem> findByPriorityLessThanOrPriorityAndIdGreaterThan(
+       int priority, int samePriority, Long id, Pageable pageable);
 }